@@ -0,0 +1,370 @@
+package com.example.fabric;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a mix of create, update, read, history and transfer operations through FabricService and reports
+ * latency percentiles and throughput per operation.
+ *
+ * Arguments are key=value pairs; see {@link #DEFAULTS}. In closed mode, workers threads each run one operation
+ * after another. In open mode, operations start at a fixed rate whether or not earlier ones have finished, and
+ * latency is measured from when an operation was due to start, so a stalled gateway shows up in the percentiles
+ * instead of just slowing the load down. Operations that finish during the warmup are not recorded.
+ *
+ * With gateway=simulated the calls go to a {@link SimulatedGateway} in this process; with gateway=network they
+ * go to the peers configured for the backend (PEER_ENDPOINTS etc.).
+ */
+public class LoadGenerator {
+    static final String MSP_ID = "Org1MSP";
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("gateway", "simulated");
+        DEFAULTS.put("mode", "closed");
+        DEFAULTS.put("workers", "16");
+        DEFAULTS.put("rate", "200");
+        DEFAULTS.put("maxInFlight", "10000");
+        DEFAULTS.put("duration", "60");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("mix", "create=10,update=50,read=25,history=10,transfer=5");
+        DEFAULTS.put("plants", "1000");
+        DEFAULTS.put("evaluateMillis", "5");
+        DEFAULTS.put("endorseMillis", "20");
+        DEFAULTS.put("submitMillis", "5");
+        DEFAULTS.put("blockMillis", "2000");
+        DEFAULTS.put("conflictRate", "0");
+        DEFAULTS.put("report", "");
+    }
+
+    private static final String[] OPERATIONS = {"create", "update", "read", "history", "transfer"};
+    private static final int SEED_CHUNK_SIZE = 500;
+    // Latencies are recorded in microseconds, up to ten minutes
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Map<String, String> options;
+    private final FabricService fabricService;
+    private final MeterRegistry registry;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final int[] weights = new int[OPERATIONS.length];
+    private final Histogram[] latencies = new Histogram[OPERATIONS.length];
+    private final AtomicLong[] errors = new AtomicLong[OPERATIONS.length];
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final List<String> plants = new ArrayList<>();
+    private int totalWeight;
+    private volatile long measureStart;
+
+    LoadGenerator(Map<String, String> options, FabricService fabricService, MeterRegistry registry) {
+        this.options = options;
+        this.fabricService = fabricService;
+        this.registry = registry;
+        for (String entry : options.get("mix").split(",")) {
+            String[] parts = entry.split("=");
+            int op = operation(parts[0].trim());
+            weights[op] = Integer.parseInt(parts[1].trim());
+            totalWeight += weights[op];
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("mix must give at least one operation a positive weight");
+        }
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i] = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3);
+            errors[i] = new AtomicLong();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+                System.err.println("Unknown argument " + arg + "; expected key=value with key one of "
+                        + DEFAULTS.keySet());
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GatewayMetrics metrics = new GatewayMetrics(registry);
+        SimulatedGateway simulated = null;
+        GatewayPool gatewayPool;
+        if ("simulated".equals(options.get("gateway"))) {
+            simulated = new SimulatedGateway(Long.parseLong(options.get("evaluateMillis")),
+                    Long.parseLong(options.get("endorseMillis")), Long.parseLong(options.get("submitMillis")),
+                    Long.parseLong(options.get("blockMillis")), Double.parseDouble(options.get("conflictRate")));
+            gatewayPool = GatewayPool.of(simulated.connect(metrics));
+        } else {
+            gatewayPool = new FabricGatewayConfig().gatewayPool(metrics);
+        }
+        TransactionTracker tracker = new TransactionTracker(registry);
+        FabricService fabricService = new FabricService(gatewayPool, tracker, new BasilCache(), metrics,
+                new SubmitScheduler(registry));
+        try {
+            LoadGenerator generator = new LoadGenerator(options, fabricService, registry);
+            generator.seed();
+            generator.run();
+            Map<String, Object> report = generator.report();
+            System.out.println(table(report));
+            if (!options.get("report").isEmpty()) {
+                Path path = Paths.get(options.get("report"));
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+                Files.write(path, gson.toJson(report).getBytes(StandardCharsets.UTF_8));
+                System.out.println("Report written to " + path);
+            }
+        } finally {
+            fabricService.cleanup();
+            tracker.shutdown();
+            gatewayPool.close();
+            if (simulated != null) {
+                simulated.close();
+            }
+        }
+    }
+
+    // Register the plants that updates, reads, history and transfers pick from
+    void seed() throws Exception {
+        int count = Integer.parseInt(options.get("plants"));
+        List<BasilRegistration> chunk = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String qrCode = "load-" + runId + "-seed-" + i;
+            chunk.add(new BasilRegistration(qrCode, "NL"));
+            plants.add(qrCode);
+            if (chunk.size() == SEED_CHUNK_SIZE || i == count - 1) {
+                fabricService.createBasilsBatch(chunk);
+                chunk.clear();
+            }
+        }
+        System.out.println("Seeded " + count + " plants");
+    }
+
+    void run() throws InterruptedException {
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+        long start = System.nanoTime();
+        measureStart = start + warmupNanos;
+        long end = measureStart + durationNanos;
+        if ("open".equals(options.get("mode"))) {
+            runOpen(end);
+        } else {
+            runClosed(end);
+        }
+    }
+
+    // Workers threads, each starting its next operation as soon as the last one finished
+    private void runClosed(long end) throws InterruptedException {
+        int workers = Integer.parseInt(options.get("workers"));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            pool.execute(() -> {
+                while (System.nanoTime() < end) {
+                    execute(pickOperation(), System.nanoTime());
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // Start operations on a fixed schedule; at most maxInFlight run at once and the rest are counted as dropped
+    private void runOpen(long end) throws InterruptedException {
+        double rate = Double.parseDouble(options.get("rate"));
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        Semaphore inFlight = new Semaphore(Integer.parseInt(options.get("maxInFlight")));
+        ExecutorService pool = Executors.newCachedThreadPool();
+        long due = System.nanoTime();
+        while (due < end) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            long intended = due;
+            due += intervalNanos;
+            if (!inFlight.tryAcquire()) {
+                if (intended >= measureStart) {
+                    dropped.incrementAndGet();
+                }
+                continue;
+            }
+            pool.execute(() -> {
+                try {
+                    execute(pickOperation(), intended);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    private void execute(int op, long intended) {
+        boolean failed = false;
+        try {
+            call(op);
+        } catch (Exception e) {
+            failed = true;
+        }
+        long now = System.nanoTime();
+        if (intended < measureStart) {
+            return;
+        }
+        if (failed) {
+            errors[op].incrementAndGet();
+        } else {
+            latencies[op].recordValue(Math.min(HIGHEST_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(now - intended)));
+        }
+    }
+
+    private void call(int op) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (OPERATIONS[op]) {
+            case "create": {
+                String qrCode = "load-" + runId + "-" + created.incrementAndGet();
+                fabricService.createBasil(qrCode, "NL").join();
+                synchronized (plants) {
+                    plants.add(qrCode);
+                }
+                break;
+            }
+            case "update":
+                // Through the coalescer, like PUT /api/basil/{id}/state
+                fabricService.queueBasilState(randomPlant(), random.nextDouble(50, 54) + "," + random.nextDouble(3, 7),
+                        System.currentTimeMillis() / 1000, Integer.toString(random.nextInt(2, 25)),
+                        Integer.toString(random.nextInt(40, 90)), "In Transit").join();
+                break;
+            case "read":
+                fabricService.readBasil(randomPlant());
+                break;
+            case "history":
+                fabricService.getBasilHistoryPage(randomPlant(), 50, "", 0, 0, true);
+                break;
+            case "transfer":
+                fabricService.transferBasilOwnership(randomPlant(), MSP_ID, "Carrier-" + random.nextInt(100)).join();
+                break;
+            default:
+                throw new IllegalStateException(OPERATIONS[op]);
+        }
+    }
+
+    private int pickOperation() {
+        int ticket = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int op = 0; ; op++) {
+            ticket -= weights[op];
+            if (ticket < 0) {
+                return op;
+            }
+        }
+    }
+
+    private String randomPlant() {
+        synchronized (plants) {
+            return plants.get(ThreadLocalRandom.current().nextInt(plants.size()));
+        }
+    }
+
+    Map<String, Object> report() {
+        double seconds = Long.parseLong(options.get("duration"));
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options);
+        Histogram all = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        long allErrors = 0;
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            if (weights[op] == 0) {
+                continue;
+            }
+            Histogram histogram = latencies[op].copy();
+            all.add(histogram);
+            allErrors += errors[op].get();
+            operations.put(OPERATIONS[op], summary(histogram, errors[op].get(), seconds));
+        }
+        report.put("operations", operations);
+        report.put("total", summary(all, allErrors, seconds));
+        report.put("dropped", dropped.get());
+        double retried = 0;
+        double failed = 0;
+        for (Counter counter : registry.find("fabric.submit.conflicts").counters()) {
+            if ("retried".equals(counter.getId().getTag("action"))) {
+                retried += counter.count();
+            } else {
+                failed += counter.count();
+            }
+        }
+        Map<String, Object> conflicts = new LinkedHashMap<>();
+        conflicts.put("retried", (long) retried);
+        conflicts.put("failed", (long) failed);
+        report.put("conflicts", conflicts);
+        return report;
+    }
+
+    private static Map<String, Object> summary(Histogram histogram, long errors, double seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("errors", errors);
+        summary.put("throughput", histogram.getTotalCount() / seconds);
+        summary.put("p50Millis", millis(histogram.getValueAtPercentile(50)));
+        summary.put("p90Millis", millis(histogram.getValueAtPercentile(90)));
+        summary.put("p99Millis", millis(histogram.getValueAtPercentile(99)));
+        summary.put("p999Millis", millis(histogram.getValueAtPercentile(99.9)));
+        summary.put("maxMillis", millis(histogram.getMaxValue()));
+        return summary;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String table(Map<String, Object> report) {
+        StringBuilder table = new StringBuilder(String.format("%-10s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        Map<String, Object> rows = new LinkedHashMap<>((Map<String, Object>) report.get("operations"));
+        rows.put("total", report.get("total"));
+        for (Map.Entry<String, Object> row : rows.entrySet()) {
+            Map<String, Object> s = (Map<String, Object>) row.getValue();
+            table.append(String.format("%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", row.getKey(),
+                    s.get("count"), s.get("errors"), s.get("throughput"), s.get("p50Millis"), s.get("p90Millis"),
+                    s.get("p99Millis"), s.get("p999Millis"), s.get("maxMillis")));
+        }
+        Map<String, Object> conflicts = (Map<String, Object>) report.get("conflicts");
+        table.append(String.format("dropped %s, conflicts retried %s, failed %s", report.get("dropped"),
+                conflicts.get("retried"), conflicts.get("failed")));
+        return table.toString();
+    }
+
+    private static int operation(String name) {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (OPERATIONS[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + name + " in mix");
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.Gateway;
+import org.hyperledger.fabric.client.identity.Identity;
+import org.hyperledger.fabric.protos.common.Envelope;
+import org.hyperledger.fabric.protos.common.Payload;
+import org.hyperledger.fabric.protos.gateway.CommitStatusResponse;
+import org.hyperledger.fabric.protos.gateway.EndorseRequest;
+import org.hyperledger.fabric.protos.gateway.EndorseResponse;
+import org.hyperledger.fabric.protos.gateway.EvaluateRequest;
+import org.hyperledger.fabric.protos.gateway.EvaluateResponse;
+import org.hyperledger.fabric.protos.gateway.GatewayGrpc;
+import org.hyperledger.fabric.protos.gateway.SignedCommitStatusRequest;
+import org.hyperledger.fabric.protos.gateway.SubmitRequest;
+import org.hyperledger.fabric.protos.gateway.SubmitResponse;
+import org.hyperledger.fabric.protos.peer.ChaincodeAction;
+import org.hyperledger.fabric.protos.peer.ChaincodeActionPayload;
+import org.hyperledger.fabric.protos.peer.ChaincodeEndorsedAction;
+import org.hyperledger.fabric.protos.peer.ChaincodeInvocationSpec;
+import org.hyperledger.fabric.protos.peer.ChaincodeProposalPayload;
+import org.hyperledger.fabric.protos.peer.Proposal;
+import org.hyperledger.fabric.protos.peer.ProposalResponsePayload;
+import org.hyperledger.fabric.protos.peer.Response;
+import org.hyperledger.fabric.protos.peer.SignedProposal;
+import org.hyperledger.fabric.protos.peer.Transaction;
+import org.hyperledger.fabric.protos.peer.TransactionAction;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.grpc.ClientInterceptors;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for a Fabric gateway peer, so that {@link LoadGenerator} can drive FabricService, PeerRouter
+ * and the gateway client without a network.
+ *
+ * Evaluate, endorse and submit answer after their configured latency, give or take half of it. Commit statuses
+ * answer when the next block is cut, every blockMillis, and report MVCC_READ_CONFLICT for a conflictRate share
+ * of transactions. Nothing is stored: reads return a plausible plant and writes an empty result. Responses are
+ * scheduled rather than slept on, so thousands of calls can be outstanding at once.
+ */
+public class SimulatedGateway extends GatewayGrpc.GatewayImplBase implements AutoCloseable {
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final long evaluateMillis;
+    private final long endorseMillis;
+    private final long submitMillis;
+    private final long blockMillis;
+    private final double conflictRate;
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService responses = Executors.newScheduledThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "simulated-gateway");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Server server;
+    private ManagedChannel channel;
+    private Gateway gateway;
+
+    public SimulatedGateway(long evaluateMillis, long endorseMillis, long submitMillis, long blockMillis,
+            double conflictRate) {
+        this.evaluateMillis = evaluateMillis;
+        this.endorseMillis = endorseMillis;
+        this.submitMillis = submitMillis;
+        this.blockMillis = blockMillis;
+        this.conflictRate = conflictRate;
+    }
+
+    // Start the in-process server and return a router whose only peer is this stand-in
+    public PeerRouter connect(GatewayMetrics metrics) throws IOException {
+        String name = "simulated-gateway-" + INSTANCES.incrementAndGet();
+        server = InProcessServerBuilder.forName(name).addService(this).directExecutor().build().start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        gateway = Gateway.newInstance()
+                .identity(new SimulatedIdentity())
+                .signer(digest -> new byte[0])
+                .connection(ClientInterceptors.intercept(channel, metrics.interceptor(name)))
+                .connect();
+        return new PeerRouter(List.of(new PeerRouter.Endpoint(name,
+                gateway.getNetwork(FabricGatewayConfig.CHANNEL_NAME), null)));
+    }
+
+    @Override
+    public void evaluate(EvaluateRequest request, StreamObserver<EvaluateResponse> observer) {
+        List<String> args = arguments(request.getProposedTransaction());
+        EvaluateResponse response = EvaluateResponse.newBuilder().setResult(ok(result(args))).build();
+        respond(observer, response, jitter(evaluateMillis));
+    }
+
+    @Override
+    public void endorse(EndorseRequest request, StreamObserver<EndorseResponse> observer) {
+        List<String> args = arguments(request.getProposedTransaction());
+        ChaincodeAction action = ChaincodeAction.newBuilder().setResponse(ok(result(args))).build();
+        ProposalResponsePayload responsePayload = ProposalResponsePayload.newBuilder()
+                .setExtension(action.toByteString())
+                .build();
+        ChaincodeActionPayload actionPayload = ChaincodeActionPayload.newBuilder()
+                .setAction(ChaincodeEndorsedAction.newBuilder().setProposalResponsePayload(responsePayload.toByteString()))
+                .build();
+        Transaction transaction = Transaction.newBuilder()
+                .addActions(TransactionAction.newBuilder().setPayload(actionPayload.toByteString()))
+                .build();
+        Payload payload = Payload.newBuilder().setData(transaction.toByteString()).build();
+        EndorseResponse response = EndorseResponse.newBuilder()
+                .setPreparedTransaction(Envelope.newBuilder().setPayload(payload.toByteString()))
+                .build();
+        respond(observer, response, jitter(endorseMillis));
+    }
+
+    @Override
+    public void submit(SubmitRequest request, StreamObserver<SubmitResponse> observer) {
+        respond(observer, SubmitResponse.getDefaultInstance(), jitter(submitMillis));
+    }
+
+    // Every transaction commits in the next block
+    @Override
+    public void commitStatus(SignedCommitStatusRequest request, StreamObserver<CommitStatusResponse> observer) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long block = elapsedMillis / blockMillis + 1;
+        TxValidationCode code = ThreadLocalRandom.current().nextDouble() < conflictRate
+                ? TxValidationCode.MVCC_READ_CONFLICT
+                : TxValidationCode.VALID;
+        CommitStatusResponse response = CommitStatusResponse.newBuilder()
+                .setResult(code)
+                .setBlockNumber(block)
+                .build();
+        respond(observer, response, block * blockMillis - elapsedMillis);
+    }
+
+    @Override
+    public void close() {
+        if (gateway != null) {
+            gateway.close();
+            try {
+                channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        responses.shutdownNow();
+    }
+
+    private <T> void respond(StreamObserver<T> observer, T response, long delayMillis) {
+        responses.schedule(() -> {
+            observer.onNext(response);
+            observer.onCompleted();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Uniformly between half and one and a half times the configured latency
+    private static long jitter(long millis) {
+        return millis <= 0 ? 0 : millis / 2 + ThreadLocalRandom.current().nextLong(millis + 1);
+    }
+
+    private static Response ok(String payload) {
+        return Response.newBuilder()
+                .setStatus(200)
+                .setPayload(ByteString.copyFromUtf8(payload))
+                .build();
+    }
+
+    // What the chaincode would return, in just enough detail for FabricService to parse it
+    private static String result(List<String> args) {
+        String function = args.isEmpty() ? "" : args.get(0);
+        switch (function) {
+            case "readBasil":
+                return plant(args.get(1), "[]");
+            case "readBasils": {
+                StringBuilder basils = new StringBuilder();
+                for (JsonElement qrCode : JsonParser.parseString(args.get(1)).getAsJsonArray()) {
+                    basils.append(basils.length() == 0 ? "" : ",").append(plant(qrCode.getAsString(),
+                            Boolean.parseBoolean(args.get(2)) ? "[]" : "null"));
+                }
+                return "{\"basils\":[" + basils + "],\"missing\":[]}";
+            }
+            case "getHistory":
+                return "[]";
+            case "getHistoryPage":
+                return "{\"legs\":[],\"bookmark\":\"\"}";
+            case "createBasilsBatch":
+                return "{\"created\":" + JsonParser.parseString(args.get(1)).getAsJsonArray().size()
+                        + ",\"duplicates\":[]}";
+            case "updateBasilStatesBatch":
+                return Integer.toString(JsonParser.parseString(args.get(1)).getAsJsonArray().size());
+            default:
+                return "";
+        }
+    }
+
+    private static String plant(String qrCode, String transportHistory) {
+        return "{\"qrCode\":\"" + qrCode + "\",\"origin\":\"NL\",\"currentStatus\":\"In Transit\","
+                + "\"currentGps\":\"52.37,4.90\",\"currentOwner\":{\"orgId\":\"Org1MSP\",\"user\":\"Greenhouse\"},"
+                + "\"transportHistory\":" + transportHistory + "}";
+    }
+
+    private static List<String> arguments(SignedProposal signedProposal) {
+        try {
+            Proposal proposal = Proposal.parseFrom(signedProposal.getProposalBytes());
+            ChaincodeProposalPayload payload = ChaincodeProposalPayload.parseFrom(proposal.getPayload());
+            ChaincodeInvocationSpec invocation = ChaincodeInvocationSpec.parseFrom(payload.getInput());
+            List<ByteString> args = invocation.getChaincodeSpec().getInput().getArgsList();
+            String[] strings = new String[args.size()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = args.get(i).toString(StandardCharsets.UTF_8);
+            }
+            return List.of(strings);
+        } catch (InvalidProtocolBufferException e) {
+            throw Status.INVALID_ARGUMENT.withDescription("Unreadable proposal: " + e.getMessage()).asRuntimeException();
+        }
+    }
+
+    // The stand-in never checks signatures, so any MSP ID and credentials will do
+    private static final class SimulatedIdentity implements Identity {
+        @Override
+        public String getMspId() {
+            return LoadGenerator.MSP_ID;
+        }
+
+        @Override
+        public byte[] getCredentials() {
+            return new byte[0];
+        }
+    }
+}
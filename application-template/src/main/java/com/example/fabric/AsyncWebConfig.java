@@ -0,0 +1,20 @@
+package com.example.fabric;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AsyncWebConfig implements WebMvcConfigurer {
+
+    // Time for a write to queue on the write pool and for the coalescing window, on top of the submit itself
+    private static final long WRITE_QUEUE_ALLOWANCE_MILLIS = 10_000;
+    // A blocking write answers before this even when it waits for its plant, runs into every gateway
+    // deadline and retries its conflicts, so the request never times out while its transaction may still commit
+    static final long ASYNC_REQUEST_TIMEOUT_MILLIS = SubmitScheduler.WORST_CASE_MILLIS + WRITE_QUEUE_ALLOWANCE_MILLIS;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(ASYNC_REQUEST_TIMEOUT_MILLIS);
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.GatewayException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded read-through cache of readBasil responses keyed by qrCode.
+ *
+ * Entries expire after BASIL_CACHE_TTL_SECONDS and the least recently used entry is dropped beyond
+ * BASIL_CACHE_SIZE. The TTL is only a safety net: entries are normally evicted by
+ * {@link BasilEventListener} as soon as a BasilChanged event for the plant is committed.
+ *
+ * An evaluate can be served by a peer that has not committed the block behind an eviction yet, and the
+ * gateway does not say which block a peer is at. So for BASIL_CACHE_SETTLE_MILLIS after an eviction the
+ * plant is read from the peers but not cached. A peer lagging more than that can still put a stale value
+ * back, which then lives until the next change of the plant or for at most the TTL.
+ */
+@Component
+public class BasilCache {
+    private static final int MAX_ENTRIES =
+            Integer.parseInt(System.getenv().getOrDefault("BASIL_CACHE_SIZE", "1000"));
+    private static final long TTL_SECONDS =
+            Long.parseLong(System.getenv().getOrDefault("BASIL_CACHE_TTL_SECONDS", "30"));
+    private static final long SETTLE_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("BASIL_CACHE_SETTLE_MILLIS", "2000"));
+
+    @FunctionalInterface
+    public interface Loader {
+        String load() throws GatewayException;
+    }
+
+    @FunctionalInterface
+    public interface BatchLoader {
+        // Values of the qrCodes that exist; the others are left out
+        Map<String, String> load(List<String> qrCodes) throws GatewayException;
+    }
+
+    private static final class Entry {
+        final String value;
+        final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Loads of one plant in flight; version is bumped by every invalidation of the plant, so that a load
+    // racing with one is not cached
+    private static final class Loads {
+        long version;
+        int inFlight;
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long settleNanos;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+    private final Map<String, Loads> loads = new HashMap<>();
+    // Plants evicted within the settle time, to when they may be cached again; oldest first
+    private final LinkedHashMap<String, Long> settling = new LinkedHashMap<>();
+    private long allSettledAt;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public BasilCache() {
+        this(MAX_ENTRIES, TimeUnit.SECONDS.toNanos(TTL_SECONDS), TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS),
+                System::nanoTime);
+    }
+
+    BasilCache(int maxEntries, long ttlNanos, long settleNanos, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlNanos;
+        this.settleNanos = settleNanos;
+        this.clock = clock;
+        this.allSettledAt = clock.getAsLong();
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > BasilCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // The cached value for qrCode, or the loader's result, which is cached unless qrCode changed meanwhile or
+    // is still settling. Failed loads are not cached.
+    public String get(String qrCode, Loader loader) throws GatewayException {
+        long version;
+        synchronized (this) {
+            Entry entry = entries.get(qrCode);
+            if (entry != null && entry.expiresAt - clock.getAsLong() > 0) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(qrCode);
+                evictions.incrementAndGet();
+            }
+            version = startLoad(qrCode);
+        }
+
+        misses.incrementAndGet();
+        String value = null;
+        try {
+            value = loader.load();
+        } finally {
+            synchronized (this) {
+                if (finishLoad(qrCode, version) && value != null) {
+                    put(qrCode, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    // Like get for many plants, loading every uncached one with a single loader call.
+    // Plants the loader does not return are left out of the result.
+    public Map<String, String> getAll(Collection<String> qrCodes, BatchLoader loader) throws GatewayException {
+        Map<String, String> values = getPresent(qrCodes);
+        Map<String, Long> versions = new LinkedHashMap<>();
+        synchronized (this) {
+            for (String qrCode : qrCodes) {
+                if (!values.containsKey(qrCode) && !versions.containsKey(qrCode)) {
+                    versions.put(qrCode, startLoad(qrCode));
+                }
+            }
+        }
+        if (versions.isEmpty()) {
+            return values;
+        }
+
+        Map<String, String> loaded = null;
+        try {
+            loaded = loader.load(new ArrayList<>(versions.keySet()));
+        } finally {
+            synchronized (this) {
+                for (Map.Entry<String, Long> version : versions.entrySet()) {
+                    String value = loaded != null ? loaded.get(version.getKey()) : null;
+                    if (finishLoad(version.getKey(), version.getValue()) && value != null) {
+                        put(version.getKey(), value);
+                    }
+                }
+            }
+        }
+        values.putAll(loaded);
+        return values;
+    }
+
+    // The unexpired cached values of those qrCodes that have one, without loading the others
+    public synchronized Map<String, String> getPresent(Collection<String> qrCodes) {
+        Map<String, String> values = new HashMap<>();
+        long now = clock.getAsLong();
+        for (String qrCode : qrCodes) {
+            Entry entry = entries.get(qrCode);
+            if (entry != null && entry.expiresAt - now > 0) {
+                hits.incrementAndGet();
+                values.put(qrCode, entry.value);
+                continue;
+            }
+            if (entry != null) {
+                entries.remove(qrCode);
+                evictions.incrementAndGet();
+            }
+            misses.incrementAndGet();
+        }
+        return values;
+    }
+
+    public synchronized void invalidate(String qrCode) {
+        invalidations.incrementAndGet();
+        entries.remove(qrCode);
+        Loads pending = loads.get(qrCode);
+        if (pending != null) {
+            pending.version++;
+        }
+
+        long now = clock.getAsLong();
+        Iterator<Long> settled = settling.values().iterator();
+        while (settled.hasNext() && settled.next() - now <= 0) {
+            settled.remove();
+        }
+        settling.remove(qrCode);
+        settling.put(qrCode, now + settleNanos);
+    }
+
+    // Used when events may have been missed, e.g. while the event stream reconnects
+    public synchronized void invalidateAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+        loads.values().forEach(pending -> pending.version++);
+        settling.clear();
+        allSettledAt = clock.getAsLong() + settleNanos;
+    }
+
+    // Register a load of qrCode and return the version it has to find unchanged when it completes
+    private long startLoad(String qrCode) {
+        Loads pending = loads.computeIfAbsent(qrCode, k -> new Loads());
+        pending.inFlight++;
+        return pending.version;
+    }
+
+    // Whether qrCode was left alone while the load that started at version was in flight
+    private boolean finishLoad(String qrCode, long version) {
+        Loads pending = loads.get(qrCode);
+        boolean unchanged = pending.version == version;
+        if (--pending.inFlight == 0) {
+            loads.remove(qrCode);
+        }
+        return unchanged;
+    }
+
+    private void put(String qrCode, String value) {
+        long now = clock.getAsLong();
+        Long settledAt = settling.get(qrCode);
+        if (allSettledAt - now > 0 || (settledAt != null && settledAt - now > 0)) {
+            return;
+        }
+        entries.put(qrCode, new Entry(value, now + ttlNanos));
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) entries.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+}
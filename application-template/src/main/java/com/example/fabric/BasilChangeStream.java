@@ -0,0 +1,247 @@
+package com.example.fabric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hyperledger.fabric.client.ChaincodeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes the plant changes {@link BasilEventListener} reads from the one chaincode event stream to
+ * server-sent event subscribers, so screens no longer poll the peers.
+ *
+ * Each subscriber can ask for a set of QR codes, an owner organization, or both. A change reaches an owner
+ * subscriber when the plant belonged to that organization before or after it. Events wait in a buffer of
+ * SSE_BUFFER_SIZE per subscriber and are written on SSE_SEND_THREADS threads, so a slow client never holds
+ * up the event stream or the other clients. When a buffer overflows it is emptied and replaced by a single
+ * resync event, after which the client should fetch what it shows again.
+ */
+@Component
+public class BasilChangeStream {
+    static final int SSE_BUFFER_SIZE = Integer.parseInt(System.getenv().getOrDefault("SSE_BUFFER_SIZE", "256"));
+    private static final int SSE_MAX_SUBSCRIBERS =
+            Integer.parseInt(System.getenv().getOrDefault("SSE_MAX_SUBSCRIBERS", "1000"));
+    private static final int SSE_SEND_THREADS = Integer.parseInt(System.getenv().getOrDefault("SSE_SEND_THREADS", "4"));
+    private static final long SSE_HEARTBEAT_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("SSE_HEARTBEAT_MILLIS", "15000"));
+    // EventSource reconnects on its own once the stream ends
+    private static final long SSE_TIMEOUT_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("SSE_TIMEOUT_MILLIS", "1800000"));
+    static final String CHANGE_EVENT = "basil";
+    static final String RESYNC_EVENT = "resync";
+    private static final Gson GSON = new Gson();
+    private static final Message RESYNC = new Message(RESYNC_EVENT, null, "{}");
+    private static final Message HEARTBEAT = new Message(null, null, null);
+
+    // One event as buffered for any number of subscribers; a null name is a comment line
+    private static final class Message {
+        final String name;
+        final String id;
+        final String data;
+
+        Message(String name, String id, String data) {
+            this.name = name;
+            this.id = id;
+            this.data = data;
+        }
+
+        // SseEventBuilder.build() appends to the builder, so every send needs its own
+        SseEmitter.SseEventBuilder toEvent() {
+            if (name == null) {
+                return SseEmitter.event().comment("heartbeat");
+            }
+            SseEmitter.SseEventBuilder event = SseEmitter.event().name(name);
+            if (id != null) {
+                event.id(id);
+            }
+            return event.data(data);
+        }
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MILLIS);
+        final Set<String> qrCodes;
+        final String owner;
+
+        // Guarded by the subscriber itself
+        final ArrayDeque<Message> buffer = new ArrayDeque<>();
+        boolean sending;
+        boolean closed;
+
+        Subscriber(Set<String> qrCodes, String owner) {
+            this.qrCodes = qrCodes;
+            this.owner = owner;
+        }
+
+        boolean wants(String qrCode, String newOwner, String previousOwner) {
+            return (qrCodes.isEmpty() || qrCodes.contains(qrCode))
+                    && (owner == null || owner.equals(newOwner) || owner.equals(previousOwner));
+        }
+
+        void offer(Message message) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (buffer.size() >= SSE_BUFFER_SIZE) {
+                    // Whatever is buffered is stale now; the client refetches instead
+                    dropped.increment(buffer.size() + 1);
+                    buffer.clear();
+                    buffer.add(RESYNC);
+                    return;
+                }
+                buffer.add(message);
+                if (sending) {
+                    return;
+                }
+                sending = true;
+            }
+            try {
+                senders.execute(this::send);
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        // Runs on one sender thread at a time until the buffer is empty
+        void send() {
+            while (true) {
+                Message message;
+                synchronized (this) {
+                    message = buffer.poll();
+                    if (message == null || closed) {
+                        sending = false;
+                        return;
+                    }
+                }
+                try {
+                    emitter.send(message.toEvent());
+                } catch (IOException | IllegalStateException e) {
+                    // The client has gone away
+                    close();
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                buffer.clear();
+            }
+            subscribers.remove(this);
+            emitter.complete();
+        }
+    }
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeats =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("sse-heartbeat"));
+    private final Counter dropped;
+
+    @Autowired
+    public BasilChangeStream(MeterRegistry registry) {
+        this(registry, Executors.newFixedThreadPool(SSE_SEND_THREADS, daemonThreads("sse-send")));
+    }
+
+    BasilChangeStream(MeterRegistry registry, ExecutorService senders) {
+        this.senders = senders;
+        Gauge.builder("fabric.sse.subscribers", subscribers, Set::size)
+                .description("Open server-sent event subscriptions to plant changes")
+                .register(registry);
+        dropped = Counter.builder("fabric.sse.dropped")
+                .description("Plant change events dropped because a subscriber fell too far behind")
+                .register(registry);
+        // A comment line every so often keeps proxies from closing idle streams and finds dead clients
+        heartbeats.scheduleWithFixedDelay(() -> subscribers.forEach(subscriber -> subscriber.offer(HEARTBEAT)),
+                SSE_HEARTBEAT_MILLIS, SSE_HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // An empty qrCodes set and a null owner mean any plant.
+    // Throws RejectedExecutionException when SSE_MAX_SUBSCRIBERS streams are already open.
+    public SseEmitter subscribe(Set<String> qrCodes, String owner) {
+        if (subscribers.size() >= SSE_MAX_SUBSCRIBERS) {
+            throw new RejectedExecutionException("Too many change subscriptions");
+        }
+        Subscriber subscriber = new Subscriber(qrCodes == null ? Collections.emptySet() : qrCodes, owner);
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(subscriber::close);
+        subscriber.emitter.onError(e -> subscriber.close());
+        subscribers.add(subscriber);
+        return subscriber.emitter;
+    }
+
+    // header is the plant's new header without transport history, null when it was deleted
+    public void publish(ChaincodeEvent event, String qrCode, JsonObject header, String previousOwner) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        String owner = header != null ? BasilView.owner(header) : null;
+        Message change = null;
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.wants(qrCode, owner, previousOwner)) {
+                continue;
+            }
+            if (change == null) {
+                JsonObject data = new JsonObject();
+                data.addProperty("qrCode", qrCode);
+                data.addProperty("deleted", header == null);
+                data.add("basil", header);
+                data.addProperty("blockNumber", event.getBlockNumber());
+                data.addProperty("transactionId", event.getTransactionId());
+                change = new Message(CHANGE_EVENT, event.getBlockNumber() + ":" + event.getTransactionId(),
+                        GSON.toJson(data));
+            }
+            subscriber.offer(change);
+        }
+    }
+
+    // Every subscriber should fetch what it shows again, e.g. after an event that could not be read
+    public void resyncAll() {
+        subscribers.forEach(subscriber -> subscriber.offer(RESYNC));
+    }
+
+    public int getSubscribers() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        heartbeats.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+        senders.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
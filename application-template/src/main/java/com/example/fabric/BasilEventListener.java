@@ -0,0 +1,188 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.ChaincodeEvent;
+import org.hyperledger.fabric.client.CloseableIterator;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.Network;
+import org.hyperledger.fabric.protos.common.BlockchainInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonParseException;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Follows the BasilChanged chaincode events, evicts every plant they mention from {@link BasilCache},
+ * projects them into {@link BasilView} and pushes them to the subscribers of {@link BasilChangeStream}.
+ *
+ * The stream resumes from the view's checkpoint, or from the first block when there is none, so the view
+ * catches up on anything committed while the application or the stream was down. A view without a snapshot
+ * is seeded from listBasils before the stream first opens, and then resumes from the ledger height taken
+ * just before the listing, rather than replaying every block. The cache is dropped
+ * every time the stream (re)opens, since it may hold plants changed in the meantime. Events are read with
+ * the default identity, from the peer its {@link PeerRouter} names on each (re)connect.
+ */
+@Component
+public class BasilEventListener {
+    static final String BASIL_CHANGED_EVENT = "BasilChanged";
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+    private static final int SEED_PAGE_SIZE = 500;
+    private static final Logger log = LoggerFactory.getLogger(BasilEventListener.class);
+
+    private final GatewayPool gatewayPool;
+    private final FabricService fabricService;
+    private final BasilCache basilCache;
+    private final BasilView basilView;
+    private final BasilChangeStream changeStream;
+    private final Thread thread = new Thread(this::listen, "basil-events");
+
+    private volatile boolean running = true;
+    private volatile CloseableIterator<ChaincodeEvent> events;
+
+    public BasilEventListener(GatewayPool gatewayPool, FabricService fabricService, BasilCache basilCache,
+            BasilView basilView, BasilChangeStream changeStream) {
+        this.gatewayPool = gatewayPool;
+        this.fabricService = fabricService;
+        this.basilCache = basilCache;
+        this.basilView = basilView;
+        this.changeStream = changeStream;
+        thread.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        CloseableIterator<ChaincodeEvent> current = events;
+        if (current != null) {
+            current.close();
+        }
+        thread.interrupt();
+        thread.join(RECONNECT_DELAY_MILLIS);
+    }
+
+    private void listen() {
+        while (running) {
+            PeerRouter router = null;
+            Network network = null;
+            try {
+                // Credentials are read here rather than at startup, and a failed read is tried again next time
+                router = gatewayPool.router(gatewayPool.getDefaultIdentity());
+                network = router.eventNetwork();
+                if (basilView.needsSeed()) {
+                    seedView(network);
+                }
+                follow(network);
+            } catch (GatewayException | RuntimeException e) {
+                if (running) {
+                    log.warn("Chaincode event stream failed, retrying: {}", e.getMessage());
+                    if (network != null && e instanceof RuntimeException) {
+                        router.eventStreamFailed(network, (RuntimeException) e);
+                    }
+                }
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void seedView(Network network) throws GatewayException {
+        // Taken before the listing, so any block it might miss is still replayed; replaying one twice is harmless
+        long height = ledgerHeight(network);
+        List<JsonObject> basils = new ArrayList<>();
+        String bookmark = "";
+        do {
+            JsonObject page = JsonParser.parseString(fabricService.listBasils(SEED_PAGE_SIZE, bookmark))
+                    .getAsJsonObject();
+            page.getAsJsonArray("basils").forEach(basil -> basils.add(basil.getAsJsonObject()));
+            bookmark = page.get("bookmark").getAsString();
+        } while (running && !bookmark.isEmpty());
+        if (running) {
+            basilView.seed(basils, height);
+        }
+    }
+
+    // Number of blocks on the channel, which is also the number of the next block to be committed
+    private static long ledgerHeight(Network network) throws GatewayException {
+        byte[] info = network.getContract("qscc").evaluateTransaction("GetChainInfo", network.getName());
+        try {
+            return BlockchainInfo.parseFrom(info).getHeight();
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Unreadable chain info from qscc", e);
+        }
+    }
+
+    private void follow(Network network) {
+        try (CloseableIterator<ChaincodeEvent> stream = network
+                .newChaincodeEventsRequest(FabricGatewayConfig.CHAINCODE_NAME)
+                .startBlock(0)
+                .checkpoint(basilView.getCheckpoint())
+                .build()
+                .getEvents()) {
+            events = stream;
+            basilCache.invalidateAll();
+            while (running && stream.hasNext()) {
+                onEvent(stream.next());
+            }
+        }
+    }
+
+    void onEvent(ChaincodeEvent event) {
+        if (!BASIL_CHANGED_EVENT.equals(event.getEventName())) {
+            basilView.apply(event, new JsonArray());
+            return;
+        }
+        try {
+            // Payload is a JSON array of {qrCode, deleted, basil}
+            JsonArray changes = JsonParser.parseString(new String(event.getPayload(), StandardCharsets.UTF_8)).getAsJsonArray();
+            // Owners before the change, so that subscribers of an organization also hear of plants leaving it
+            List<String> previousOwners = new ArrayList<>(changes.size());
+            for (JsonElement change : changes) {
+                String qrCode = change.getAsJsonObject().get("qrCode").getAsString();
+                basilCache.invalidate(qrCode);
+                previousOwners.add(basilView.getOwner(qrCode));
+            }
+            basilView.apply(event, changes);
+            for (int i = 0; i < changes.size(); i++) {
+                JsonObject change = changes.get(i).getAsJsonObject();
+                JsonElement basil = change.get("basil");
+                JsonObject header = null;
+                if (!change.get("deleted").getAsBoolean() && basil != null && basil.isJsonObject()) {
+                    header = basil.getAsJsonObject().deepCopy();
+                    header.remove("transportHistory");
+                }
+                changeStream.publish(event, change.get("qrCode").getAsString(), header, previousOwners.get(i));
+            }
+        } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+            // Cannot tell which plants changed, so none of them can be trusted
+            log.warn("Unreadable {} event in transaction {}: {}", BASIL_CHANGED_EVENT, event.getTransactionId(),
+                    e.getMessage());
+            basilCache.invalidateAll();
+            basilView.apply(event, new JsonArray());
+            changeStream.resyncAll();
+        }
+    }
+}
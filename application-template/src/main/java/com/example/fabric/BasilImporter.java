@@ -0,0 +1,221 @@
+package com.example.fabric;
+
+import com.google.gson.JsonParseException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Streams a bulk import of new plants into createBasilsBatch transactions.
+ *
+ * Rows are parsed one line at a time and grouped into chunks of IMPORT_CHUNK_SIZE. Each import has at most
+ * IMPORT_CONCURRENCY chunks in flight; reading stops until one of them commits, so memory stays bounded
+ * however large the input is. Every row gets exactly one {@link RowResult}, reported when its chunk
+ * completes, so results do not arrive in input order.
+ */
+@Component
+public class BasilImporter {
+    // Stays below the chaincode's limit of 1000 plants per batch
+    private static final int IMPORT_CHUNK_SIZE =
+            Integer.parseInt(System.getenv().getOrDefault("IMPORT_CHUNK_SIZE", "500"));
+    private static final int IMPORT_CONCURRENCY =
+            Integer.parseInt(System.getenv().getOrDefault("IMPORT_CONCURRENCY", "4"));
+
+    public enum Format { CSV, NDJSON }
+
+    // Outcome of one input row; row is the 1-based line number
+    public static final class RowResult {
+        private final int row;
+        private final String qrCode;
+        private final String status;
+        private final String error;
+
+        RowResult(int row, String qrCode, String status, String error) {
+            this.row = row;
+            this.qrCode = qrCode;
+            this.status = status;
+            this.error = error;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getQrCode() {
+            return qrCode;
+        }
+
+        // created, duplicate, invalid or failed
+        public String getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    public static final class Summary {
+        private int rows;
+        private int created;
+        private int duplicates;
+        private int invalid;
+        private int failed;
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getCreated() {
+            return created;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public int getInvalid() {
+            return invalid;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        private void count(String status) {
+            rows++;
+            switch (status) {
+                case "created": created++; break;
+                case "duplicate": duplicates++; break;
+                case "invalid": invalid++; break;
+                default: failed++;
+            }
+        }
+    }
+
+    private static final class Row {
+        final int line;
+        final BasilRegistration plant;
+
+        Row(int line, BasilRegistration plant) {
+            this.line = line;
+            this.plant = plant;
+        }
+    }
+
+    private final FabricService fabricService;
+    private final ExecutorService submitters = Executors.newCachedThreadPool(new ImportThreadFactory());
+
+    public BasilImporter(FabricService fabricService) {
+        this.fabricService = fabricService;
+    }
+
+    // Blocks until every row has a result. results is called from several threads, but never concurrently.
+    // Plants are registered by the given GatewayPool identity, or the default one when it is null.
+    public Summary importPlants(String identity, BufferedReader input, Format format, Consumer<RowResult> results)
+            throws IOException, InterruptedException {
+        Summary summary = new Summary();
+        Consumer<RowResult> report = result -> {
+            synchronized (summary) {
+                summary.count(result.getStatus());
+                results.accept(result);
+            }
+        };
+        Semaphore window = new Semaphore(IMPORT_CONCURRENCY);
+        // Repeats are only caught within a chunk, so memory does not grow with the input. A repeat in a later
+        // chunk is reported as a duplicate by the chaincode; if both chunks are in flight at once, one of them
+        // fails on an MVCC conflict, and the SubmitScheduler retry then finds the plant already registered.
+        Set<String> inChunk = new HashSet<>();
+        List<Row> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+
+        int line = 0;
+        String text;
+        while ((text = input.readLine()) != null) {
+            line++;
+            if (text.isBlank() || (line == 1 && format == Format.CSV && isCsvHeader(text))) {
+                continue;
+            }
+            BasilRegistration plant;
+            try {
+                plant = format == Format.CSV ? BasilRegistration.fromCsvLine(text) : BasilRegistration.fromJsonLine(text);
+                plant.validate();
+            } catch (JsonParseException e) {
+                report.accept(new RowResult(line, null, "invalid", e.getMessage()));
+                continue;
+            }
+            if (!inChunk.add(plant.getQrCode())) {
+                report.accept(new RowResult(line, plant.getQrCode(), "duplicate", "Repeated in the import"));
+                continue;
+            }
+            chunk.add(new Row(line, plant));
+            if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                submit(identity, chunk, window, report);
+                chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+                inChunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            submit(identity, chunk, window, report);
+        }
+        window.acquire(IMPORT_CONCURRENCY);
+        return summary;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        submitters.shutdownNow();
+    }
+
+    private void submit(String identity, List<Row> chunk, Semaphore window, Consumer<RowResult> report)
+            throws InterruptedException {
+        window.acquire();
+        submitters.execute(() -> {
+            try {
+                List<BasilRegistration> plants = new ArrayList<>(chunk.size());
+                chunk.forEach(row -> plants.add(row.plant));
+                Set<String> duplicates = new HashSet<>(
+                        GatewayPool.as(identity, () -> fabricService.createBasilsBatch(plants)).call());
+                for (Row row : chunk) {
+                    String qrCode = row.plant.getQrCode();
+                    report.accept(duplicates.contains(qrCode)
+                            ? new RowResult(row.line, qrCode, "duplicate", "Already on the ledger")
+                            : new RowResult(row.line, qrCode, "created", null));
+                }
+            } catch (Exception e) {
+                for (Row row : chunk) {
+                    report.accept(new RowResult(row.line, row.plant.getQrCode(), "failed", e.getMessage()));
+                }
+            } finally {
+                window.release();
+            }
+        });
+    }
+
+    private static boolean isCsvHeader(String line) {
+        return line.trim().toLowerCase().startsWith("qrcode");
+    }
+
+    private static final class ImportThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "basil-import-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.fabric;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A single sensor sample for one plant, as accepted by the batch state endpoint
+ * and forwarded to the updateBasilStatesBatch transaction.
+ */
+public class BasilReading {
+    private static final Gson GSON = new Gson();
+
+    private String qrCode;
+    private String gps;
+    private Long timestamp;
+    private String temperature;
+    private String humidity;
+    private String status;
+
+    public BasilReading() {
+    }
+
+    public BasilReading(String qrCode, String gps, Long timestamp, String temperature, String humidity, String status) {
+        this.qrCode = qrCode;
+        this.gps = gps;
+        this.timestamp = timestamp;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.status = status;
+    }
+
+    public String getQrCode() {
+        return qrCode;
+    }
+
+    public String getGps() {
+        return gps;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getTemperature() {
+        return temperature;
+    }
+
+    public String getHumidity() {
+        return humidity;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public static List<BasilReading> fromJsonArray(String json) {
+        BasilReading[] readings = GSON.fromJson(json, BasilReading[].class);
+        if (readings == null) {
+            return new ArrayList<>();
+        }
+        for (BasilReading reading : readings) {
+            requireReading(reading);
+        }
+        return new ArrayList<>(Arrays.asList(readings));
+    }
+
+    public static List<BasilReading> fromNdjson(String ndjson) {
+        List<BasilReading> readings = new ArrayList<>();
+        for (String line : ndjson.split("\\r?\\n")) {
+            if (!line.isBlank()) {
+                readings.add(requireReading(GSON.fromJson(line, BasilReading.class)));
+            }
+        }
+        return readings;
+    }
+
+    public static String toJsonArray(List<BasilReading> readings) {
+        return GSON.toJson(readings);
+    }
+
+    // A JSON null parses to a null reading rather than failing
+    private static BasilReading requireReading(BasilReading reading) {
+        if (reading == null) {
+            throw new JsonParseException("Readings must be JSON objects, not null");
+        }
+        return reading;
+    }
+
+    public void validate() {
+        if (qrCode == null || qrCode.isEmpty() || gps == null || timestamp == null
+                || temperature == null || humidity == null || status == null) {
+            throw new JsonParseException("Every reading needs qrCode, gps, timestamp, temperature, humidity and status");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.fabric;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A new plant, as read from one row of a bulk import and forwarded to the createBasilsBatch transaction.
+ */
+public class BasilRegistration {
+    private static final Gson GSON = new Gson();
+
+    private String qrCode;
+    private String origin;
+
+    public BasilRegistration() {
+    }
+
+    public BasilRegistration(String qrCode, String origin) {
+        this.qrCode = qrCode;
+        this.origin = origin;
+    }
+
+    public String getQrCode() {
+        return qrCode;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    // qrCode,origin; a field may be wrapped in double quotes to hold commas, with "" for a literal quote
+    public static BasilRegistration fromCsvLine(String line) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new JsonParseException("Unterminated quoted field");
+        }
+        fields.add(field.toString().trim());
+        if (fields.size() != 2) {
+            throw new JsonParseException("Expected qrCode,origin but got " + fields.size() + " fields");
+        }
+        return new BasilRegistration(fields.get(0), fields.get(1));
+    }
+
+    public static BasilRegistration fromJsonLine(String line) {
+        BasilRegistration registration = GSON.fromJson(line, BasilRegistration.class);
+        if (registration == null) {
+            throw new JsonParseException("Empty row");
+        }
+        return registration;
+    }
+
+    public static String toJsonArray(List<BasilRegistration> registrations) {
+        return GSON.toJson(registrations);
+    }
+
+    public void validate() {
+        if (qrCode == null || qrCode.isEmpty() || origin == null || origin.isEmpty()) {
+            throw new JsonParseException("Every plant needs a qrCode and an origin");
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.ChaincodeEvent;
+import org.hyperledger.fabric.client.Checkpoint;
+import org.hyperledger.fabric.client.FileCheckpointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Off-chain copy of every plant's current header, projected from BasilChanged events by
+ * {@link BasilEventListener} and indexed by owner, status and origin, so list screens never query a peer.
+ *
+ * The view is held in memory. Every VIEW_SNAPSHOT_MILLIS it is written to VIEW_DIR/snapshot.json, and only
+ * then is the FileCheckpointer in VIEW_DIR/checkpoint.json moved up to the last applied event. The checkpoint
+ * never runs ahead of the snapshot: after a restart the snapshot is loaded and events resume from the
+ * checkpoint. Events replayed in between carry whole headers, so applying them again is harmless.
+ *
+ * Plants that were created before the chaincode emitted BasilChanged events, and have not changed since, are
+ * in no event. So when there is no snapshot the view is first seeded with every plant on the ledger, and then
+ * follows the events from the ledger height taken just before that listing. Blocks committed while the listing
+ * ran are replayed on top of it, which can briefly show an older header until the plant's latest event.
+ */
+@Component
+public class BasilView {
+    private static final Path VIEW_DIR = Paths.get(System.getenv().getOrDefault("VIEW_DIR", "basil-view"));
+    private static final long VIEW_SNAPSHOT_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("VIEW_SNAPSHOT_MILLIS", "5000"));
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final Gson GSON = new Gson();
+    private static final Logger log = LoggerFactory.getLogger(BasilView.class);
+
+    private final Path snapshotFile = VIEW_DIR.resolve("snapshot.json");
+    private final FileCheckpointer checkpointer;
+    private final ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "basil-view-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Headers without transport history, by QR code; everything below is guarded by lock
+    private final NavigableMap<String, JsonObject> plants = new TreeMap<>();
+    private final Map<String, NavigableSet<String>> byOwner = new HashMap<>();
+    private final Map<String, NavigableSet<String>> byStatus = new HashMap<>();
+    private final Map<String, NavigableSet<String>> byOrigin = new HashMap<>();
+    private ChaincodeEvent lastApplied;
+    // Block the events resume from after seeding, until the first event is applied; -1 when not seeded here
+    private long seedBlock = -1;
+    private boolean dirty;
+    private boolean seeded;
+
+    public BasilView() throws IOException {
+        Files.createDirectories(VIEW_DIR);
+        Path checkpointFile = VIEW_DIR.resolve("checkpoint.json");
+        if (Files.exists(snapshotFile)) {
+            loadSnapshot();
+            seeded = true;
+        } else {
+            // A checkpoint without its snapshot would skip the events that built the view
+            Files.deleteIfExists(checkpointFile);
+        }
+        checkpointer = new FileCheckpointer(checkpointFile);
+        snapshots.scheduleWithFixedDelay(this::saveSnapshot, VIEW_SNAPSHOT_MILLIS, VIEW_SNAPSHOT_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Where the event stream should resume: just after the last applied event, else the saved checkpoint
+    public Checkpoint getCheckpoint() {
+        lock.readLock().lock();
+        try {
+            if (lastApplied != null) {
+                return position(OptionalLong.of(lastApplied.getBlockNumber()),
+                        Optional.of(lastApplied.getTransactionId()));
+            }
+            if (seedBlock >= 0) {
+                return position(OptionalLong.of(seedBlock), Optional.empty());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (checkpointer) {
+            return position(checkpointer.getBlockNumber(), checkpointer.getTransactionId());
+        }
+    }
+
+    // changes is the payload of a BasilChanged event, or empty for any other event, which only moves the position
+    public void apply(ChaincodeEvent event, JsonArray changes) {
+        lock.writeLock().lock();
+        try {
+            for (JsonElement element : changes) {
+                JsonObject change = element.getAsJsonObject();
+                String qrCode = change.get("qrCode").getAsString();
+                remove(qrCode);
+                JsonElement basil = change.get("basil");
+                if (!change.get("deleted").getAsBoolean() && basil != null && basil.isJsonObject()) {
+                    JsonObject header = basil.getAsJsonObject().deepCopy();
+                    header.remove("transportHistory");
+                    add(qrCode, header);
+                }
+            }
+            lastApplied = event;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Whether the view still has to be seeded from the ledger before it follows the events
+    public boolean needsSeed() {
+        lock.readLock().lock();
+        try {
+            return !seeded;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every plant on the ledger, as listBasils returns them, and the ledger height taken before listing them.
+    // Applied in one go, so a snapshot never holds only part of the seed.
+    public void seed(List<JsonObject> basils, long height) {
+        lock.writeLock().lock();
+        try {
+            for (JsonObject basil : basils) {
+                String qrCode = basil.get("qrCode").getAsString();
+                JsonObject header = basil.deepCopy();
+                header.remove("transportHistory");
+                remove(qrCode);
+                add(qrCode, header);
+            }
+            seedBlock = height;
+            seeded = true;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Seeded the view with {} plants from the ledger at height {}", basils.size(), height);
+    }
+
+    // Plants matching every given filter (null means any), in QR code order after bookmark.
+    // Returns {"basils": [...], "bookmark": "..."} like the chaincode's index queries; an empty bookmark ends the list.
+    public String query(String owner, String status, String origin, int pageSize, String bookmark) {
+        int limit = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        lock.readLock().lock();
+        try {
+            NavigableSet<String> candidates = plants.navigableKeySet();
+            for (NavigableSet<String> indexed : Arrays.asList(lookup(byOwner, owner), lookup(byStatus, status),
+                    lookup(byOrigin, origin))) {
+                if (indexed != null && indexed.size() < candidates.size()) {
+                    candidates = indexed;
+                }
+            }
+
+            List<JsonObject> page = new ArrayList<>(limit);
+            String next = "";
+            Iterable<String> keys = bookmark == null || bookmark.isEmpty() ? candidates : candidates.tailSet(bookmark, false);
+            for (String qrCode : keys) {
+                JsonObject basil = plants.get(qrCode);
+                if (!matches(basil, owner, status, origin)) {
+                    continue;
+                }
+                if (page.size() == limit) {
+                    next = page.get(limit - 1).get("qrCode").getAsString();
+                    break;
+                }
+                page.add(basil);
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("basils", page);
+            result.put("bookmark", next);
+            return GSON.toJson(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Current owner organization of a plant in the view, null when it is not there
+    public String getOwner(String qrCode) {
+        lock.readLock().lock();
+        try {
+            JsonObject header = plants.get(qrCode);
+            return header != null ? owner(header) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("plants", plants.size());
+            stats.put("owners", byOwner.size());
+            stats.put("statuses", byStatus.size());
+            stats.put("origins", byOrigin.size());
+            stats.put("appliedBlock", lastApplied != null ? lastApplied.getBlockNumber() : null);
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (checkpointer) {
+            OptionalLong block = checkpointer.getBlockNumber();
+            stats.put("checkpointBlock", block.isPresent() ? block.getAsLong() : null);
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        snapshots.shutdownNow();
+        saveSnapshot();
+        synchronized (checkpointer) {
+            checkpointer.close();
+        }
+    }
+
+    // Write the view to a temporary file, move it into place, then advance the checkpoint to match
+    void saveSnapshot() {
+        String json;
+        ChaincodeEvent position;
+        long resumeBlock;
+        lock.readLock().lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            json = GSON.toJson(plants.values());
+            position = lastApplied;
+            resumeBlock = seedBlock;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            Path temp = VIEW_DIR.resolve("snapshot.json.tmp");
+            Files.write(temp, json.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (checkpointer) {
+                if (position != null) {
+                    checkpointer.checkpointChaincodeEvent(position);
+                } else if (resumeBlock > 0) {
+                    // Right after seeding no event has been applied yet, so resume from the seed's height
+                    checkpointer.checkpointBlock(resumeBlock - 1);
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                dirty = lastApplied != position;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            log.warn("Could not save the basil view snapshot, will retry: {}", e.getMessage());
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        try (Reader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                JsonObject header = element.getAsJsonObject();
+                add(header.get("qrCode").getAsString(), header);
+            }
+        }
+        log.info("Loaded {} plants from {}", plants.size(), snapshotFile);
+    }
+
+    private void add(String qrCode, JsonObject header) {
+        plants.put(qrCode, header);
+        index(byOwner, owner(header), qrCode);
+        index(byStatus, string(header, "currentStatus"), qrCode);
+        index(byOrigin, string(header, "origin"), qrCode);
+    }
+
+    private void remove(String qrCode) {
+        JsonObject header = plants.remove(qrCode);
+        if (header != null) {
+            unindex(byOwner, owner(header), qrCode);
+            unindex(byStatus, string(header, "currentStatus"), qrCode);
+            unindex(byOrigin, string(header, "origin"), qrCode);
+        }
+    }
+
+    private static void index(Map<String, NavigableSet<String>> index, String value, String qrCode) {
+        if (value != null) {
+            index.computeIfAbsent(value, key -> new TreeSet<>()).add(qrCode);
+        }
+    }
+
+    private static void unindex(Map<String, NavigableSet<String>> index, String value, String qrCode) {
+        NavigableSet<String> entries = value != null ? index.get(value) : null;
+        if (entries != null) {
+            entries.remove(qrCode);
+            if (entries.isEmpty()) {
+                index.remove(value);
+            }
+        }
+    }
+
+    // Null when there is no filter on this index, an empty set when nothing matches it
+    private static NavigableSet<String> lookup(Map<String, NavigableSet<String>> index, String value) {
+        if (value == null) {
+            return null;
+        }
+        return index.getOrDefault(value, Collections.emptyNavigableSet());
+    }
+
+    private static boolean matches(JsonObject basil, String owner, String status, String origin) {
+        return (owner == null || owner.equals(owner(basil)))
+                && (status == null || status.equals(string(basil, "currentStatus")))
+                && (origin == null || origin.equals(string(basil, "origin")));
+    }
+
+    static String owner(JsonObject header) {
+        JsonElement owner = header.get("currentOwner");
+        return owner != null && owner.isJsonObject() ? string(owner.getAsJsonObject(), "orgId") : null;
+    }
+
+    private static String string(JsonObject object, String member) {
+        JsonElement value = object.get(member);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    private static Checkpoint position(OptionalLong blockNumber, Optional<String> transactionId) {
+        return new Checkpoint() {
+            @Override
+            public OptionalLong getBlockNumber() {
+                return blockNumber;
+            }
+
+            @Override
+            public Optional<String> getTransactionId() {
+                return transactionId;
+            }
+        };
+    }
+}
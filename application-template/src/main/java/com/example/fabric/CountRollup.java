@@ -0,0 +1,69 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every COUNT_ROLLUP_MILLIS (0 turns it off) folds the per-transaction count and owner cold-chain deltas into
+ * their base values so that reading them stays cheap, in two separate transactions.
+ *
+ * The count roll-up fails with a phantom read whenever a plant changes while it runs; that only costs this
+ * round, and the deltas are folded by a later one. The cold-chain roll-up only reads the delta keys listed
+ * just before it, so it only fails when another backend folded the same deltas first. Several backends rolling
+ * up at once are safe either way.
+ */
+@Component
+public class CountRollup {
+    private static final long COUNT_ROLLUP_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("COUNT_ROLLUP_MILLIS", "60000"));
+    private static final Logger log = LoggerFactory.getLogger(CountRollup.class);
+
+    private final FabricService fabricService;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "count-rollup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CountRollup(FabricService fabricService) {
+        this.fabricService = fabricService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (COUNT_ROLLUP_MILLIS > 0) {
+            scheduler.scheduleWithFixedDelay(this::rollUp, COUNT_ROLLUP_MILLIS, COUNT_ROLLUP_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    void rollUp() {
+        try {
+            int folded = fabricService.rollUpCounts();
+            log.debug("Rolled up {} count deltas", folded);
+        } catch (GatewayException | CommitException | RuntimeException e) {
+            log.info("Count roll-up did not commit, will retry: {}", e.getMessage());
+        }
+        try {
+            int folded = fabricService.rollUpColdChain();
+            log.debug("Rolled up {} cold-chain deltas", folded);
+        } catch (GatewayException | CommitException | RuntimeException e) {
+            log.info("Cold-chain roll-up did not commit, will retry: {}", e.getMessage());
+        }
+    }
+}
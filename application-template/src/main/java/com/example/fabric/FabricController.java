@@ -3,84 +3,560 @@ package com.example.fabric;
 import org.hyperledger.fabric.client.GatewayException;
 import org.hyperledger.fabric.client.CommitException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+// Gateway calls run on the bounded pools of RequestExecutors, never on servlet threads.
+// When a pool is saturated the request is answered 503 straight away.
+// They act as the default identity, or as the one named in the X-Fabric-Identity header, an identity name or
+// MSP ID. The header is only taken from the proxies in IDENTITY_PROXY_ADDRESSES, which authenticate the caller.
+// Browsers are let in by CorsConfig.
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*")
 public class FabricController {
 
+    private static final Gson GSON = new Gson();
+    private static final MediaType NDJSON = new MediaType(MediaType.APPLICATION_NDJSON, StandardCharsets.UTF_8);
+    static final String IDENTITY_HEADER = "X-Fabric-Identity";
+    private static final Set<String> IDENTITY_PROXY_ADDRESSES =
+            Arrays.stream(System.getenv().getOrDefault("IDENTITY_PROXY_ADDRESSES", "").split(","))
+                    .map(String::trim)
+                    .filter(address -> !address.isEmpty())
+                    .collect(Collectors.toSet());
+    // The chaincode's limits on readings per updateBasilStatesBatch and plants per readBasils call
+    private static final int MAX_BATCH_READINGS = 1000;
+    private static final int MAX_BATCH_READ = 1000;
+
+    // Body of POST /basil/_batch
+    private static final class BatchRead {
+        List<String> qrCodes;
+        List<String> fields;
+    }
+
     @Autowired
     private FabricService fabricService;
 
+    @Autowired
+    private BasilCache basilCache;
+
+    @Autowired
+    private RequestExecutors requestExecutors;
+
+    @Autowired
+    private BasilImporter basilImporter;
+
+    @Autowired
+    private BasilView basilView;
+
+    @Autowired
+    private GatewayPool gatewayPool;
+
+    @Autowired
+    private BasilChangeStream changeStream;
+
+    // Proxy for the request being handled on the calling thread
+    @Autowired
+    private HttpServletRequest request;
+
     @PostMapping("/basil")
-    public ResponseEntity<String> createBasil(@RequestParam String id, @RequestParam String country) {
+    public CompletableFuture<ResponseEntity<String>> createBasil(@RequestParam String id, @RequestParam String country,
+            @RequestParam(defaultValue = "false") boolean async) {
+        return writeQueued("Error creating basil: ", () -> async
+                ? fabricService.createBasilAsync(id, country).thenApply(this::accepted)
+                : fabricService.createBasil(id, country).thenApply(ResponseEntity::ok));
+    }
+
+    // Streams CSV (qrCode,origin) or NDJSON ({"qrCode", "origin"}) rows into createBasilsBatch transactions.
+    // Answers with one NDJSON result line per row as its chunk completes, then a summary line. The body is
+    // read and the chunks submitted from one thread of the write pool, held for as long as the import runs.
+    @PostMapping(value = "/basil/import", consumes = { "text/csv", MediaType.APPLICATION_NDJSON_VALUE })
+    public ResponseEntity<ResponseBodyEmitter> importBasils(HttpServletRequest request) throws IOException {
+        BasilImporter.Format format = request.getContentType().startsWith("text/csv")
+                ? BasilImporter.Format.CSV
+                : BasilImporter.Format.NDJSON;
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        }
+        String identity;
         try {
-            String result = fabricService.createBasil(id, country);
+            identity = callerIdentity();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        BufferedReader input = request.getReader();
+
+        // Progress is streamed, so a large import is not cut off by the async request timeout
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(0L);
+        try {
+            requestExecutors.write(() -> basilImporter.importPlants(identity, input, format,
+                    row -> sendLine(emitter, row)))
+                    .whenComplete((summary, e) -> {
+                        if (e != null) {
+                            emitter.completeWithError(e);
+                            return;
+                        }
+                        sendLine(emitter, summary);
+                        emitter.complete();
+                    });
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(emitter);
+    }
+
+    // List plants by current owner organization or by current status, one page at a time
+    @GetMapping("/basil")
+    public CompletableFuture<ResponseEntity<String>> listBasils(
+            @RequestParam(required = false) String owner,
+            @RequestParam(required = false) String status,
+            @RequestParam(defaultValue = "50") int pageSize,
+            @RequestParam(defaultValue = "") String bookmark) {
+        if ((owner == null) == (status == null)) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("Specify exactly one of owner or status"));
+        }
+        return read("Error listing basils: ", () -> {
+            String result = owner != null
+                    ? fabricService.queryBasilsByOwner(owner, pageSize, bookmark)
+                    : fabricService.queryBasilsByStatus(status, pageSize, bookmark);
             return ResponseEntity.ok(result);
-        } catch (GatewayException | CommitException e) {
-            return ResponseEntity.internalServerError().body("Error creating basil: " + e.getMessage());
+        });
+    }
+
+    // Plants whose current GPS lies inside the box; a page can be short while the bookmark is still non-empty
+    @GetMapping("/basil/_bbox")
+    public CompletableFuture<ResponseEntity<String>> listBasilsInBoundingBox(
+            @RequestParam double minLat,
+            @RequestParam double minLon,
+            @RequestParam double maxLat,
+            @RequestParam double maxLon,
+            @RequestParam(defaultValue = "50") int pageSize,
+            @RequestParam(defaultValue = "") String bookmark) {
+        return read("Error listing basils in bounding box: ", () -> {
+            String result = fabricService.queryBasilsInBoundingBox(minLat, minLon, maxLat, maxLon, pageSize, bookmark);
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    // Plants per owner organization (by=owner) or per status (by=status), from the on-chain counters
+    @GetMapping("/basil/_counts")
+    public CompletableFuture<ResponseEntity<String>> getBasilCounts(@RequestParam(defaultValue = "status") String by) {
+        return read("Error getting basil counts: ", () -> {
+            String result = fabricService.getBasilCounts(by);
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    // Cold-chain aggregates of every reading taken while the organization owned a plant
+    @GetMapping("/basil/_coldchain")
+    public CompletableFuture<ResponseEntity<String>> getOwnerColdChainSummary(@RequestParam String owner) {
+        return read("Error getting cold-chain summary: ", () -> {
+            String result = fabricService.getOwnerColdChainSummary(owner);
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    @GetMapping("/basil/_coldchain/range")
+    public CompletableFuture<ResponseEntity<String>> getColdChainRange() {
+        return read("Error getting cold-chain range: ", () -> {
+            String result = fabricService.getColdChainRange();
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    // Applies to readings recorded from now on
+    @PutMapping("/basil/_coldchain/range")
+    public CompletableFuture<ResponseEntity<String>> setColdChainRange(
+            @RequestParam double minTemperature,
+            @RequestParam double maxTemperature,
+            @RequestParam double minHumidity,
+            @RequestParam double maxHumidity) {
+        return write("Error setting cold-chain range: ", () -> {
+            fabricService.setColdChainRange(minTemperature, maxTemperature, minHumidity, maxHumidity);
+            return ResponseEntity.ok("Cold-chain range updated successfully");
+        });
+    }
+
+    // Body is {"qrCodes": [...], "fields": [...]}; fields is optional and qrCode is always included.
+    // Unknown QR codes are listed under missing rather than failing the request.
+    @PostMapping(value = "/basil/_batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> getBasils(@RequestBody String body) {
+        BatchRead batch;
+        try {
+            batch = GSON.fromJson(body, BatchRead.class);
+        } catch (JsonParseException e) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("Invalid batch read: " + e.getMessage()));
+        }
+        if (batch == null || batch.qrCodes == null || batch.qrCodes.isEmpty()
+                || batch.qrCodes.stream().anyMatch(qrCode -> qrCode == null || qrCode.isEmpty())) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("qrCodes must be non-empty"));
+        }
+        if (batch.qrCodes.size() > MAX_BATCH_READ) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body("Too many qrCodes: " + batch.qrCodes.size() + " > " + MAX_BATCH_READ));
         }
+
+        Set<String> fields = batch.fields == null ? null : new HashSet<>(batch.fields);
+        return read("Error getting basils: ", () -> ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fabricService.readBasils(batch.qrCodes, fields)));
     }
 
     @GetMapping("/basil/{id}")
-    public ResponseEntity<String> getBasil(@PathVariable String id) {
-        try {
+    public CompletableFuture<ResponseEntity<String>> getBasil(@PathVariable String id) {
+        return read("Error getting basil: ", () -> {
             String result = fabricService.readBasil(id);
             return ResponseEntity.ok(result);
-        } catch (GatewayException e) {
-            return ResponseEntity.internalServerError().body("Error getting basil: " + e.getMessage());
-        }
+        });
     }
 
 
     @DeleteMapping("/basil/{id}")
-    public ResponseEntity<String> deleteBasil(@PathVariable String id) {
-        try {
-            fabricService.deleteBasil(id);
-            return ResponseEntity.ok("Basil deleted successfully");
-        } catch (GatewayException | CommitException e) {
-            return ResponseEntity.internalServerError().body("Error deleting basil: " + e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<String>> deleteBasil(@PathVariable String id,
+            @RequestParam(defaultValue = "false") boolean async) {
+        return writeQueued("Error deleting basil: ", () -> async
+                ? fabricService.deleteBasilAsync(id).thenApply(this::accepted)
+                : fabricService.deleteBasil(id).thenApply(ResponseEntity::ok));
     }
 
+    // Readings are coalesced with other plants' readings into one batch transaction;
+    // the response is sent once the batch holding this reading has committed
     @PutMapping("/basil/{id}/state")
-    public ResponseEntity<String> updateBasilState(
+    public CompletableFuture<ResponseEntity<String>> updateBasilState(
             @PathVariable String id,
             @RequestParam String gps,
             @RequestParam Long timestamp,
             @RequestParam String temp,
             @RequestParam String humidity,
-            @RequestParam String status) {
+            @RequestParam String status,
+            @RequestParam(defaultValue = "false") boolean async) {
+        if (async) {
+            return writeQueued("Error updating basil state: ",
+                    () -> fabricService.updateBasilStateAsync(id, gps, timestamp, temp, humidity, status)
+                            .thenApply(this::accepted));
+        }
+
+        // Queued from the write pool, since without coalescing queueBasilState submits on the calling thread
+        CompletableFuture<Void> committed;
         try {
-            fabricService.updateBasilState(id, gps, timestamp, temp, humidity, status);
-            return ResponseEntity.ok("Basil state updated successfully");
-        } catch (GatewayException | CommitException e) {
-            return ResponseEntity.internalServerError().body("Error updating basil state: " + e.getMessage());
+            committed = requestExecutors.write(GatewayPool.as(callerIdentity(),
+                    () -> fabricService.queueBasilState(id, gps, timestamp, temp, humidity, status)))
+                    .thenCompose(queued -> queued);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(saturated("Too many writes in progress"));
         }
+        return committed.handle((done, e) -> {
+            if (e == null) {
+                return ResponseEntity.ok("Basil state updated successfully");
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RejectedExecutionException) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body("Error updating basil state: " + cause.getMessage());
+            }
+            if (SubmitScheduler.conflict(cause) != null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body("Error updating basil state: " + cause.getMessage());
+            }
+            return ResponseEntity.internalServerError().body("Error updating basil state: " + cause.getMessage());
+        });
     }
 
-    @GetMapping("/basil/{id}/history")
-    public ResponseEntity<String> getBasilHistory(@PathVariable String id) {
+    // Accepts a JSON array or newline-delimited JSON of readings for any number of plants
+    @PostMapping(value = "/basil/states", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public CompletableFuture<ResponseEntity<String>> updateBasilStatesBatch(
+            @RequestHeader(value = "Content-Type", defaultValue = MediaType.APPLICATION_JSON_VALUE) String contentType,
+            @RequestBody String body,
+            @RequestParam(defaultValue = "false") boolean async) {
+        List<BasilReading> readings;
         try {
-            String result = fabricService.getBasilHistory(id);
-            return ResponseEntity.ok(result);
-        } catch (GatewayException e) {
-            return ResponseEntity.internalServerError().body("Error getting basil history: " + e.getMessage());
+            readings = contentType.startsWith(MediaType.APPLICATION_NDJSON_VALUE)
+                    ? BasilReading.fromNdjson(body)
+                    : BasilReading.fromJsonArray(body);
+            readings.forEach(BasilReading::validate);
+        } catch (JsonParseException e) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("Invalid readings: " + e.getMessage()));
+        }
+        if (readings.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("No readings supplied"));
         }
+        if (readings.size() > MAX_BATCH_READINGS) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body("Too many readings: " + readings.size() + " > " + MAX_BATCH_READINGS));
+        }
+
+        if (async) {
+            return writeQueued("Error updating basil states: ",
+                    () -> fabricService.updateBasilStatesBatchAsync(readings).thenApply(this::accepted));
+        }
+        return write("Error updating basil states: ", () -> {
+            int applied = fabricService.updateBasilStatesBatch(readings);
+            return ResponseEntity.ok(applied + " readings applied");
+        });
+    }
+
+    // Without pageSize the whole history is returned; with it, one page plus the bookmark for the next
+    @GetMapping("/basil/{id}/history")
+    public CompletableFuture<ResponseEntity<String>> getBasilHistory(
+            @PathVariable String id,
+            @RequestParam(required = false) Integer pageSize,
+            @RequestParam(defaultValue = "") String bookmark,
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(defaultValue = "false") boolean newestFirst) {
+        return read("Error getting basil history: ", () -> {
+            String result = pageSize == null
+                    ? fabricService.getBasilHistory(id)
+                    : fabricService.getBasilHistoryPage(id, pageSize, bookmark, from, to, newestFirst);
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    // Committed versions of the record, newest first; with deltas only the fields that changed
+    @GetMapping("/basil/{id}/versions")
+    public CompletableFuture<ResponseEntity<String>> getBasilVersions(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "50") int pageSize,
+            @RequestParam(defaultValue = "") String bookmark,
+            @RequestParam(defaultValue = "true") boolean deltas) {
+        return read("Error getting basil versions: ", () -> {
+            String result = fabricService.getBasilVersions(id, pageSize, bookmark, deltas);
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    // Running min/max/mean and excursion figures, kept up to date by every reading
+    @GetMapping("/basil/{id}/coldchain")
+    public CompletableFuture<ResponseEntity<String>> getColdChainSummary(@PathVariable String id) {
+        return read("Error getting cold-chain summary: ", () -> {
+            String result = fabricService.getColdChainSummary(id);
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    // Archives at most a few chunks per transaction, so call again while archivedLegs is positive
+    @PostMapping("/basil/{id}/compact")
+    public CompletableFuture<ResponseEntity<String>> compactBasilHistory(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "256") int keep) {
+        return writeQueued("Error compacting basil history: ", () -> fabricService.compactBasilHistory(id, keep)
+                .thenApply(archived -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(GSON.toJson(Collections.singletonMap("archivedLegs", archived)))));
     }
 
     @PutMapping("/basil/{id}/transfer")
-    public ResponseEntity<String> transferBasilOwnership(
+    public CompletableFuture<ResponseEntity<String>> transferBasilOwnership(
             @PathVariable String id,
             @RequestParam String newOrgId,
-            @RequestParam String newName) {
+            @RequestParam String newName,
+            @RequestParam(defaultValue = "false") boolean async) {
+        return writeQueued("Error transferring basil ownership: ", () -> async
+                ? fabricService.transferBasilOwnershipAsync(id, newOrgId, newName).thenApply(this::accepted)
+                : fabricService.transferBasilOwnership(id, newOrgId, newName).thenApply(ResponseEntity::ok));
+    }
+
+    // Served from the off-chain view; filters can be combined and results come in QR code order
+    @GetMapping("/view/basil")
+    public ResponseEntity<String> listBasilsFromView(
+            @RequestParam(required = false) String owner,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String origin,
+            @RequestParam(defaultValue = "50") int pageSize,
+            @RequestParam(defaultValue = "") String bookmark) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(basilView.query(owner, status, origin, pageSize, bookmark));
+    }
+
+    // Size of the off-chain view and how far it has applied and checkpointed the event stream
+    @GetMapping("/view/stats")
+    public ResponseEntity<String> getViewStats() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GSON.toJson(basilView.getStats()));
+    }
+
+    // Hit, miss and eviction counts of the readBasil cache
+    @GetMapping("/cache/stats")
+    public ResponseEntity<String> getCacheStats() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GSON.toJson(basilCache.getStats()));
+    }
+
+    // Latency, outstanding calls and ejection state of every gateway peer
+    @GetMapping("/peers")
+    public ResponseEntity<String> getPeerStats() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GSON.toJson(fabricService.getPeerStats()));
+    }
+
+    // Server-sent "basil" events for every change to the given plants and/or plants of the given owner,
+    // pushed from the chaincode event stream, so screens need not poll
+    @GetMapping(value = "/basil/_events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamBasilChanges(
+            @RequestParam(required = false) List<String> qrCode,
+            @RequestParam(required = false) String owner) {
+        try {
+            SseEmitter emitter = changeStream.subscribe(qrCode == null ? null : new HashSet<>(qrCode), owner);
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                    // Tells nginx not to buffer the stream
+                    .header("X-Accel-Buffering", "no")
+                    .body(emitter);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+    }
+
+    // Configured identities, whether their credentials are loaded yet, and which one is the default
+    @GetMapping("/identities")
+    public ResponseEntity<String> getIdentities() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GSON.toJson(fabricService.getIdentities()));
+    }
+
+    // Commit status of a transaction submitted with async=true
+    @GetMapping("/tx/{txId}")
+    public ResponseEntity<String> getTransactionStatus(@PathVariable String txId) {
+        TransactionStatus status = fabricService.getTransactionStatus(txId);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GSON.toJson(status));
+    }
+
+    private CompletableFuture<ResponseEntity<String>> read(String errorPrefix,
+            RequestExecutors.GatewayCall<ResponseEntity<String>> call) {
         try {
-            fabricService.transferBasilOwnership(id, newOrgId, newName);
-            return ResponseEntity.ok("Basil ownership transferred successfully");
-        } catch (GatewayException | CommitException e) {
-            return ResponseEntity.internalServerError().body("Error transferring basil ownership: " + e.getMessage());
+            return handleGatewayErrors(requestExecutors.read(GatewayPool.as(callerIdentity(), call)), errorPrefix);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(saturated("Too many reads in progress"));
         }
     }
-} 
\ No newline at end of file
+
+    private CompletableFuture<ResponseEntity<String>> write(String errorPrefix,
+            RequestExecutors.GatewayCall<ResponseEntity<String>> call) {
+        try {
+            return handleGatewayErrors(requestExecutors.write(GatewayPool.as(callerIdentity(), call)), errorPrefix);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(saturated("Too many writes in progress"));
+        }
+    }
+
+    // For writes to one plant: the write pool only queues them behind earlier writes to the plant, and the
+    // response follows once the submit has run, without a thread waiting for it
+    private CompletableFuture<ResponseEntity<String>> writeQueued(String errorPrefix,
+            RequestExecutors.GatewayCall<CompletableFuture<ResponseEntity<String>>> call) {
+        try {
+            return handleGatewayErrors(requestExecutors.write(GatewayPool.as(callerIdentity(), call))
+                    .thenCompose(queued -> queued), errorPrefix);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(saturated("Too many writes in progress"));
+        }
+    }
+
+    // Conflicts that outlasted their retries become a 409, other gateway and commit failures a 500 with their
+    // message, and writes that gave up waiting for their plant a 503; anything else, such as the
+    // ResponseStatusException for an unknown plant, is left to Spring
+    private static CompletableFuture<ResponseEntity<String>> handleGatewayErrors(
+            CompletableFuture<ResponseEntity<String>> result, String errorPrefix) {
+        return result.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (SubmitScheduler.conflict(cause) != null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(errorPrefix + cause.getMessage());
+            }
+            if (cause instanceof GatewayException || cause instanceof CommitException) {
+                return ResponseEntity.internalServerError().body(errorPrefix + cause.getMessage());
+            }
+            if (cause instanceof RejectedExecutionException) {
+                return saturated(errorPrefix + cause.getMessage());
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(cause);
+        });
+    }
+
+    // Throws IllegalArgumentException for an identity that is not configured, and a 403 ResponseStatusException
+    // when the header comes from anywhere but a trusted proxy, since it would let any caller act for any organization
+    private String callerIdentity() {
+        String requested = request.getHeader(IDENTITY_HEADER);
+        if (requested != null && !IDENTITY_PROXY_ADDRESSES.contains(request.getRemoteAddr())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN,
+                    IDENTITY_HEADER + " is only accepted from a trusted proxy");
+        }
+        return gatewayPool.resolve(requested);
+    }
+
+    // A client that went away misses the rest of the lines, but rows already read are still registered
+    private static void sendLine(ResponseBodyEmitter emitter, Object line) {
+        try {
+            emitter.send(GSON.toJson(line) + "\n", NDJSON);
+        } catch (IOException e) {
+            // Nothing to tell the client any more
+        }
+    }
+
+    private static ResponseEntity<String> saturated(String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(message);
+    }
+
+    // Writes with async=true are answered once the orderer has the transaction; poll the Location for the outcome
+    private ResponseEntity<String> accepted(String txId) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/tx/" + txId))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GSON.toJson(Collections.singletonMap("txId", txId)));
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.Gateway;
+import org.hyperledger.fabric.client.identity.Identities;
+import org.hyperledger.fabric.client.identity.Identity;
+import org.hyperledger.fabric.client.identity.Signer;
+import org.hyperledger.fabric.client.identity.Signers;
+import org.hyperledger.fabric.client.identity.X509Identity;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import io.grpc.Channel;
+import io.grpc.ChannelCredentials;
+import io.grpc.ClientInterceptors;
+import io.grpc.Grpc;
+import io.grpc.ManagedChannel;
+import io.grpc.TlsChannelCredentials;
+
+/**
+ * Connections to the test network. Everything else only depends on the {@link GatewayPool} bean, so local
+ * stand-ins for the gateway peers can be wired in their place.
+ *
+ * One TLS channel is opened per peer in PEER_ENDPOINTS. Every identity in FABRIC_IDENTITIES gets its own
+ * gateways on those channels once its credentials have been read, on its first use unless IDENTITY_PRELOAD
+ * is set.
+ */
+@Configuration
+public class FabricGatewayConfig {
+    private static final Path PATH_TO_TEST_NETWORK = Paths.get(System.getenv().getOrDefault("TEST_NETWORK_PATH",
+            "/home/imblackline/go/src/github.com/imblackline/fabric-samples/test-network"));
+    static final String CHANNEL_NAME = System.getenv().getOrDefault("CHANNEL_NAME", "mychannel");
+    static final String CHAINCODE_NAME = System.getenv().getOrDefault("CHAINCODE_NAME", "basic");
+    // Comma separated endpoint=peerHostName pairs; the first one is preferred for submits
+    private static final String PEER_ENDPOINTS =
+            System.getenv().getOrDefault("PEER_ENDPOINTS", "localhost:7051=peer0.org1.example.com");
+    // Comma separated user@organization=mspId entries; the first one is the default identity
+    private static final String FABRIC_IDENTITIES =
+            System.getenv().getOrDefault("FABRIC_IDENTITIES", "User1@org1.example.com=Org1MSP");
+    // Load every identity at startup instead of on its first request
+    private static final boolean IDENTITY_PRELOAD =
+            Boolean.parseBoolean(System.getenv().getOrDefault("IDENTITY_PRELOAD", "false"));
+    private static final long EVALUATE_DEADLINE_MILLIS = 5_000;
+    private static final long ENDORSE_DEADLINE_MILLIS = 15_000;
+    private static final long SUBMIT_DEADLINE_MILLIS = 5_000;
+    private static final long COMMIT_STATUS_DEADLINE_MILLIS = 60_000;
+    // Longest one synchronous submit can take, from endorsement to its commit status
+    static final long SUBMIT_ATTEMPT_MILLIS =
+            ENDORSE_DEADLINE_MILLIS + SUBMIT_DEADLINE_MILLIS + COMMIT_STATUS_DEADLINE_MILLIS;
+
+    private static final class Peer {
+        final String name;
+        final ManagedChannel channel;
+        final Channel intercepted;
+
+        Peer(String name, ManagedChannel channel, Channel intercepted) {
+            this.name = name;
+            this.channel = channel;
+            this.intercepted = intercepted;
+        }
+    }
+
+    @Bean(destroyMethod = "close")
+    public GatewayPool gatewayPool(GatewayMetrics metrics) throws Exception {
+        List<Peer> peers = new ArrayList<>();
+        for (String spec : PEER_ENDPOINTS.split(",")) {
+            String[] parts = spec.trim().split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("PEER_ENDPOINTS entries must be endpoint=peerHostName: " + spec);
+            }
+            String peerEndpoint = parts[0];
+            String overrideAuth = parts[1];
+
+            ManagedChannel channel = newChannel(peerEndpoint, overrideAuth);
+            peers.add(new Peer(overrideAuth, channel,
+                    ClientInterceptors.intercept(channel, metrics.interceptor(overrideAuth))));
+        }
+
+        Map<String, String> identities = new LinkedHashMap<>();
+        for (String spec : FABRIC_IDENTITIES.split(",")) {
+            String[] parts = spec.trim().split("=", 2);
+            if (parts.length != 2 || !parts[0].contains("@")) {
+                throw new IllegalArgumentException("FABRIC_IDENTITIES entries must be user@organization=mspId: " + spec);
+            }
+            identities.put(parts[0], parts[1]);
+        }
+
+        GatewayPool pool = new GatewayPool(identities,
+                identity -> newRouter(peers, identities.get(identity), identity),
+                () -> peers.forEach(peer -> peer.channel.shutdownNow()));
+        if (IDENTITY_PRELOAD) {
+            pool.preload();
+        }
+        return pool;
+    }
+
+    // A router with one gateway per peer for User1@org1.example.com, whose credentials are kept under
+    // peerOrganizations/org1.example.com/users/User1@org1.example.com/msp
+    private static PeerRouter newRouter(List<Peer> peers, String mspId, String user) throws Exception {
+        String organization = user.substring(user.indexOf('@') + 1);
+        Path msp = PATH_TO_TEST_NETWORK.resolve(Paths.get(
+                "organizations/peerOrganizations/" + organization + "/users/" + user + "/msp"));
+        Identity identity;
+        try (Reader certificate = Files.newBufferedReader(msp.resolve("signcerts/cert.pem"))) {
+            identity = new X509Identity(mspId, Identities.readX509Certificate(certificate));
+        }
+        Signer signer;
+        try (Stream<Path> keys = Files.list(msp.resolve("keystore"));
+                Reader key = Files.newBufferedReader(keys.findFirst().orElseThrow())) {
+            signer = Signers.newPrivateKeySigner(Identities.readPrivateKey(key));
+        }
+
+        List<PeerRouter.Endpoint> endpoints = new ArrayList<>();
+        for (Peer peer : peers) {
+            // Closing a gateway leaves the channel it was given open for the other identities
+            Gateway gateway = connect(peer.intercepted, identity, signer);
+            endpoints.add(new PeerRouter.Endpoint(peer.name, gateway.getNetwork(CHANNEL_NAME), gateway::close));
+        }
+        return new PeerRouter(endpoints);
+    }
+
+    // peer0.org1.example.com keeps its TLS CA under peerOrganizations/org1.example.com/peers/peer0.org1.example.com
+    private static ManagedChannel newChannel(String peerEndpoint, String overrideAuth) throws Exception {
+        String organization = overrideAuth.substring(overrideAuth.indexOf('.') + 1);
+        ChannelCredentials credentials = TlsChannelCredentials.newBuilder()
+                .trustManager(PATH_TO_TEST_NETWORK.resolve(Paths.get(
+                        "organizations/peerOrganizations/" + organization + "/" +
+                                "peers/" + overrideAuth + "/tls/ca.crt"))
+                        .toFile())
+                .build();
+
+        return Grpc.newChannelBuilder(peerEndpoint, credentials)
+                .overrideAuthority(overrideAuth)
+                .build();
+    }
+
+    private static Gateway connect(Channel channel, Identity identity, Signer signer) {
+        return Gateway.newInstance()
+                .identity(identity)
+                .signer(signer)
+                .connection(channel)
+                .evaluateOptions(options -> options.withDeadlineAfter(EVALUATE_DEADLINE_MILLIS, TimeUnit.MILLISECONDS))
+                .endorseOptions(options -> options.withDeadlineAfter(ENDORSE_DEADLINE_MILLIS, TimeUnit.MILLISECONDS))
+                .submitOptions(options -> options.withDeadlineAfter(SUBMIT_DEADLINE_MILLIS, TimeUnit.MILLISECONDS))
+                .commitStatusOptions(options ->
+                        options.withDeadlineAfter(COMMIT_STATUS_DEADLINE_MILLIS, TimeUnit.MILLISECONDS))
+                .connect();
+    }
+}
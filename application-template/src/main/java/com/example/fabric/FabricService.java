@@ -1,91 +1,170 @@
 package com.example.fabric;
 
-import org.hyperledger.fabric.client.Contract;
-import org.hyperledger.fabric.client.Gateway;
 import org.hyperledger.fabric.client.GatewayException;
 import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.annotation.PreDestroy;
+
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
-import org.hyperledger.fabric.client.identity.Identities;
-import org.hyperledger.fabric.client.identity.Signers;
-import org.hyperledger.fabric.client.identity.X509Identity;
-
-import io.grpc.ChannelCredentials;
-import io.grpc.Grpc;
-import io.grpc.ManagedChannel;
-import io.grpc.TlsChannelCredentials;
-
 @Service
 public class FabricService {
-    private static final Path PATH_TO_TEST_NETWORK = Paths.get("/home/imblackline/go/src/github.com/imblackline/fabric-samples/test-network");
-    private static final String CHANNEL_NAME = System.getenv().getOrDefault("CHANNEL_NAME", "mychannel");
-    private static final String CHAINCODE_NAME = System.getenv().getOrDefault("CHAINCODE_NAME", "basic");
-    private static final String PEER_ENDPOINT = "localhost:7051";
-    private static final String OVERRIDE_AUTH = "peer0.org1.example.com";
-
-    private Gateway gateway;
-    private Contract contract;
-    private ManagedChannel channel;
-
-    public FabricService() throws Exception {
-        initializeConnection();
-    }
-
-    private void initializeConnection() throws Exception {
-        ChannelCredentials credentials = TlsChannelCredentials.newBuilder()
-                .trustManager(PATH_TO_TEST_NETWORK.resolve(Paths.get(
-                        "organizations/peerOrganizations/org1.example.com/" +
-                                "peers/peer0.org1.example.com/tls/ca.crt"))
-                        .toFile())
-                .build();
-
-        channel = Grpc.newChannelBuilder(PEER_ENDPOINT, credentials)
-                .overrideAuthority(OVERRIDE_AUTH)
-                .build();
-
-        Gateway.Builder builder = Gateway.newInstance()
-                .identity(new X509Identity("Org1MSP",
-                        Identities.readX509Certificate(
-                                Files.newBufferedReader(
-                                        PATH_TO_TEST_NETWORK.resolve(Paths.get(
-                                                "organizations/peerOrganizations/org1.example.com/" +
-                                                        "users/User1@org1.example.com/msp/signcerts/cert.pem"))))))
-                .signer(
-                        Signers.newPrivateKeySigner(
-                                Identities.readPrivateKey(
-                                        Files.newBufferedReader(
-                                                Files.list(PATH_TO_TEST_NETWORK.resolve(
-                                                        Paths.get(
-                                                                "organizations/peerOrganizations/org1.example.com/"
-                                                                        +
-                                                                        "users/User1@org1.example.com/msp/keystore")))
-                                                        .findFirst().orElseThrow()))))
-                .connection(channel)
-                .evaluateOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
-                .endorseOptions(options -> options.withDeadlineAfter(15, TimeUnit.SECONDS))
-                .submitOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
-                .commitStatusOptions(options -> options.withDeadlineAfter(1, TimeUnit.MINUTES));
-
-        gateway = builder.connect();
-        contract = gateway.getNetwork(CHANNEL_NAME).getContract(CHAINCODE_NAME);
-    }
-
-    public String createBasil(String id, String country) throws GatewayException, CommitException {
-        byte[] result = contract.submitTransaction("createBasil", id, country);
-        return new String(result, StandardCharsets.UTF_8);
+    // Single updateBasilState calls are coalesced over this window; 0, the default, submits each one on its own
+    private static final long COALESCE_WINDOW_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("COALESCE_WINDOW_MILLIS", "0"));
+    // Stays below the chaincode's limit of 1000 readings per batch
+    private static final int COALESCE_MAX_BATCH =
+            Integer.parseInt(System.getenv().getOrDefault("COALESCE_MAX_BATCH", "500"));
+    private static final int COALESCE_MAX_PENDING =
+            Integer.parseInt(System.getenv().getOrDefault("COALESCE_MAX_PENDING", "20000"));
+    private static final int COALESCE_FLUSH_THREADS =
+            Integer.parseInt(System.getenv().getOrDefault("COALESCE_FLUSH_THREADS", "4"));
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+    // The chaincode's limit on deltas folded by one roll-up
+    private static final int MAX_ROLLUP_DELTAS = 5000;
+
+    private final GatewayPool gatewayPool;
+    private final TransactionTracker transactionTracker;
+    private final BasilCache basilCache;
+    private final GatewayMetrics metrics;
+    private final SubmitScheduler submitScheduler;
+    // One coalescer per identity, so that every batch is submitted by the identity its readings came from
+    private final Map<String, ReadingCoalescer> readingCoalescers = new ConcurrentHashMap<>();
+    private volatile boolean draining;
+
+    public FabricService(GatewayPool gatewayPool, TransactionTracker transactionTracker, BasilCache basilCache,
+            GatewayMetrics metrics, SubmitScheduler submitScheduler) {
+        this.gatewayPool = gatewayPool;
+        this.transactionTracker = transactionTracker;
+        this.basilCache = basilCache;
+        this.metrics = metrics;
+        this.submitScheduler = submitScheduler;
+        if (COALESCE_WINDOW_MILLIS > 0) {
+            Gauge.builder("fabric.readings.pending", readingCoalescers,
+                    coalescers -> coalescers.values().stream().mapToInt(ReadingCoalescer::getPending).sum())
+                    .description("Single readings waiting to be submitted in a batch")
+                    .register(metrics.getRegistry());
+        }
+    }
+
+    // Keyed writes complete once committed; they throw RejectedExecutionException when too many writes are
+    // already waiting for their plant, and fail with it when their turn came too late
+    public CompletableFuture<String> createBasil(String id, String country) {
+        return submitFor(id, "createBasil", id, country).thenApply(result -> {
+            basilCache.invalidate(id);
+            return new String(result, StandardCharsets.UTF_8);
+        });
+    }
+
+    // Create many plants in one transaction; returns the QR codes that were skipped because they already exist
+    public List<String> createBasilsBatch(List<BasilRegistration> plants) throws GatewayException, CommitException {
+        byte[] result = submit("createBasilsBatch", BasilRegistration.toJsonArray(plants));
+        plants.forEach(plant -> basilCache.invalidate(plant.getQrCode()));
+        List<String> duplicates = new ArrayList<>();
+        JsonParser.parseString(new String(result, StandardCharsets.UTF_8)).getAsJsonObject()
+                .getAsJsonArray("duplicates")
+                .forEach(qrCode -> duplicates.add(qrCode.getAsString()));
+        return duplicates;
+    }
+
+    // The *Async variants complete with the transaction ID as soon as the orderer has accepted the transaction;
+    // its commit status is then available from TransactionTracker
+    public CompletableFuture<String> createBasilAsync(String id, String country) {
+        return submitAsync(id, "createBasil", id, country);
     }
 
+    // Served from BasilCache while the plant is unchanged; BasilEventListener evicts it on every change
     public String readBasil(String id) throws GatewayException {
+        return basilCache.get(id, () -> evaluateReadBasil(id));
+    }
+
+    // Many plants in at most one readBasils evaluate, as {"basils": [...], "missing": [...]} in request order.
+    // fields, when given, limits every plant to those top-level fields plus qrCode; leaving out
+    // transportHistory also keeps the chaincode from reading the legs. Cached plants are served from BasilCache.
+    public String readBasils(List<String> ids, Set<String> fields) throws GatewayException {
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(ids));
+        boolean withHistory = fields == null || fields.contains("transportHistory");
+        Map<String, String> found;
+        if (withHistory) {
+            found = basilCache.getAll(unique, missing -> evaluateReadBasils(missing, true));
+        } else {
+            // Cached records carry their history, which the projection below drops again
+            found = basilCache.getPresent(unique);
+            List<String> uncached = new ArrayList<>();
+            for (String id : unique) {
+                if (!found.containsKey(id)) {
+                    uncached.add(id);
+                }
+            }
+            if (!uncached.isEmpty()) {
+                found.putAll(evaluateReadBasils(uncached, false));
+            }
+        }
+
+        JsonArray basils = new JsonArray();
+        JsonArray missing = new JsonArray();
+        for (String id : unique) {
+            String basil = found.get(id);
+            if (basil == null) {
+                missing.add(id);
+            } else {
+                basils.add(project(JsonParser.parseString(basil).getAsJsonObject(), fields));
+            }
+        }
+        JsonObject result = new JsonObject();
+        result.add("basils", basils);
+        result.add("missing", missing);
+        return result.toString();
+    }
+
+    // Plant JSON by QR code, leaving out the ones that do not exist
+    private Map<String, String> evaluateReadBasils(List<String> ids, boolean withHistory) throws GatewayException {
+        JsonArray qrCodes = new JsonArray();
+        ids.forEach(qrCodes::add);
+        byte[] result = evaluate("readBasils", qrCodes.toString(), Boolean.toString(withHistory));
+        Map<String, String> found = new HashMap<>();
+        JsonParser.parseString(new String(result, StandardCharsets.UTF_8)).getAsJsonObject()
+                .getAsJsonArray("basils")
+                .forEach(basil -> found.put(basil.getAsJsonObject().get("qrCode").getAsString(), basil.toString()));
+        return found;
+    }
+
+    private static JsonObject project(JsonObject basil, Set<String> fields) {
+        if (fields == null) {
+            return basil;
+        }
+        JsonObject projected = new JsonObject();
+        for (Map.Entry<String, JsonElement> field : basil.entrySet()) {
+            if (field.getKey().equals("qrCode") || fields.contains(field.getKey())) {
+                projected.add(field.getKey(), field.getValue());
+            }
+        }
+        return projected;
+    }
+
+    private String evaluateReadBasil(String id) throws GatewayException {
         try {
-            byte[] result = contract.evaluateTransaction("readBasil", id);
+            byte[] result = evaluate("readBasil", id);
             if (result == null || result.length == 0) {
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No basil found with ID: " + id);
             }
@@ -100,31 +179,255 @@ public class FabricService {
 
     
 
-    public String deleteBasil(String id) throws GatewayException, CommitException {
-        contract.submitTransaction("deleteBasil", id);
-        return "Basil deleted successfully";
+    public CompletableFuture<String> deleteBasil(String id) {
+        return submitFor(id, "deleteBasil", id).thenApply(result -> {
+            basilCache.invalidate(id);
+            return "Basil deleted successfully";
+        });
     }
 
-    public String updateBasilState(String id, String gps, Long timestamp, String temp, String humidity, String status) 
-            throws GatewayException, CommitException {
-        contract.submitTransaction("updateBasilState", id, gps, timestamp.toString(), temp, humidity, status);
-        return "Basil state updated successfully";
+    public CompletableFuture<String> deleteBasilAsync(String id) {
+        return submitAsync(id, "deleteBasil", id);
+    }
+
+    public CompletableFuture<String> updateBasilState(String id, String gps, Long timestamp, String temp,
+            String humidity, String status) {
+        return submitFor(id, "updateBasilState", id, gps, timestamp.toString(), temp, humidity, status)
+                .thenApply(result -> {
+                    basilCache.invalidate(id);
+                    return "Basil state updated successfully";
+                });
+    }
+
+    // Queue a reading to be submitted together with others; completes once it is committed.
+    // Throws RejectedExecutionException when too many readings are already waiting or on shutdown.
+    public CompletableFuture<Void> queueBasilState(String id, String gps, Long timestamp, String temp, String humidity,
+            String status) {
+        if (COALESCE_WINDOW_MILLIS <= 0) {
+            return updateBasilState(id, gps, timestamp, temp, humidity, status).thenApply(updated -> null);
+        }
+        String identity = gatewayPool.resolve(GatewayPool.boundIdentity());
+        return readingCoalescers.computeIfAbsent(identity, this::newReadingCoalescer)
+                .add(new BasilReading(id, gps, timestamp, temp, humidity, status));
+    }
+
+    public CompletableFuture<String> updateBasilStateAsync(String id, String gps, Long timestamp, String temp,
+            String humidity, String status) {
+        return submitAsync(id, "updateBasilState", id, gps, timestamp.toString(), temp, humidity, status);
+    }
+
+    public int updateBasilStatesBatch(List<BasilReading> readings) throws GatewayException, CommitException {
+        byte[] result = submit("updateBasilStatesBatch", BasilReading.toJsonArray(readings));
+        readings.forEach(reading -> basilCache.invalidate(reading.getQrCode()));
+        return Integer.parseInt(new String(result, StandardCharsets.UTF_8));
+    }
+
+    public CompletableFuture<String> updateBasilStatesBatchAsync(List<BasilReading> readings) {
+        return submitAsync(null, "updateBasilStatesBatch", BasilReading.toJsonArray(readings));
     }
 
     public String getBasilHistory(String id) throws GatewayException {
-        byte[] result = contract.evaluateTransaction("getHistory", id);
+        byte[] result = evaluate("getHistory", id);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public String getBasilHistoryPage(String id, int pageSize, String bookmark, long from, long to,
+            boolean newestFirst) throws GatewayException {
+        byte[] result = evaluate("getHistoryPage", id, Integer.toString(pageSize),
+                bookmark, Long.toString(from), Long.toString(to), Boolean.toString(newestFirst));
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public String getBasilVersions(String id, int pageSize, String bookmark, boolean deltas) throws GatewayException {
+        byte[] result = evaluate("getBasilHistoryPage", id, Integer.toString(pageSize), bookmark,
+                Boolean.toString(deltas));
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public String queryBasilsByOwner(String orgId, int pageSize, String bookmark) throws GatewayException {
+        byte[] result = evaluate("queryBasilsByOwner", orgId, Integer.toString(pageSize), bookmark);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public String queryBasilsByStatus(String status, int pageSize, String bookmark) throws GatewayException {
+        byte[] result = evaluate("queryBasilsByStatus", status, Integer.toString(pageSize), bookmark);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    // Every plant in QR code order, legacy records included, one page at a time
+    public String listBasils(int pageSize, String bookmark) throws GatewayException {
+        byte[] result = evaluate("listBasils", Integer.toString(pageSize), bookmark);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public String queryBasilsInBoundingBox(double minLat, double minLon, double maxLat, double maxLon, int pageSize,
+            String bookmark) throws GatewayException {
+        byte[] result = evaluate("queryBasilsInBoundingBox", Double.toString(minLat), Double.toString(minLon),
+                Double.toString(maxLat), Double.toString(maxLon), Integer.toString(pageSize), bookmark);
         return new String(result, StandardCharsets.UTF_8);
     }
 
-    public String transferBasilOwnership(String id, String newOrgId, String newName) 
+    // Returns the number of legs archived by this call; the plant is fully compacted once it returns 0
+    public CompletableFuture<Integer> compactBasilHistory(String id, int keepLegs) {
+        return submitFor(id, "compactHistory", id, Integer.toString(keepLegs)).thenApply(result -> {
+            basilCache.invalidate(id);
+            return Integer.parseInt(new String(result, StandardCharsets.UTF_8).trim());
+        });
+    }
+
+    // dimension is "owner" or "status"; returns a JSON object of counts by owner organization or status
+    public String getBasilCounts(String dimension) throws GatewayException {
+        byte[] result = evaluate("getBasilCounts", dimension);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public String getColdChainSummary(String id) throws GatewayException {
+        byte[] result = evaluate("getColdChainSummary", id);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public String getOwnerColdChainSummary(String orgId) throws GatewayException {
+        byte[] result = evaluate("getOwnerColdChainSummary", orgId);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public String getColdChainRange() throws GatewayException {
+        byte[] result = evaluate("getColdChainRange");
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    public void setColdChainRange(double minTemperature, double maxTemperature, double minHumidity,
+            double maxHumidity) throws GatewayException, CommitException {
+        submit("setColdChainRange", Double.toString(minTemperature), Double.toString(maxTemperature),
+                Double.toString(minHumidity), Double.toString(maxHumidity));
+    }
+
+    // Returns the number of count deltas folded
+    public int rollUpCounts() throws GatewayException, CommitException {
+        byte[] result = submit("rollUpCounts");
+        return Integer.parseInt(new String(result, StandardCharsets.UTF_8).trim());
+    }
+
+    // The owner cold-chain deltas are listed by an evaluate and folded by key, so that readings committed
+    // meanwhile cannot fail the roll-up with a phantom read. Returns the number of deltas folded.
+    public int rollUpColdChain() throws GatewayException, CommitException {
+        String keys = new String(evaluate("listColdChainDeltas", Integer.toString(MAX_ROLLUP_DELTAS)),
+                StandardCharsets.UTF_8);
+        if (JsonParser.parseString(keys).getAsJsonArray().size() == 0) {
+            return 0;
+        }
+        byte[] result = submit("rollUpColdChain", keys);
+        return Integer.parseInt(new String(result, StandardCharsets.UTF_8).trim());
+    }
+
+    public CompletableFuture<String> transferBasilOwnership(String id, String newOrgId, String newName) {
+        return submitFor(id, "transferOwnership", id, newOrgId, newName).thenApply(result -> {
+            basilCache.invalidate(id);
+            return "Basil ownership transferred successfully";
+        });
+    }
+
+    public CompletableFuture<String> transferBasilOwnershipAsync(String id, String newOrgId, String newName) {
+        return submitAsync(id, "transferOwnership", id, newOrgId, newName);
+    }
+
+    // Peers as seen by the caller's identity; every identity reaches them over the same channels
+    public List<Map<String, Object>> getPeerStats() {
+        return gatewayPool.router().getStats();
+    }
+
+    public List<Map<String, Object>> getIdentities() {
+        return gatewayPool.getStats();
+    }
+
+    public TransactionStatus getTransactionStatus(String txId) {
+        return transactionTracker.getStatus(txId);
+    }
+
+    // Evaluated on whichever peer currently answers fastest
+    private byte[] evaluate(String name, String... args) throws GatewayException {
+        Timer.Sample sample = metrics.start();
+        try {
+            byte[] result = gatewayPool.router().evaluate(contract -> contract.newProposal(name)
+                    .addArguments(args)
+                    .build()
+                    .evaluate(GatewayMetrics.transaction(name)));
+            metrics.stop(sample, name, "evaluate", null);
+            return result;
+        } catch (GatewayException | RuntimeException e) {
+            metrics.stop(sample, name, "evaluate", e);
+            throw e;
+        }
+    }
+
+    // Transactions spanning many plants are not ordered against anything, but their conflicts are still retried
+    private byte[] submit(String name, String... args) throws GatewayException, CommitException {
+        PeerRouter router = gatewayPool.router();
+        return submitScheduler.submit(name, () -> submitOnce(router, name, args));
+    }
+
+    // Runs after every earlier submit for the same plant has committed, and again after a read conflict.
+    // The router is picked on the calling thread, whose identity a queued submit would not see.
+    private CompletableFuture<byte[]> submitFor(String qrCode, String name, String... args) {
+        PeerRouter router = gatewayPool.router();
+        return submitScheduler.submit(name, qrCode, () -> submitOnce(router, name, args));
+    }
+
+    // Same as Contract.submitTransaction, with each gateway call tagged for GatewayMetrics
+    private byte[] submitOnce(PeerRouter router, String name, String... args)
             throws GatewayException, CommitException {
-        contract.submitTransaction("transferOwnership", id, newOrgId, newName);
-        return "Basil ownership transferred successfully";
+        Timer.Sample sample = metrics.start();
+        try {
+            byte[] result = router.submit(contract -> contract.newProposal(name)
+                    .addArguments(args)
+                    .build()
+                    .endorse(GatewayMetrics.transaction(name))
+                    .submit(GatewayMetrics.transaction(name)));
+            metrics.stop(sample, name, "submit", null);
+            return result;
+        } catch (GatewayException | CommitException | RuntimeException e) {
+            metrics.stop(sample, name, "submit", e);
+            throw e;
+        }
+    }
+
+    // Endorse and send to the orderer once every earlier submit for qrCode has committed, leaving only the
+    // commit wait to the tracker; qrCode keeps later submits waiting until that commit status is known.
+    // Timed up to the orderer's acknowledgement; the commit wait shows up as the commit phase.
+    // Fails with RejectedExecutionException, before endorsing, when too many commit waits are queued.
+    private CompletableFuture<String> submitAsync(String qrCode, String name, String... args) {
+        PeerRouter router = gatewayPool.router();
+        return submitScheduler.submitAsync(qrCode, settled -> transactionTracker.track(name, () -> {
+            Timer.Sample sample = metrics.start();
+            try {
+                SubmittedTransaction transaction = router.submit(contract -> contract.newProposal(name)
+                        .addArguments(args)
+                        .build()
+                        .endorse(GatewayMetrics.transaction(name))
+                        .submitAsync(GatewayMetrics.transaction(name)));
+                metrics.stop(sample, name, "submitAsync", null);
+                return transaction;
+            } catch (GatewayException | RuntimeException e) {
+                metrics.stop(sample, name, "submitAsync", e);
+                throw e;
+            }
+        }, settled));
+    }
+
+    // Submit every reading still waiting in the coalescers before the gateway goes away
+    @PreDestroy
+    public void cleanup() throws InterruptedException {
+        draining = true;
+        for (ReadingCoalescer readingCoalescer : readingCoalescers.values()) {
+            readingCoalescer.drain(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
     }
 
-    public void cleanup() {
-        if (channel != null) {
-            channel.shutdownNow();
+    private ReadingCoalescer newReadingCoalescer(String identity) {
+        if (draining) {
+            throw new RejectedExecutionException("Shutting down");
         }
+        return new ReadingCoalescer(readings -> GatewayPool.as(identity, () -> updateBasilStatesBatch(readings)).call(),
+                COALESCE_WINDOW_MILLIS, COALESCE_MAX_BATCH, COALESCE_MAX_PENDING, COALESCE_FLUSH_THREADS);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,191 @@
+package com.example.fabric;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Micrometer instrumentation of gateway calls, scraped from /actuator/prometheus.
+ *
+ * FabricService times each chaincode transaction end to end as fabric.transaction. Underneath, every
+ * gateway channel carries {@link #interceptor(String)}, which times the individual gRPC calls a transaction
+ * is made of (evaluate, or endorse, submit and commit) as fabric.gateway.call, records their message sizes,
+ * counts failures by gRPC status and keeps an in-flight gauge per phase. The transaction name reaches the
+ * interceptor as a call option set with {@link #transaction(String)}.
+ */
+@Component
+public class GatewayMetrics {
+    private static final CallOptions.Key<String> TRANSACTION = CallOptions.Key.createWithDefault("transaction", "unknown");
+    private static final Map<String, String> PHASES = Map.of(
+            "Evaluate", "evaluate",
+            "Endorse", "endorse",
+            "Submit", "submit",
+            "CommitStatus", "commit");
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public GatewayMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    // Pass to evaluate, endorse, submit or getStatus so the gateway calls are tagged with the transaction name
+    public static UnaryOperator<CallOptions> transaction(String name) {
+        return options -> options.withOption(TRANSACTION, name);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    // type is evaluate or submit; a null failure means the transaction succeeded
+    public void stop(Timer.Sample sample, String transaction, String type, Throwable failure) {
+        sample.stop(Timer.builder("fabric.transaction")
+                .description("Chaincode transactions from the first gateway call until the result or commit status")
+                .tag("transaction", transaction)
+                .tag("type", type)
+                .tag("outcome", outcome(failure))
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public ClientInterceptor interceptor(String peer) {
+        return new MetricsInterceptor(peer);
+    }
+
+    // gRPC status of a gateway failure, or the validation code of a transaction that committed as invalid
+    private static String outcome(Throwable failure) {
+        if (failure == null) {
+            return "OK";
+        }
+        if (failure instanceof GatewayException) {
+            return ((GatewayException) failure).getStatus().getCode().name();
+        }
+        if (failure instanceof CommitException) {
+            return ((CommitException) failure).getCode().name();
+        }
+        return failure.getClass().getSimpleName();
+    }
+
+    private AtomicInteger inFlight(String phase) {
+        return inFlight.computeIfAbsent(phase, key -> {
+            AtomicInteger count = new AtomicInteger();
+            Gauge.builder("fabric.gateway.in.flight", count, AtomicInteger::get)
+                    .description("Gateway calls waiting for a response")
+                    .tag("phase", key)
+                    .register(registry);
+            return count;
+        });
+    }
+
+    private void recordPayload(String phase, String transaction, String direction, Object message) {
+        if (message instanceof MessageLite) {
+            DistributionSummary.builder("fabric.gateway.payload")
+                    .description("Size of gateway request and response messages")
+                    .baseUnit("bytes")
+                    .tag("phase", phase)
+                    .tag("transaction", transaction)
+                    .tag("direction", direction)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(((MessageLite) message).getSerializedSize());
+        }
+    }
+
+    private void recordCall(String peer, String phase, String transaction, Status status, long nanos) {
+        String code = status.getCode().name();
+        Timer.builder("fabric.gateway.call")
+                .description("Individual gateway calls by phase")
+                .tag("peer", peer)
+                .tag("phase", phase)
+                .tag("transaction", transaction)
+                .tag("status", code)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (!status.isOk()) {
+            Counter.builder("fabric.gateway.errors")
+                    .description("Failed gateway calls by gRPC status")
+                    .tag("peer", peer)
+                    .tag("phase", phase)
+                    .tag("transaction", transaction)
+                    .tag("status", code)
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    // Only unary calls are measured; the chaincode event stream stays open for the life of the application
+    private final class MetricsInterceptor implements ClientInterceptor {
+        private final String peer;
+
+        MetricsInterceptor(String peer) {
+            this.peer = peer;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                CallOptions callOptions, Channel next) {
+            ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+            if (method.getType() != MethodDescriptor.MethodType.UNARY) {
+                return call;
+            }
+            String phase = PHASES.getOrDefault(method.getBareMethodName(), method.getBareMethodName());
+            String transaction = callOptions.getOption(TRANSACTION);
+
+            return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(call) {
+                @Override
+                public void start(Listener<RespT> listener, Metadata headers) {
+                    long started = System.nanoTime();
+                    AtomicInteger waiting = inFlight(phase);
+                    waiting.incrementAndGet();
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(listener) {
+                        @Override
+                        public void onMessage(RespT message) {
+                            recordPayload(phase, transaction, "received", message);
+                            super.onMessage(message);
+                        }
+
+                        @Override
+                        public void onClose(Status status, Metadata trailers) {
+                            waiting.decrementAndGet();
+                            recordCall(peer, phase, transaction, status, System.nanoTime() - started);
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                }
+
+                @Override
+                public void sendMessage(ReqT message) {
+                    recordPayload(phase, transaction, "sent", message);
+                    super.sendMessage(message);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.fabric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One {@link PeerRouter} per client identity, so that a single backend can act for users of several
+ * organizations.
+ *
+ * Identities are named like User1@org1.example.com and can also be picked by their MSP ID, which selects
+ * the first identity configured for that organization. The first identity is the default. Credentials are
+ * read the first time an identity is used, on IDENTITY_LOAD_THREADS threads so that several identities load
+ * in parallel. A failed load is tried again on the next call. The connector is expected to open its gateways
+ * on shared gRPC channels, so an extra identity costs no connections.
+ *
+ * The identity for gateway calls is bound to the calling thread with {@link #as}; calls on threads without
+ * one use the default identity.
+ */
+public class GatewayPool implements Closeable {
+    private static final int IDENTITY_LOAD_THREADS =
+            Integer.parseInt(System.getenv().getOrDefault("IDENTITY_LOAD_THREADS", "4"));
+    private static final ThreadLocal<String> BOUND = new ThreadLocal<>();
+
+    @FunctionalInterface
+    public interface Connector {
+        PeerRouter connect(String identity) throws Exception;
+    }
+
+    // Identity name to MSP ID, in configured order
+    private final Map<String, String> identities;
+    private final String defaultIdentity;
+    private final Connector connector;
+    private final Closeable sharedResources;
+    private final Map<String, CompletableFuture<PeerRouter>> routers = new ConcurrentHashMap<>();
+    private final ExecutorService loaders;
+
+    // sharedResources, such as the channels every gateway uses, is closed after the routers and may be null
+    public GatewayPool(Map<String, String> identities, Connector connector, Closeable sharedResources) {
+        if (identities.isEmpty()) {
+            throw new IllegalArgumentException("At least one identity is required");
+        }
+        this.identities = Collections.unmodifiableMap(new LinkedHashMap<>(identities));
+        this.defaultIdentity = identities.keySet().iterator().next();
+        this.connector = connector;
+        this.sharedResources = sharedResources;
+        AtomicInteger count = new AtomicInteger();
+        this.loaders = Executors.newFixedThreadPool(IDENTITY_LOAD_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "identity-load-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // A pool holding just one ready router, for local stand-ins of the gateway
+    public static GatewayPool of(PeerRouter router) {
+        GatewayPool pool = new GatewayPool(Collections.singletonMap("default", ""), identity -> router, null);
+        pool.routers.put("default", CompletableFuture.completedFuture(router));
+        return pool;
+    }
+
+    // Run call with identity bound to the thread it runs on; a null identity means the default one
+    public static <T> RequestExecutors.GatewayCall<T> as(String identity, RequestExecutors.GatewayCall<T> call) {
+        return () -> {
+            String previous = BOUND.get();
+            BOUND.set(identity);
+            try {
+                return call.call();
+            } finally {
+                BOUND.set(previous);
+            }
+        };
+    }
+
+    // The identity bound to this thread, or null when calls here use the default one
+    public static String boundIdentity() {
+        return BOUND.get();
+    }
+
+    // The identity name for an identity name or MSP ID, the default one for null or blank
+    public String resolve(String requested) {
+        if (requested == null || requested.isBlank()) {
+            return defaultIdentity;
+        }
+        if (identities.containsKey(requested)) {
+            return requested;
+        }
+        for (Map.Entry<String, String> identity : identities.entrySet()) {
+            if (identity.getValue().equals(requested)) {
+                return identity.getKey();
+            }
+        }
+        throw new IllegalArgumentException("Unknown identity: " + requested);
+    }
+
+    public String getDefaultIdentity() {
+        return defaultIdentity;
+    }
+
+    // The router for the identity bound to this thread
+    public PeerRouter router() {
+        String identity = BOUND.get();
+        return router(identity == null ? defaultIdentity : identity);
+    }
+
+    // Waits for the identity's credentials if they are still loading
+    public PeerRouter router(String identity) {
+        if (!identities.containsKey(identity)) {
+            throw new IllegalArgumentException("Unknown identity: " + identity);
+        }
+        try {
+            return load(identity).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Could not load identity " + identity + ": " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+
+    // Start loading every identity in the background
+    public void preload() {
+        identities.keySet().forEach(this::load);
+    }
+
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(identities.size());
+        for (Map.Entry<String, String> identity : identities.entrySet()) {
+            CompletableFuture<PeerRouter> router = routers.get(identity.getKey());
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("identity", identity.getKey());
+            entry.put("mspId", identity.getValue());
+            entry.put("default", identity.getKey().equals(defaultIdentity));
+            entry.put("state", router == null ? "idle"
+                    : !router.isDone() ? "loading"
+                    : router.isCompletedExceptionally() ? "failed"
+                    : "ready");
+            stats.add(entry);
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        loaders.shutdownNow();
+        for (CompletableFuture<PeerRouter> router : routers.values()) {
+            if (router.isDone() && !router.isCompletedExceptionally()) {
+                router.join().close();
+            }
+        }
+        if (sharedResources != null) {
+            sharedResources.close();
+        }
+    }
+
+    // The load in progress or done for identity; a failed one is started again, e.g. once the key file is in place
+    private CompletableFuture<PeerRouter> load(String identity) {
+        CompletableFuture<PeerRouter> current = routers.get(identity);
+        if (current != null && !current.isCompletedExceptionally()) {
+            return current;
+        }
+        return routers.compute(identity, (name, loading) -> loading != null && !loading.isCompletedExceptionally()
+                ? loading
+                : CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return connector.connect(name);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, loaders));
+    }
+}
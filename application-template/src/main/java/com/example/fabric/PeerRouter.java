@@ -0,0 +1,285 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.GatewayRuntimeException;
+import org.hyperledger.fabric.client.Network;
+
+import io.grpc.Status;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Spreads evaluate calls over a pool of gateway peers.
+ *
+ * Each call goes to the peer with the lowest recent latency weighted by its outstanding calls. A peer that
+ * is unreachable or times out EJECT_AFTER_FAILURES times in a row is ejected, for BASE_EJECTION_MILLIS
+ * doubling up to MAX_EJECTION_MILLIS with every further ejection, and is tried again once that has passed.
+ * Evaluates that fail because a peer is unreachable are retried once on every other peer.
+ *
+ * Submits are not balanced: they go to the first healthy peer in configured order, which then endorses
+ * and orders them exactly as a single gateway would. A submit that cannot reach that peer counts towards
+ * its ejection like an evaluate, so writes move on from a dead peer, but it is not retried here, since
+ * only the caller knows whether sending it again is safe. Chaincode event streams follow the submits: they ask
+ * for {@link #eventNetwork} every time they (re)connect, and report a peer they could not reach with
+ * {@link #eventStreamFailed}, so a stream moves on once its peer is ejected.
+ */
+public class PeerRouter implements Closeable {
+    static final int EJECT_AFTER_FAILURES = 3;
+    static final long BASE_EJECTION_MILLIS = 5000;
+    static final long MAX_EJECTION_MILLIS = 60000;
+    // Weight of the newest sample in the latency average
+    private static final double LATENCY_WEIGHT = 0.2;
+    // A peer that is not being picked loses half its latency penalty every LATENCY_HALF_LIFE_MILLIS,
+    // so one slow sample does not keep it out of rotation for good
+    private static final long LATENCY_HALF_LIFE_MILLIS = 5000;
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T call(Contract contract) throws GatewayException;
+    }
+
+    // E is CommitException for submits that wait for their commit, nothing more for the ones that do not
+    @FunctionalInterface
+    public interface SubmitCall<T, E extends Exception> {
+        T call(Contract contract) throws GatewayException, E;
+    }
+
+    public static final class Endpoint {
+        private final String name;
+        private final Network network;
+        private final Contract contract;
+        private final Closeable resources;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        // Guarded by the endpoint itself
+        private double latencyMillis;
+        private long lastSampleAt;
+        private int consecutiveFailures;
+        private int ejections;
+        private long ejectedUntil;
+
+        // resources is closed with the router and may be null
+        public Endpoint(String name, Network network, Closeable resources) {
+            this.name = name;
+            this.network = network;
+            this.contract = network.getContract(FabricGatewayConfig.CHAINCODE_NAME);
+            this.resources = resources;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        synchronized boolean isAvailable(long now) {
+            return consecutiveFailures < EJECT_AFTER_FAILURES || now - ejectedUntil >= 0;
+        }
+
+        synchronized double score(long now) {
+            // Peers without samples yet score 0 and get tried first
+            double idleMillis = (now - lastSampleAt) / 1_000_000.0;
+            double latency = latencyMillis * Math.pow(0.5, idleMillis / LATENCY_HALF_LIFE_MILLIS);
+            return latency * (outstanding.get() + 1);
+        }
+
+        synchronized void succeeded(long elapsedNanos, long now) {
+            double sample = elapsedNanos / 1_000_000.0;
+            latencyMillis = latencyMillis == 0 ? sample : latencyMillis + LATENCY_WEIGHT * (sample - latencyMillis);
+            lastSampleAt = now;
+            consecutiveFailures = 0;
+            ejections = 0;
+        }
+
+        // Answered a call whose latency says nothing about the peer, such as a submit waiting for its commit
+        synchronized void reached() {
+            consecutiveFailures = 0;
+            ejections = 0;
+        }
+
+        synchronized void failed(long now) {
+            boolean ejected = !isAvailable(now);
+            consecutiveFailures++;
+            // Calls that were already in flight when the peer was ejected do not extend the ejection
+            if (consecutiveFailures >= EJECT_AFTER_FAILURES && !ejected) {
+                long ejection = Math.min(BASE_EJECTION_MILLIS << Math.min(ejections, 16), MAX_EJECTION_MILLIS);
+                ejections++;
+                ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(ejection);
+            }
+        }
+
+        synchronized long ejectedUntil() {
+            return ejectedUntil;
+        }
+
+        synchronized Map<String, Object> stats(long now) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("name", name);
+            stats.put("latencyMillis", latencyMillis);
+            stats.put("outstanding", outstanding.get());
+            stats.put("consecutiveFailures", consecutiveFailures);
+            stats.put("ejected", !isAvailable(now));
+            return stats;
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+    private final LongSupplier clock;
+
+    public PeerRouter(List<Endpoint> endpoints) {
+        this(endpoints, System::nanoTime);
+    }
+
+    PeerRouter(List<Endpoint> endpoints, LongSupplier clock) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one peer endpoint is required");
+        }
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        this.clock = clock;
+    }
+
+    public <T> T evaluate(Call<T> call) throws GatewayException {
+        Set<Endpoint> tried = new HashSet<>();
+        GatewayException lastFailure = null;
+        Endpoint endpoint;
+        while ((endpoint = pick(tried)) != null) {
+            tried.add(endpoint);
+            long start = clock.getAsLong();
+            endpoint.outstanding.incrementAndGet();
+            try {
+                T result = call.call(endpoint.contract);
+                long end = clock.getAsLong();
+                endpoint.succeeded(end - start, end);
+                return result;
+            } catch (GatewayException e) {
+                if (!isUnavailable(e.getStatus())) {
+                    // The peer answered, the transaction itself failed
+                    long end = clock.getAsLong();
+                    endpoint.succeeded(end - start, end);
+                    throw e;
+                }
+                endpoint.failed(clock.getAsLong());
+                lastFailure = e;
+            } finally {
+                endpoint.outstanding.decrementAndGet();
+            }
+        }
+        throw lastFailure;
+    }
+
+    // Run a submit against the first peer in configured order that is not ejected
+    public <T, E extends Exception> T submit(SubmitCall<T, E> call) throws GatewayException, E {
+        Endpoint endpoint = primary();
+        endpoint.outstanding.incrementAndGet();
+        try {
+            T result = call.call(endpoint.contract);
+            endpoint.reached();
+            return result;
+        } catch (GatewayException e) {
+            if (isUnavailable(e.getStatus())) {
+                endpoint.failed(clock.getAsLong());
+            } else {
+                endpoint.reached();
+            }
+            throw e;
+        } catch (Exception e) {
+            if (e instanceof CommitException) {
+                // Committed invalid: the peer did its part
+                endpoint.reached();
+            }
+            throw e;
+        } finally {
+            endpoint.outstanding.decrementAndGet();
+        }
+    }
+
+    // Chaincode events are read from the same peer submits go to
+    public Network eventNetwork() {
+        return primary().network;
+    }
+
+    // An event stream from network broke; counts as a failed call when its peer could not be reached
+    public void eventStreamFailed(Network network, RuntimeException failure) {
+        if (!(failure instanceof GatewayRuntimeException)
+                || !isUnavailable(((GatewayRuntimeException) failure).getStatus())) {
+            return;
+        }
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.network == network) {
+                endpoint.failed(clock.getAsLong());
+                return;
+            }
+        }
+    }
+
+    public List<Map<String, Object>> getStats() {
+        long now = clock.getAsLong();
+        List<Map<String, Object>> stats = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            stats.add(endpoint.stats(now));
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.resources != null) {
+                endpoint.resources.close();
+            }
+        }
+    }
+
+    private Endpoint primary() {
+        long now = clock.getAsLong();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(0);
+    }
+
+    // Best available peer not tried yet; when all of them are ejected, the one that was ejected first
+    private Endpoint pick(Set<Endpoint> tried) {
+        long now = clock.getAsLong();
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        Endpoint fallback = null;
+        for (Endpoint endpoint : endpoints) {
+            if (tried.contains(endpoint)) {
+                continue;
+            }
+            if (endpoint.isAvailable(now)) {
+                double score = endpoint.score(now);
+                if (score < bestScore) {
+                    best = endpoint;
+                    bestScore = score;
+                }
+            } else if (fallback == null || endpoint.ejectedUntil() - fallback.ejectedUntil() < 0) {
+                fallback = endpoint;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        // Rather try an ejected peer than fail without trying at all
+        return tried.isEmpty() ? fallback : null;
+    }
+
+    private static boolean isUnavailable(Status status) {
+        Status.Code code = status.getCode();
+        return code == Status.Code.UNAVAILABLE || code == Status.Code.DEADLINE_EXCEEDED;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.EndorseException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffers single sensor readings per plant and submits them as multi-reading batches.
+ *
+ * Buffers are flushed every window, or as soon as maxBatchSize readings are waiting. A plant has at most
+ * one batch in flight, so its readings reach the ledger in the order they were added; readings that
+ * arrive meanwhile wait for the next flush. At most maxPending readings are buffered or in flight,
+ * beyond that {@link #add} is rejected so callers can push back on their clients.
+ *
+ * A batch the chaincode rejected is tried again plant by plant, so one bad reading does not fail the rest.
+ * Any other failure, such as a commit status that never arrived, leaves open whether the batch committed;
+ * its readings fail with that error instead of being sent again, which could record them twice.
+ *
+ * Futures are only ever completed with the lock released, so their callbacks may call back in.
+ */
+public class ReadingCoalescer {
+
+    @FunctionalInterface
+    public interface BatchSubmitter {
+        void submit(List<BasilReading> readings) throws Exception;
+    }
+
+    private static final class Pending {
+        final BasilReading reading;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(BasilReading reading) {
+            this.reading = reading;
+        }
+    }
+
+    private final BatchSubmitter submitter;
+    private final int maxBatchSize;
+    private final int maxPending;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService flushers;
+
+    private final Object lock = new Object();
+    // Buffered readings per plant in arrival order, guarded by lock
+    private final Map<String, ArrayDeque<Pending>> buffers = new LinkedHashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private int pending;
+    private int flushable;
+    private boolean closed;
+
+    public ReadingCoalescer(BatchSubmitter submitter, long windowMillis, int maxBatchSize, int maxPending,
+            int flushThreads) {
+        this.submitter = submitter;
+        this.maxBatchSize = maxBatchSize;
+        this.maxPending = maxPending;
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("reading-coalescer"));
+        this.flushers = Executors.newFixedThreadPool(flushThreads, daemonThreads("reading-flush"));
+        timer.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Completes once the batch holding the reading has committed.
+    // Throws RejectedExecutionException when too many readings are waiting or the coalescer is draining.
+    public CompletableFuture<Void> add(BasilReading reading) {
+        Pending entry = new Pending(reading);
+        boolean full;
+        synchronized (lock) {
+            if (closed) {
+                throw new RejectedExecutionException("Shutting down");
+            }
+            if (pending >= maxPending) {
+                throw new RejectedExecutionException("Too many readings waiting to be submitted");
+            }
+            buffers.computeIfAbsent(reading.getQrCode(), k -> new ArrayDeque<>()).add(entry);
+            pending++;
+            if (!inFlight.contains(reading.getQrCode())) {
+                flushable++;
+            }
+            full = flushable >= maxBatchSize;
+        }
+        if (full) {
+            try {
+                timer.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Draining, which flushes everything itself
+            }
+        }
+        return entry.done;
+    }
+
+    // Readings accepted but not yet committed or failed
+    public int getPending() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    // Stop accepting readings and submit everything still buffered, waiting at most timeout.
+    // Readings that could not be submitted in time fail.
+    public void drain(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            closed = true;
+        }
+        timer.shutdownNow();
+        while (true) {
+            List<List<Pending>> batches;
+            synchronized (lock) {
+                long remaining = deadline - System.nanoTime();
+                if (pending == 0 || remaining <= 0) {
+                    break;
+                }
+                batches = takeBatches();
+                if (batches.isEmpty()) {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            }
+            start(batches);
+        }
+
+        List<Pending> unsent = new ArrayList<>();
+        synchronized (lock) {
+            for (ArrayDeque<Pending> buffer : buffers.values()) {
+                unsent.addAll(buffer);
+            }
+            buffers.clear();
+            pending -= unsent.size();
+            flushable = 0;
+        }
+        RejectedExecutionException notSubmitted = new RejectedExecutionException("Not submitted before shutdown");
+        for (Pending entry : unsent) {
+            entry.done.completeExceptionally(notSubmitted);
+        }
+        flushers.shutdown();
+        flushers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private void flush() {
+        List<List<Pending>> batches;
+        synchronized (lock) {
+            batches = takeBatches();
+        }
+        start(batches);
+    }
+
+    // Every flushable reading, maxBatchSize at a time; called with lock held
+    private List<List<Pending>> takeBatches() {
+        List<List<Pending>> batches = new ArrayList<>();
+        while (flushable > 0) {
+            batches.add(takeBatch());
+        }
+        return batches;
+    }
+
+    // Hand the batches to the flushers; called without the lock, since a rejected batch fails at once
+    private void start(List<List<Pending>> batches) {
+        for (List<Pending> batch : batches) {
+            try {
+                flushers.execute(() -> submit(batch));
+            } catch (RejectedExecutionException e) {
+                finish(batch, e);
+            }
+        }
+    }
+
+    // Whole plant buffers first, splitting the last one if it does not fit; called with lock held
+    private List<Pending> takeBatch() {
+        List<Pending> batch = new ArrayList<>();
+        Iterator<Map.Entry<String, ArrayDeque<Pending>>> plants = buffers.entrySet().iterator();
+        while (plants.hasNext() && batch.size() < maxBatchSize) {
+            Map.Entry<String, ArrayDeque<Pending>> plant = plants.next();
+            if (inFlight.contains(plant.getKey())) {
+                continue;
+            }
+            ArrayDeque<Pending> buffer = plant.getValue();
+            // Whatever stays behind is not flushable until this batch is done
+            flushable -= buffer.size();
+            while (!buffer.isEmpty() && batch.size() < maxBatchSize) {
+                batch.add(buffer.poll());
+            }
+            inFlight.add(plant.getKey());
+            if (buffer.isEmpty()) {
+                plants.remove();
+            }
+        }
+        return batch;
+    }
+
+    private void submit(List<Pending> batch) {
+        try {
+            submitter.submit(readings(batch));
+            finish(batch, null);
+        } catch (Exception e) {
+            Map<String, List<Pending>> byPlant = byPlant(batch);
+            if (byPlant.size() == 1 || !isRejected(e)) {
+                finish(batch, e);
+                return;
+            }
+            // The chaincode rejects a batch as a whole, so give every plant its own chance
+            for (List<Pending> plant : byPlant.values()) {
+                try {
+                    submitter.submit(readings(plant));
+                    finish(plant, null);
+                } catch (Exception plantError) {
+                    finish(plant, plantError);
+                }
+            }
+        }
+    }
+
+    // True only when the batch certainly changed nothing: endorsement failed, so it never reached the
+    // orderer, or it was ordered and then invalidated
+    static boolean isRejected(Throwable failure) {
+        return failure instanceof EndorseException || failure instanceof CommitException;
+    }
+
+    private void finish(List<Pending> batch, Exception error) {
+        synchronized (lock) {
+            pending -= batch.size();
+            for (String qrCode : byPlant(batch).keySet()) {
+                inFlight.remove(qrCode);
+                ArrayDeque<Pending> buffer = buffers.get(qrCode);
+                if (buffer != null) {
+                    flushable += buffer.size();
+                }
+            }
+            lock.notifyAll();
+        }
+        for (Pending entry : batch) {
+            if (error == null) {
+                entry.done.complete(null);
+            } else {
+                entry.done.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static List<BasilReading> readings(List<Pending> batch) {
+        List<BasilReading> readings = new ArrayList<>(batch.size());
+        for (Pending entry : batch) {
+            readings.add(entry.reading);
+        }
+        return readings;
+    }
+
+    private static Map<String, List<Pending>> byPlant(List<Pending> batch) {
+        Map<String, List<Pending>> byPlant = new LinkedHashMap<>();
+        for (Pending entry : batch) {
+            byPlant.computeIfAbsent(entry.reading.getQrCode(), k -> new ArrayList<>()).add(entry);
+        }
+        return byPlant;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.fabric;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Separate bounded pools for gateway reads and writes, so that servlet threads never wait on the gateway
+ * and a burst of slow commits cannot starve cheap reads.
+ *
+ * Each pool runs at most *_THREADS calls and queues at most *_QUEUE more; beyond that, {@link #read} and
+ * {@link #write} throw RejectedExecutionException straight away so the caller can answer 503.
+ */
+@Component
+public class RequestExecutors {
+    private static final int READ_THREADS = Integer.parseInt(System.getenv().getOrDefault("READ_THREADS", "32"));
+    private static final int READ_QUEUE = Integer.parseInt(System.getenv().getOrDefault("READ_QUEUE", "256"));
+    private static final int WRITE_THREADS = Integer.parseInt(System.getenv().getOrDefault("WRITE_THREADS", "16"));
+    private static final int WRITE_QUEUE = Integer.parseInt(System.getenv().getOrDefault("WRITE_QUEUE", "128"));
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    @FunctionalInterface
+    public interface GatewayCall<T> {
+        T call() throws Exception;
+    }
+
+    private final ThreadPoolExecutor reads = newPool("gateway-read", READ_THREADS, READ_QUEUE);
+    private final ThreadPoolExecutor writes = newPool("gateway-write", WRITE_THREADS, WRITE_QUEUE);
+
+    public RequestExecutors(MeterRegistry registry) {
+        Gauge.builder("fabric.requests.in.flight", this, RequestExecutors::getReadsInFlight)
+                .description("REST requests running or queued on the gateway pools")
+                .tag("pool", "read")
+                .register(registry);
+        Gauge.builder("fabric.requests.in.flight", this, RequestExecutors::getWritesInFlight)
+                .description("REST requests running or queued on the gateway pools")
+                .tag("pool", "write")
+                .register(registry);
+    }
+
+    public <T> CompletableFuture<T> read(GatewayCall<T> call) {
+        return run(reads, call);
+    }
+
+    public <T> CompletableFuture<T> write(GatewayCall<T> call) {
+        return run(writes, call);
+    }
+
+    // Calls running or queued
+    public int getReadsInFlight() {
+        return reads.getActiveCount() + reads.getQueue().size();
+    }
+
+    public int getWritesInFlight() {
+        return writes.getActiveCount() + writes.getQueue().size();
+    }
+
+    // Let accepted writes finish; reads are simply abandoned
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        reads.shutdownNow();
+        writes.shutdown();
+        writes.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static <T> CompletableFuture<T> run(ThreadPoolExecutor pool, GatewayCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        pool.execute(() -> {
+            try {
+                future.complete(call.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static ThreadPoolExecutor newPool(String name, int threads, int queue) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // AbortPolicy: a full queue rejects instead of blocking the caller
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue),
+                factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.fabric;
+
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orders submits per plant and retries the ones that lose a read conflict.
+ *
+ * Two transactions for one plant that are endorsed before either commits read the same version, and whichever
+ * is ordered second is invalidated with MVCC_READ_CONFLICT. Submits for one key therefore run one at a time,
+ * from endorsement until the commit status. A submit for an idle key runs straight away on the caller's thread.
+ * Otherwise it is queued behind the key's last submit, holding no thread, and runs on one of SUBMIT_CHAIN_THREADS
+ * once that submit has finished. An async submit keeps its key until its commit status is known.
+ *
+ * Conflicts can still come from batch transactions, other backend instances or count roll-ups, and peers
+ * that endorsed different versions return mismatched endorsements. Those submits are retried up to
+ * SUBMIT_MAX_RETRIES times, each after a random backoff of up to SUBMIT_RETRY_BASE_MILLIS doubled per attempt.
+ * An invalidated transaction changed nothing, so sending it again is safe.
+ *
+ * At most SUBMIT_MAX_WAITING submits wait for their key; beyond that submit throws RejectedExecutionException.
+ * A queued submit that only gets its turn after SUBMIT_KEY_WAIT_MILLIS fails with RejectedExecutionException
+ * instead of running, and a retry is only started when it would still finish within SUBMIT_BUDGET_MILLIS of
+ * the first attempt even if it ran into every gateway deadline, so a write never takes longer than
+ * {@link #WORST_CASE_MILLIS}.
+ */
+@Component
+public class SubmitScheduler {
+    private static final int SUBMIT_CHAIN_THREADS =
+            Integer.parseInt(System.getenv().getOrDefault("SUBMIT_CHAIN_THREADS", "16"));
+    private static final int SUBMIT_MAX_WAITING =
+            Integer.parseInt(System.getenv().getOrDefault("SUBMIT_MAX_WAITING", "1024"));
+    private static final int SUBMIT_MAX_RETRIES =
+            Integer.parseInt(System.getenv().getOrDefault("SUBMIT_MAX_RETRIES", "3"));
+    private static final long SUBMIT_RETRY_BASE_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("SUBMIT_RETRY_BASE_MILLIS", "50"));
+    private static final long MAX_RETRY_DELAY_MILLIS = 2000;
+    private static final long SUBMIT_KEY_WAIT_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("SUBMIT_KEY_WAIT_MILLIS", "30000"));
+    private static final long SUBMIT_BUDGET_MILLIS =
+            Long.parseLong(System.getenv().getOrDefault("SUBMIT_BUDGET_MILLIS", "120000"));
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+    // The first attempt always runs, however small the budget
+    static final long WORST_CASE_MILLIS =
+            SUBMIT_KEY_WAIT_MILLIS + Math.max(SUBMIT_BUDGET_MILLIS, FabricGatewayConfig.SUBMIT_ATTEMPT_MILLIS);
+
+    // Completes when the last submit queued for the key lets go of it
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    private final Semaphore waitingSlots;
+    private final ThreadPoolExecutor chained;
+    private final MeterRegistry registry;
+    private final Timer keyWait;
+
+    @FunctionalInterface
+    public interface Submit<T> {
+        T call() throws GatewayException, CommitException;
+    }
+
+    @FunctionalInterface
+    public interface AsyncSubmit<T> {
+        // Runs settled once the transaction's commit status is known; later submits for the key wait until then
+        T call(Runnable settled) throws GatewayException;
+    }
+
+    // What runs once a submit gets its key; completes released when it lets go of the key
+    private interface Turn<T> {
+        void run(CompletableFuture<Void> released, CompletableFuture<T> result);
+    }
+
+    public SubmitScheduler(MeterRegistry registry) {
+        this(registry, SUBMIT_MAX_WAITING);
+    }
+
+    SubmitScheduler(MeterRegistry registry, int maxWaiting) {
+        this.registry = registry;
+        waitingSlots = new Semaphore(maxWaiting);
+        AtomicInteger count = new AtomicInteger();
+        // Every queued turn holds a waiting slot until it starts, so the queue never fills up before the slots
+        chained = new ThreadPoolExecutor(SUBMIT_CHAIN_THREADS, SUBMIT_CHAIN_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxWaiting), runnable -> {
+                    Thread thread = new Thread(runnable, "submit-chain-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        keyWait = Timer.builder("fabric.submit.key.wait")
+                .description("Time a submit waited for earlier submits to the same plant")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    // Run submit on the caller's thread without ordering it against anything; conflicts are still retried
+    public <T> T submit(String transaction, Submit<T> submit) throws GatewayException, CommitException {
+        return withRetries(transaction, submit);
+    }
+
+    // Run submit once every earlier submit for key has finished, retrying its conflicts; a null key runs straight
+    // away. Throws RejectedExecutionException when SUBMIT_MAX_WAITING submits are already waiting.
+    public <T> CompletableFuture<T> submit(String transaction, String key, Submit<T> submit) {
+        return inTurn(key, (released, result) -> {
+            try {
+                T value = withRetries(transaction, submit);
+                released.complete(null);
+                result.complete(value);
+            } catch (Exception e) {
+                released.complete(null);
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    // Like submit, for a transaction whose commit status is awaited elsewhere: the key is held until the
+    // submit runs settled, or throws. Conflicts are not retried, since nobody waits for the outcome.
+    public <T> CompletableFuture<T> submitAsync(String key, AsyncSubmit<T> submit) {
+        return inTurn(key, (released, result) -> {
+            try {
+                result.complete(submit.call(() -> released.complete(null)));
+            } catch (GatewayException | RuntimeException e) {
+                released.complete(null);
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        chained.shutdown();
+        chained.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private <T> CompletableFuture<T> inTurn(String key, Turn<T> turn) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (key == null) {
+            turn.run(new CompletableFuture<>(), result);
+            return result;
+        }
+        if (!waitingSlots.tryAcquire()) {
+            throw new RejectedExecutionException("Too many writes waiting for their plant");
+        }
+        long queued = System.nanoTime();
+        CompletableFuture<Void> released = new CompletableFuture<>();
+        released.whenComplete((ignored, e) -> tails.remove(key, released));
+        CompletableFuture<Void> previous = tails.put(key, released);
+
+        Runnable start = () -> {
+            waitingSlots.release();
+            long waited = System.nanoTime() - queued;
+            keyWait.record(waited, TimeUnit.NANOSECONDS);
+            if (TimeUnit.NANOSECONDS.toMillis(waited) > SUBMIT_KEY_WAIT_MILLIS) {
+                released.complete(null);
+                result.completeExceptionally(new RejectedExecutionException(
+                        "Gave up waiting for earlier writes to the same plant"));
+                return;
+            }
+            turn.run(released, result);
+        };
+        if (previous == null) {
+            start.run();
+        } else {
+            // Only queues the turn, on whichever thread let go of the key
+            previous.whenComplete((ignored, e) -> {
+                try {
+                    chained.execute(start);
+                } catch (RejectedExecutionException rejected) {
+                    // Only after shutdown
+                    waitingSlots.release();
+                    released.complete(null);
+                    result.completeExceptionally(rejected);
+                }
+            });
+        }
+        return result;
+    }
+
+    // MVCC_READ_CONFLICT, PHANTOM_READ_CONFLICT or ENDORSEMENT_MISMATCH when failure is worth retrying, else null
+    public static String conflict(Throwable failure) {
+        if (failure instanceof CommitException) {
+            switch (((CommitException) failure).getCode()) {
+                case MVCC_READ_CONFLICT:
+                case PHANTOM_READ_CONFLICT:
+                    return ((CommitException) failure).getCode().name();
+                default:
+                    return null;
+            }
+        }
+        if (failure instanceof EndorseException) {
+            Status status = ((EndorseException) failure).getStatus();
+            // The gateway aborts when the peers' proposal responses differ, e.g. one had not seen the latest block
+            if (status.getCode() == Status.Code.ABORTED && status.getDescription() != null
+                    && status.getDescription().contains("do not match")) {
+                return "ENDORSEMENT_MISMATCH";
+            }
+        }
+        return null;
+    }
+
+    private <T> T withRetries(String transaction, Submit<T> submit) throws GatewayException, CommitException {
+        long start = System.nanoTime();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return submit.call();
+            } catch (GatewayException | CommitException e) {
+                String reason = conflict(e);
+                if (reason == null) {
+                    throw e;
+                }
+                long ceiling = Math.min(MAX_RETRY_DELAY_MILLIS, SUBMIT_RETRY_BASE_MILLIS << Math.min(attempt, 20));
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                boolean retry = attempt < SUBMIT_MAX_RETRIES
+                        && elapsedMillis + ceiling + FabricGatewayConfig.SUBMIT_ATTEMPT_MILLIS <= SUBMIT_BUDGET_MILLIS;
+                conflicts(transaction, reason, retry).increment();
+                if (!retry || !backOff(ceiling)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // Full jitter, so that submits that conflicted with each other do not collide again; false if interrupted
+    private static boolean backOff(long ceiling) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Counter conflicts(String transaction, String reason, boolean retried) {
+        return Counter.builder("fabric.submit.conflicts")
+                .description("Submits that failed on a read conflict or endorsement mismatch")
+                .tag("transaction", transaction)
+                .tag("reason", reason)
+                .tag("action", retried ? "retried" : "failed")
+                .register(registry);
+    }
+}
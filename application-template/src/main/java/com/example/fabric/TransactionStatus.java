@@ -0,0 +1,70 @@
+package com.example.fabric;
+
+/**
+ * Progress of a transaction submitted through the async write endpoints,
+ * as reported by GET /api/tx/{txId}.
+ */
+public class TransactionStatus {
+
+    public enum State {
+        PENDING, COMMITTED, FAILED
+    }
+
+    private final String txId;
+    private final State state;
+    private final String result;
+    private final Long blockNumber;
+    private final String validationCode;
+    private final String error;
+
+    private TransactionStatus(String txId, State state, String result, Long blockNumber, String validationCode,
+            String error) {
+        this.txId = txId;
+        this.state = state;
+        this.result = result;
+        this.blockNumber = blockNumber;
+        this.validationCode = validationCode;
+        this.error = error;
+    }
+
+    public static TransactionStatus pending(String txId, String result) {
+        return new TransactionStatus(txId, State.PENDING, result, null, null, null);
+    }
+
+    public static TransactionStatus committed(String txId, String result, long blockNumber, String validationCode) {
+        return new TransactionStatus(txId, State.COMMITTED, result, blockNumber, validationCode, null);
+    }
+
+    public static TransactionStatus invalid(String txId, String result, long blockNumber, String validationCode) {
+        return new TransactionStatus(txId, State.FAILED, result, blockNumber, validationCode,
+                "Transaction was not valid: " + validationCode);
+    }
+
+    public static TransactionStatus failed(String txId, String result, String error) {
+        return new TransactionStatus(txId, State.FAILED, result, null, null, error);
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public Long getBlockNumber() {
+        return blockNumber;
+    }
+
+    public String getValidationCode() {
+        return validationCode;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
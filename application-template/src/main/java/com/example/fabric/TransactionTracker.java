@@ -0,0 +1,151 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.CommitStatusException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.Status;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Waits for the commit status of transactions that were submitted without blocking the request thread.
+ *
+ * Transactions are already with the orderer when they get here, so they commit whether or not anybody is
+ * waiting. Commit waits therefore run on a small fixed pool: a queued wait for a transaction that has
+ * committed in the meantime returns straight away, and a handful of threads keep up with thousands of
+ * writes in flight. At most MAX_PENDING_COMMITS waits are queued; beyond that {@link #track} throws
+ * RejectedExecutionException before the transaction is submitted, so the caller can answer 503 without
+ * leaving a write behind that nobody tracks. The last MAX_TRACKED outcomes are kept for GET /api/tx/{txId}.
+ */
+@Component
+public class TransactionTracker {
+    private static final int COMMIT_WAIT_THREADS =
+            Integer.parseInt(System.getenv().getOrDefault("COMMIT_WAIT_THREADS", "4"));
+    private static final int MAX_PENDING_COMMITS =
+            Integer.parseInt(System.getenv().getOrDefault("MAX_PENDING_COMMITS", "1024"));
+    static final int MAX_TRACKED =
+            Integer.parseInt(System.getenv().getOrDefault("MAX_TRACKED_TRANSACTIONS", "10000"));
+
+    @FunctionalInterface
+    public interface Submission {
+        SubmittedTransaction submit() throws GatewayException;
+    }
+
+    private final Semaphore commitSlots;
+    private final ThreadPoolExecutor commitExecutor;
+    private final Map<String, TransactionStatus> statuses;
+    private final AtomicInteger pendingCommits = new AtomicInteger();
+
+    public TransactionTracker(MeterRegistry registry) {
+        this(registry, MAX_PENDING_COMMITS, MAX_TRACKED);
+    }
+
+    TransactionTracker(MeterRegistry registry, int maxPendingCommits, int maxTracked) {
+        commitSlots = new Semaphore(maxPendingCommits);
+        // Every queued wait holds a slot, so the queue never fills up before the slots run out
+        commitExecutor = new ThreadPoolExecutor(COMMIT_WAIT_THREADS, COMMIT_WAIT_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxPendingCommits), new CommitWaitThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        // Oldest entries are dropped first once maxTracked is reached
+        statuses = Collections.synchronizedMap(new LinkedHashMap<String, TransactionStatus>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TransactionStatus> eldest) {
+                return size() > maxTracked;
+            }
+        });
+        Gauge.builder("fabric.commits.pending", pendingCommits, AtomicInteger::get)
+                .description("Submitted transactions whose commit status is still awaited")
+                .register(registry);
+    }
+
+    // Submit the transaction, record it as pending and wait for its commit status in the background.
+    // Throws RejectedExecutionException without submitting when MAX_PENDING_COMMITS waits are already queued.
+    public String track(String name, Submission submission) throws GatewayException {
+        return track(name, submission, () -> { });
+    }
+
+    // Same, running settled once the commit status is recorded or given up on; not run when track throws
+    public String track(String name, Submission submission, Runnable settled) throws GatewayException {
+        if (!commitSlots.tryAcquire()) {
+            throw new RejectedExecutionException("Too many transactions waiting for their commit status");
+        }
+        SubmittedTransaction transaction;
+        try {
+            transaction = submission.submit();
+        } catch (GatewayException | RuntimeException e) {
+            commitSlots.release();
+            throw e;
+        }
+        String txId = transaction.getTransactionId();
+        String result = new String(transaction.getResult(), StandardCharsets.UTF_8);
+        statuses.put(txId, TransactionStatus.pending(txId, result));
+        pendingCommits.incrementAndGet();
+        try {
+            commitExecutor.execute(() -> {
+                try {
+                    statuses.put(txId, awaitCommit(name, transaction, result));
+                } finally {
+                    pendingCommits.decrementAndGet();
+                    commitSlots.release();
+                    settled.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Only after shutdown; the transaction is with the orderer all the same
+            statuses.put(txId, TransactionStatus.failed(txId, result, "Commit status not awaited: shutting down"));
+            pendingCommits.decrementAndGet();
+            commitSlots.release();
+            settled.run();
+        }
+        return txId;
+    }
+
+    // Null when the transaction was never tracked here or has aged out
+    public TransactionStatus getStatus(String txId) {
+        return statuses.get(txId);
+    }
+
+    private TransactionStatus awaitCommit(String name, SubmittedTransaction transaction, String result) {
+        String txId = transaction.getTransactionId();
+        try {
+            Status status = transaction.getStatus(GatewayMetrics.transaction(name));
+            if (status.isSuccessful()) {
+                return TransactionStatus.committed(txId, result, status.getBlockNumber(), status.getCode().name());
+            }
+            return TransactionStatus.invalid(txId, result, status.getBlockNumber(), status.getCode().name());
+        } catch (CommitStatusException | RuntimeException e) {
+            return TransactionStatus.failed(txId, result, "Error getting commit status: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        commitExecutor.shutdownNow();
+    }
+
+    private static final class CommitWaitThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "commit-wait-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
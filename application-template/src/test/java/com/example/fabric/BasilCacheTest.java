@@ -0,0 +1,143 @@
+package com.example.fabric;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BasilCacheTest {
+
+    private static final long TTL = 30_000;
+    private static final long SETTLE = 2_000;
+
+    private long now = 1_000_000;
+    private final BasilCache cache = new BasilCache(2, TTL, SETTLE, () -> now);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void secondReadIsAHit() throws Exception {
+        assertThat(cache.get("qr-1", () -> load("v1"))).isEqualTo("v1");
+        assertThat(cache.get("qr-1", () -> load("v2"))).isEqualTo("v1");
+
+        assertThat(loads).hasValue(1);
+        assertThat(cache.getStats()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void entriesExpireAfterTheTtl() throws Exception {
+        cache.get("qr-1", () -> load("v1"));
+        now += TTL - 1;
+        assertThat(cache.get("qr-1", () -> load("v2"))).isEqualTo("v1");
+
+        now += 1;
+        assertThat(cache.get("qr-1", () -> load("v2"))).isEqualTo("v2");
+        assertThat(cache.getStats()).containsEntry("evictions", 1L);
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsDroppedBeyondTheSize() throws Exception {
+        cache.get("qr-1", () -> load("v1"));
+        cache.get("qr-2", () -> load("v2"));
+        cache.get("qr-1", () -> load("unused"));
+        cache.get("qr-3", () -> load("v3"));
+
+        assertThat(cache.getPresent(Arrays.asList("qr-1", "qr-2", "qr-3"))).containsOnlyKeys("qr-1", "qr-3");
+        assertThat(cache.getStats()).containsEntry("size", 2L).containsEntry("evictions", 1L);
+    }
+
+    @Test
+    void invalidationEvictsThePlant() throws Exception {
+        cache.get("qr-1", () -> load("v1"));
+        cache.invalidate("qr-1");
+        now += SETTLE;
+
+        assertThat(cache.get("qr-1", () -> load("v2"))).isEqualTo("v2");
+        assertThat(cache.get("qr-1", () -> load("v3"))).isEqualTo("v2");
+    }
+
+    @Test
+    void loadRacingWithAnInvalidationIsNotCached() throws Exception {
+        String value = cache.get("qr-1", () -> {
+            cache.invalidate("qr-1");
+            now += SETTLE;
+            return load("stale");
+        });
+
+        assertThat(value).isEqualTo("stale");
+        assertThat(cache.get("qr-1", () -> load("fresh"))).isEqualTo("fresh");
+    }
+
+    @Test
+    void invalidatingOnePlantKeepsLoadsOfOthersCacheable() throws Exception {
+        cache.get("qr-1", () -> {
+            cache.invalidate("qr-2");
+            return load("v1");
+        });
+
+        assertThat(cache.get("qr-1", () -> load("v2"))).isEqualTo("v1");
+    }
+
+    @Test
+    void plantIsNotCachedAgainUntilItHasSettled() throws Exception {
+        cache.invalidate("qr-1");
+        cache.get("qr-1", () -> load("lagging peer"));
+        assertThat(cache.get("qr-1", () -> load("v2"))).isEqualTo("v2");
+
+        now += SETTLE;
+        cache.get("qr-1", () -> load("v3"));
+        assertThat(cache.get("qr-1", () -> load("v4"))).isEqualTo("v3");
+    }
+
+    @Test
+    void invalidateAllDropsEverythingAndLetsItSettle() throws Exception {
+        cache.get("qr-1", () -> load("v1"));
+        cache.invalidateAll();
+
+        assertThat(cache.get("qr-1", () -> load("v2"))).isEqualTo("v2");
+        assertThat(cache.get("qr-1", () -> load("v3"))).isEqualTo("v3");
+        now += SETTLE;
+        cache.get("qr-1", () -> load("v4"));
+        assertThat(cache.get("qr-1", () -> load("v5"))).isEqualTo("v4");
+    }
+
+    @Test
+    void failedLoadsAreNotCached() throws Exception {
+        assertThatThrownBy(() -> cache.get("qr-1", () -> {
+            throw new IllegalStateException("peer down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.get("qr-1", () -> load("v1"))).isEqualTo("v1");
+        assertThat(cache.get("qr-1", () -> load("v2"))).isEqualTo("v1");
+    }
+
+    @Test
+    void batchLoadFetchesOnlyUncachedPlantsAndSkipsOnesInvalidatedMeanwhile() throws Exception {
+        cache.get("qr-1", () -> load("v1"));
+        List<List<String>> requested = new ArrayList<>();
+
+        Map<String, String> values = cache.getAll(Arrays.asList("qr-1", "qr-2", "qr-3", "qr-2"), qrCodes -> {
+            requested.add(qrCodes);
+            cache.invalidate("qr-3");
+            Map<String, String> loaded = new HashMap<>();
+            loaded.put("qr-2", "v2");
+            loaded.put("qr-3", "stale");
+            return loaded;
+        });
+
+        assertThat(requested).containsExactly(Arrays.asList("qr-2", "qr-3"));
+        assertThat(values).containsEntry("qr-1", "v1").containsEntry("qr-2", "v2").containsEntry("qr-3", "stale");
+        assertThat(cache.getPresent(Arrays.asList("qr-2", "qr-3"))).containsOnlyKeys("qr-2");
+    }
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.fabric;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hyperledger.fabric.client.ChaincodeEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+// Subscriptions through the controller, with one sender thread that only runs once released
+class BasilChangeStreamTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService senders = Executors.newSingleThreadExecutor();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private BasilChangeStream stream;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        senders.execute(() -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stream = new BasilChangeStream(registry, senders);
+        FabricController controller = new FabricController();
+        ReflectionTestUtils.setField(controller, "changeStream", stream);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        stream.close();
+    }
+
+    @Test
+    void changesArriveInOrder() throws Exception {
+        MockHttpServletResponse response = subscribe("/api/basil/_events");
+
+        stream.publish(event(1), "qr-1", null, "Org1MSP");
+        stream.publish(event(2), "qr-2", null, "Org1MSP");
+        flush();
+
+        String body = response.getContentAsString();
+        assertThat(body).contains("id:1:tx-1").contains("id:2:tx-2").doesNotContain("event:resync");
+        assertThat(body.indexOf("id:1:tx-1")).isLessThan(body.indexOf("id:2:tx-2"));
+    }
+
+    @Test
+    void overflowReplacesTheBufferWithOneResync() throws Exception {
+        MockHttpServletResponse response = subscribe("/api/basil/_events");
+
+        for (int i = 0; i <= BasilChangeStream.SSE_BUFFER_SIZE; i++) {
+            stream.publish(event(i), "qr-" + i, null, "Org1MSP");
+        }
+        flush();
+
+        String body = response.getContentAsString();
+        assertThat(body).isEqualTo("event:resync\ndata:{}\n\n");
+        assertThat(registry.counter("fabric.sse.dropped").count()).isEqualTo(BasilChangeStream.SSE_BUFFER_SIZE + 1);
+
+        // The client keeps its stream and gets the changes after the resync
+        stream.publish(event(1000), "qr-1000", null, "Org1MSP");
+        flush();
+        assertThat(response.getContentAsString()).startsWith(body).contains("event:basil\nid:1000:tx-1000\n");
+    }
+
+    @Test
+    void onlyTheSlowSubscriberResyncs() throws Exception {
+        MockHttpServletResponse all = subscribe("/api/basil/_events");
+        MockHttpServletResponse one = subscribe("/api/basil/_events?qrCode=qr-1");
+
+        for (int i = 0; i <= BasilChangeStream.SSE_BUFFER_SIZE; i++) {
+            stream.publish(event(i), "qr-" + i, null, "Org1MSP");
+        }
+        flush();
+
+        assertThat(all.getContentAsString()).startsWith("event:resync\n");
+        assertThat(one.getContentAsString()).startsWith("event:basil\nid:1:tx-1\n").doesNotContain("event:resync");
+    }
+
+    private MockHttpServletResponse subscribe(String url) throws Exception {
+        return mvc.perform(get(url)).andExpect(request().asyncStarted()).andReturn().getResponse();
+    }
+
+    // Let the sender run everything queued so far
+    private void flush() throws Exception {
+        released.countDown();
+        senders.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    private static ChaincodeEvent event(long blockNumber) {
+        ChaincodeEvent event = mock(ChaincodeEvent.class);
+        when(event.getBlockNumber()).thenReturn(blockNumber);
+        when(event.getTransactionId()).thenReturn("tx-" + blockNumber);
+        return event;
+    }
+}
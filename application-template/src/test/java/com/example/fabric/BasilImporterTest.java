@@ -0,0 +1,112 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.GatewayException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.Status;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BasilImporterTest {
+
+    private final FabricService fabricService = mock(FabricService.class);
+    private final BasilImporter importer = new BasilImporter(fabricService);
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final List<BasilImporter.RowResult> results = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        importer.shutdown();
+    }
+
+    @Test
+    void reportsEveryRow() throws Exception {
+        ledgerAlreadyHas("QR3");
+
+        BasilImporter.Summary summary =
+                importCsv("qrCode,origin\nQR1,Italy\nQR2,Spain\n\nQR1,Italy\n,Spain\nQR3,Greece\n");
+
+        assertThat(batches).containsExactly(List.of("QR1", "QR2", "QR3"));
+        assertThat(statusByRow()).containsExactly(
+                Map.entry(2, "created"), Map.entry(3, "created"), Map.entry(5, "duplicate"),
+                Map.entry(6, "invalid"), Map.entry(7, "duplicate"));
+        assertThat(summary.getRows()).isEqualTo(5);
+        assertThat(summary.getCreated()).isEqualTo(2);
+        assertThat(summary.getDuplicates()).isEqualTo(2);
+        assertThat(summary.getInvalid()).isEqualTo(1);
+    }
+
+    @Test
+    void repeatsAcrossChunksAreLeftToTheChaincode() throws Exception {
+        ledgerAlreadyHas();
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            input.append("{\"qrCode\":\"QR").append(i).append("\",\"origin\":\"Italy\"}\n");
+        }
+        input.append("{\"qrCode\":\"QR0\",\"origin\":\"Italy\"}\n");
+
+        BasilImporter.Summary summary = importer.importPlants(null,
+                new BufferedReader(new StringReader(input.toString())), BasilImporter.Format.NDJSON, results::add);
+
+        // The chunks run concurrently, so either registration of QR0 may come first
+        assertThat(batches).hasSize(2).contains(List.of("QR0"));
+        assertThat(summary.getCreated()).isEqualTo(500);
+        assertThat(summary.getDuplicates()).isEqualTo(1);
+        assertThat(List.of(statusByRow().get(1), statusByRow().get(501)))
+                .containsExactlyInAnyOrder("created", "duplicate");
+    }
+
+    @Test
+    void failedChunkFailsEachOfItsRows() throws Exception {
+        when(fabricService.createBasilsBatch(anyList()))
+                .thenThrow(new GatewayException(Status.UNAVAILABLE.asRuntimeException()));
+
+        BasilImporter.Summary summary = importCsv("QR1,Italy\nQR2,Spain\n");
+
+        assertThat(summary.getFailed()).isEqualTo(2);
+        assertThat(results).extracting(BasilImporter.RowResult::getQrCode).containsExactlyInAnyOrder("QR1", "QR2");
+    }
+
+    // Stands in for the chaincode, which skips and reports plants that are already registered
+    private void ledgerAlreadyHas(String... qrCodes) throws Exception {
+        Set<String> ledger = new HashSet<>(List.of(qrCodes));
+        when(fabricService.createBasilsBatch(anyList())).thenAnswer(invocation -> {
+            List<BasilRegistration> plants = invocation.getArgument(0);
+            synchronized (ledger) {
+                batches.add(plants.stream().map(BasilRegistration::getQrCode).collect(Collectors.toList()));
+                List<String> duplicates = new ArrayList<>();
+                for (BasilRegistration plant : plants) {
+                    if (!ledger.add(plant.getQrCode())) {
+                        duplicates.add(plant.getQrCode());
+                    }
+                }
+                return duplicates;
+            }
+        });
+    }
+
+    private BasilImporter.Summary importCsv(String input) throws Exception {
+        return importer.importPlants(null, new BufferedReader(new StringReader(input)), BasilImporter.Format.CSV,
+                results::add);
+    }
+
+    private Map<Integer, String> statusByRow() {
+        return results.stream().collect(Collectors.toMap(BasilImporter.RowResult::getRow,
+                BasilImporter.RowResult::getStatus, (a, b) -> a, TreeMap::new));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.fabric;
+
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BasilReadingTest {
+
+    @Test
+    void parsesJsonArrayAndNdjson() {
+        String reading = "{\"qrCode\":\"QR1\",\"gps\":\"52.1,5.1\",\"timestamp\":1700000000,"
+                + "\"temperature\":\"4.5\",\"humidity\":\"61\",\"status\":\"In Transit\"}";
+
+        List<BasilReading> fromArray = BasilReading.fromJsonArray("[" + reading + "," + reading + "]");
+        List<BasilReading> fromLines = BasilReading.fromNdjson(reading + "\r\n\n" + reading + "\n");
+
+        assertThat(fromArray).hasSize(2);
+        assertThat(fromLines).hasSize(2);
+        assertThat(fromLines.get(1).getTimestamp()).isEqualTo(1700000000L);
+        fromLines.forEach(BasilReading::validate);
+    }
+
+    @Test
+    void rejectsNullReadings() {
+        assertThatThrownBy(() -> BasilReading.fromNdjson("null\n")).isInstanceOf(JsonParseException.class);
+        assertThatThrownBy(() -> BasilReading.fromJsonArray("[null]")).isInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    void rejectsIncompleteReadings() {
+        BasilReading reading = BasilReading.fromNdjson("{\"qrCode\":\"QR1\"}").get(0);
+
+        assertThatThrownBy(reading::validate).isInstanceOf(JsonParseException.class);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.fabric;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.servlet.http.HttpServletRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Request handling against a mocked FabricService
+class FabricControllerTest {
+
+    private FabricService fabricService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        FabricController controller = new FabricController();
+        fabricService = mock(FabricService.class);
+        ReflectionTestUtils.setField(controller, "fabricService", fabricService);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void rejectsNullNdjsonReading() throws Exception {
+        perform(post("/api/basil/states").contentType(MediaType.APPLICATION_NDJSON).content("null\n"),
+                "Invalid readings");
+        verifyNoInteractions(fabricService);
+    }
+
+    @Test
+    void rejectsBatchOverTheChaincodeLimit() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i <= 1000; i++) {
+            body.append("{\"qrCode\":\"QR").append(i).append("\",\"gps\":\"1,1\",\"timestamp\":1,")
+                    .append("\"temperature\":\"4\",\"humidity\":\"60\",\"status\":\"In Transit\"}\n");
+        }
+
+        perform(post("/api/basil/states").contentType(MediaType.APPLICATION_NDJSON).content(body.toString()),
+                "Too many readings: 1001 > 1000");
+        verifyNoInteractions(fabricService);
+    }
+
+    @Test
+    void rejectsBatchReadOverTheChaincodeLimit() throws Exception {
+        StringBuilder qrCodes = new StringBuilder();
+        for (int i = 0; i <= 1000; i++) {
+            qrCodes.append(i == 0 ? "" : ",").append("\"QR").append(i).append('"');
+        }
+
+        perform(post("/api/basil/_batch").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"qrCodes\":[" + qrCodes + "]}"), "Too many qrCodes: 1001 > 1000");
+        verifyNoInteractions(fabricService);
+    }
+
+    @Test
+    void importRunsOnTheWritePoolAndStreamsRowResults() throws Exception {
+        FabricController controller = new FabricController();
+        GatewayPool gatewayPool = mock(GatewayPool.class);
+        when(gatewayPool.resolve(null)).thenReturn("default");
+        when(fabricService.createBasilsBatch(anyList())).thenReturn(List.of("QR2"));
+        RequestExecutors requestExecutors = new RequestExecutors(new SimpleMeterRegistry());
+        BasilImporter importer = new BasilImporter(fabricService);
+        ReflectionTestUtils.setField(controller, "fabricService", fabricService);
+        ReflectionTestUtils.setField(controller, "gatewayPool", gatewayPool);
+        ReflectionTestUtils.setField(controller, "requestExecutors", requestExecutors);
+        ReflectionTestUtils.setField(controller, "basilImporter", importer);
+        // Stands in for the request proxy Spring injects, without an identity header
+        ReflectionTestUtils.setField(controller, "request", mock(HttpServletRequest.class));
+        MockMvc importMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        try {
+            MvcResult result = importMvc.perform(post("/api/basil/import")
+                    .contentType("text/csv").content("QR1,Italy\nQR2,Spain\n"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            result.getAsyncResult(5000);
+
+            assertThat(result.getResponse().getContentAsString().split("\n")).containsExactly(
+                    "{\"row\":1,\"qrCode\":\"QR1\",\"status\":\"created\"}",
+                    "{\"row\":2,\"qrCode\":\"QR2\",\"status\":\"duplicate\","
+                            + "\"error\":\"Already on the ledger\"}",
+                    "{\"rows\":2,\"created\":1,\"duplicates\":1,\"invalid\":0,\"failed\":0}");
+        } finally {
+            importer.shutdown();
+            requestExecutors.shutdown();
+        }
+    }
+
+    @Test
+    void identityHeaderIsRefusedUnlessItComesFromATrustedProxy() throws Exception {
+        FabricController controller = new FabricController();
+        GatewayPool gatewayPool = mock(GatewayPool.class);
+        HttpServletRequest caller = mock(HttpServletRequest.class);
+        when(caller.getHeader(FabricController.IDENTITY_HEADER)).thenReturn("Org2MSP");
+        when(caller.getRemoteAddr()).thenReturn("203.0.113.7");
+        ReflectionTestUtils.setField(controller, "fabricService", fabricService);
+        ReflectionTestUtils.setField(controller, "gatewayPool", gatewayPool);
+        ReflectionTestUtils.setField(controller, "request", caller);
+        MockMvc callerMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        callerMvc.perform(post("/api/basil").param("id", "QR1").param("country", "Italy"))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(fabricService, gatewayPool);
+    }
+
+    // Validation failures are answered with an already completed future
+    private void perform(org.springframework.test.web.servlet.RequestBuilder builder, String message)
+            throws Exception {
+        MvcResult result = mvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString(message)));
+    }
+}
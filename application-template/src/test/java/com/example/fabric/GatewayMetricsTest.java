@@ -0,0 +1,155 @@
+package com.example.fabric;
+
+import io.grpc.ClientInterceptors;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.client.Gateway;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.identity.Identity;
+import org.hyperledger.fabric.protos.gateway.EndorseRequest;
+import org.hyperledger.fabric.protos.gateway.EndorseResponse;
+import org.hyperledger.fabric.protos.gateway.EvaluateRequest;
+import org.hyperledger.fabric.protos.gateway.EvaluateResponse;
+import org.hyperledger.fabric.protos.gateway.GatewayGrpc;
+import org.hyperledger.fabric.protos.peer.Response;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Gateway calls through the metrics interceptor to an in-process peer
+class GatewayMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final GatewayMetrics metrics = new GatewayMetrics(registry);
+    private Server server;
+    private ManagedChannel channel;
+    private Gateway gateway;
+    private Contract contract;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        String name = "gateway-metrics-test-" + System.identityHashCode(this);
+        server = InProcessServerBuilder.forName(name).addService(new Peer()).directExecutor().build().start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        gateway = Gateway.newInstance()
+                .identity(new TestIdentity())
+                .signer(digest -> new byte[0])
+                .connection(ClientInterceptors.intercept(channel, metrics.interceptor("peer0")))
+                .connect();
+        contract = gateway.getNetwork(FabricGatewayConfig.CHANNEL_NAME).getContract(FabricGatewayConfig.CHAINCODE_NAME);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gateway.close();
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    void callsAreTimedByPhaseAndTransaction() throws Exception {
+        contract.newProposal("readBasil").build().evaluate(GatewayMetrics.transaction("readBasil"));
+
+        Timer call = registry.get("fabric.gateway.call")
+                .tags("peer", "peer0", "phase", "evaluate", "transaction", "readBasil", "status", "OK")
+                .timer();
+        assertThat(call.count()).isEqualTo(1);
+        assertThat(registry.get("fabric.gateway.payload").tags("phase", "evaluate", "direction", "sent")
+                .summary().count()).isEqualTo(1);
+        assertThat(registry.get("fabric.gateway.payload").tags("phase", "evaluate", "direction", "received")
+                .summary().totalAmount()).isPositive();
+        assertThat(registry.get("fabric.gateway.in.flight").tags("phase", "evaluate").gauge().value()).isZero();
+        assertThat(registry.find("fabric.gateway.errors").counters()).isEmpty();
+    }
+
+    @Test
+    void failedCallsAreCountedByStatus() {
+        assertThatThrownBy(() -> contract.newProposal("updateBasilState").build()
+                .endorse(GatewayMetrics.transaction("updateBasilState")))
+                .isInstanceOf(EndorseException.class);
+
+        assertThat(registry.get("fabric.gateway.call")
+                .tags("phase", "endorse", "transaction", "updateBasilState", "status", "UNAVAILABLE")
+                .timer().count()).isEqualTo(1);
+        assertThat(registry.get("fabric.gateway.errors")
+                .tags("peer", "peer0", "phase", "endorse", "status", "UNAVAILABLE")
+                .counter().count()).isEqualTo(1);
+        assertThat(registry.get("fabric.gateway.in.flight").tags("phase", "endorse").gauge().value()).isZero();
+    }
+
+    @Test
+    void untaggedCallsCountAsUnknownTransactions() throws Exception {
+        contract.evaluateTransaction("readBasil");
+
+        assertThat(registry.get("fabric.gateway.call").tags("phase", "evaluate", "transaction", "unknown")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void transactionsAreTaggedWithTheirOutcome() {
+        CommitException invalid = mock(CommitException.class);
+        when(invalid.getCode()).thenReturn(TxValidationCode.MVCC_READ_CONFLICT);
+        GatewayException unavailable = new EndorseException("tx", Status.UNAVAILABLE.asRuntimeException());
+
+        metrics.stop(metrics.start(), "createBasil", "submit", null);
+        metrics.stop(metrics.start(), "createBasil", "submit", invalid);
+        metrics.stop(metrics.start(), "createBasil", "submit", unavailable);
+        metrics.stop(metrics.start(), "readBasil", "evaluate", new IllegalStateException("unreadable"));
+
+        for (String outcome : new String[] {"OK", "MVCC_READ_CONFLICT", "UNAVAILABLE"}) {
+            assertThat(registry.get("fabric.transaction")
+                    .tags("transaction", "createBasil", "type", "submit", "outcome", outcome)
+                    .timer().count()).isEqualTo(1);
+        }
+        assertThat(registry.get("fabric.transaction")
+                .tags("transaction", "readBasil", "type", "evaluate", "outcome", "IllegalStateException")
+                .timer().count()).isEqualTo(1);
+    }
+
+    // Answers every evaluate and refuses every endorsement
+    private static final class Peer extends GatewayGrpc.GatewayImplBase {
+        @Override
+        public void evaluate(EvaluateRequest request, StreamObserver<EvaluateResponse> observer) {
+            observer.onNext(EvaluateResponse.newBuilder()
+                    .setResult(Response.newBuilder().setStatus(200).setPayload(ByteString.copyFromUtf8("{}")))
+                    .build());
+            observer.onCompleted();
+        }
+
+        @Override
+        public void endorse(EndorseRequest request, StreamObserver<EndorseResponse> observer) {
+            observer.onError(Status.UNAVAILABLE.asRuntimeException());
+        }
+    }
+
+    private static final class TestIdentity implements Identity {
+        @Override
+        public String getMspId() {
+            return "Org1MSP";
+        }
+
+        @Override
+        public byte[] getCredentials() {
+            return new byte[0];
+        }
+    }
+}
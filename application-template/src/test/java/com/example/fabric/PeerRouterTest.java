@@ -0,0 +1,275 @@
+package com.example.fabric;
+
+import org.hyperledger.fabric.client.Gateway;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.GatewayRuntimeException;
+import org.hyperledger.fabric.client.Network;
+import org.hyperledger.fabric.client.identity.Identity;
+import org.hyperledger.fabric.protos.gateway.EndorseRequest;
+import org.hyperledger.fabric.protos.gateway.EndorseResponse;
+import org.hyperledger.fabric.protos.gateway.EvaluateRequest;
+import org.hyperledger.fabric.protos.gateway.EvaluateResponse;
+import org.hyperledger.fabric.protos.gateway.GatewayGrpc;
+import org.hyperledger.fabric.protos.peer.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PeerRouterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<Peer> peers = new ArrayList<>();
+    private PeerRouter router;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (router != null) {
+            router.close();
+        }
+        for (Peer peer : peers) {
+            peer.shutdown();
+        }
+    }
+
+    @Test
+    void evaluatesGoToTheFastestPeer() throws Exception {
+        Peer slow = peer("slow", 50);
+        Peer fast = peer("fast", 10);
+        router = router(slow, fast);
+
+        // Neither has been sampled yet, so both are tried once
+        assertThat(evaluate()).isEqualTo("slow");
+        assertThat(evaluate()).isEqualTo("fast");
+        for (int i = 0; i < 5; i++) {
+            assertThat(evaluate()).isEqualTo("fast");
+        }
+        assertThat(slow.calls).hasValue(1);
+    }
+
+    @Test
+    void unreachablePeerIsRetriedElsewhereAndEjectedAfterThreeFailures() throws Exception {
+        Peer down = peer("down", 0);
+        Peer up = peer("up", 0);
+        down.status = Status.UNAVAILABLE;
+        router = router(down, up);
+
+        for (int i = 0; i < PeerRouter.EJECT_AFTER_FAILURES; i++) {
+            assertThat(evaluate()).isEqualTo("up");
+        }
+        assertThat(router.getStats().get(0)).containsEntry("ejected", true);
+
+        assertThat(evaluate()).isEqualTo("up");
+        assertThat(down.calls).hasValue(PeerRouter.EJECT_AFTER_FAILURES);
+    }
+
+    @Test
+    void ejectedPeerIsTriedAgainAfterADoublingBackOff() throws Exception {
+        Peer down = peer("down", 0);
+        Peer up = peer("up", 0);
+        down.status = Status.UNAVAILABLE;
+        router = router(down, up);
+        for (int i = 0; i < PeerRouter.EJECT_AFTER_FAILURES; i++) {
+            evaluate();
+        }
+
+        advanceMillis(PeerRouter.BASE_EJECTION_MILLIS - 1);
+        evaluate();
+        assertThat(down.calls).hasValue(PeerRouter.EJECT_AFTER_FAILURES);
+
+        // Still down once reinstated: ejected again, now for twice as long
+        advanceMillis(1);
+        evaluate();
+        assertThat(down.calls).hasValue(PeerRouter.EJECT_AFTER_FAILURES + 1);
+        advanceMillis(2 * PeerRouter.BASE_EJECTION_MILLIS - 1);
+        evaluate();
+        assertThat(down.calls).hasValue(PeerRouter.EJECT_AFTER_FAILURES + 1);
+
+        down.status = null;
+        advanceMillis(1);
+        assertThat(evaluate()).isEqualTo("down");
+        assertThat(router.getStats().get(0)).containsEntry("ejected", false).containsEntry("consecutiveFailures", 0);
+    }
+
+    @Test
+    void transactionFailuresAreNotRetried() throws Exception {
+        Peer rejecting = peer("rejecting", 0);
+        Peer other = peer("other", 0);
+        rejecting.status = Status.FAILED_PRECONDITION;
+        router = router(rejecting, other);
+
+        assertThatThrownBy(this::evaluate).isInstanceOf(GatewayException.class);
+        assertThat(other.calls).hasValue(0);
+        assertThat(router.getStats().get(0)).containsEntry("consecutiveFailures", 0);
+    }
+
+    @Test
+    void allPeersUnreachableFailsWithTheLastError() throws Exception {
+        Peer first = peer("first", 0);
+        Peer second = peer("second", 0);
+        first.status = Status.UNAVAILABLE;
+        second.status = Status.UNAVAILABLE;
+        router = router(first, second);
+
+        assertThatThrownBy(this::evaluate).isInstanceOfSatisfying(GatewayException.class,
+                e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.UNAVAILABLE));
+        assertThat(first.calls).hasValue(1);
+        assertThat(second.calls).hasValue(1);
+    }
+
+    @Test
+    void eventStreamsMoveOnOnceTheirPeerIsEjected() throws Exception {
+        Peer first = peer("first", 0);
+        Peer second = peer("second", 0);
+        router = router(first, second);
+        GatewayRuntimeException unavailable = new GatewayRuntimeException(Status.UNAVAILABLE.asRuntimeException());
+
+        assertThat(router.eventNetwork()).isSameAs(first.network);
+        router.eventStreamFailed(first.network, new GatewayRuntimeException(Status.CANCELLED.asRuntimeException()));
+        router.eventStreamFailed(first.network, new IllegalStateException("unreadable event"));
+        for (int i = 0; i < PeerRouter.EJECT_AFTER_FAILURES - 1; i++) {
+            router.eventStreamFailed(first.network, unavailable);
+        }
+        assertThat(router.eventNetwork()).isSameAs(first.network);
+
+        router.eventStreamFailed(first.network, unavailable);
+        assertThat(router.eventNetwork()).isSameAs(second.network);
+
+        advanceMillis(PeerRouter.BASE_EJECTION_MILLIS);
+        assertThat(router.eventNetwork()).isSameAs(first.network);
+    }
+
+    @Test
+    void submitsMoveOnOnceThePrimaryIsEjected() throws Exception {
+        Peer primary = peer("primary", 0);
+        Peer secondary = peer("secondary", 0);
+        primary.status = Status.UNAVAILABLE;
+        secondary.status = Status.FAILED_PRECONDITION;
+        router = router(primary, secondary);
+
+        for (int i = 0; i < PeerRouter.EJECT_AFTER_FAILURES; i++) {
+            assertThatThrownBy(this::endorse).isInstanceOfSatisfying(GatewayException.class,
+                    e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.UNAVAILABLE));
+        }
+        assertThat(router.getStats().get(0)).containsEntry("ejected", true);
+        assertThat(secondary.calls).hasValue(0);
+
+        // The secondary answered: a rejected transaction says nothing against the peer
+        assertThatThrownBy(this::endorse).isInstanceOf(GatewayException.class);
+        assertThat(secondary.calls).hasValue(1);
+        assertThat(primary.calls).hasValue(PeerRouter.EJECT_AFTER_FAILURES);
+        assertThat(router.getStats().get(1)).containsEntry("consecutiveFailures", 0);
+    }
+
+    private void endorse() throws GatewayException {
+        router.submit(contract -> contract.newProposal("UpdateBasil").build().endorse());
+    }
+
+    private String evaluate() throws GatewayException {
+        return router.evaluate(contract ->
+                new String(contract.evaluateTransaction("GetAllBasils"), StandardCharsets.UTF_8));
+    }
+
+    private PeerRouter router(Peer... routed) {
+        List<PeerRouter.Endpoint> endpoints = new ArrayList<>();
+        for (Peer peer : routed) {
+            endpoints.add(new PeerRouter.Endpoint(peer.name, peer.network, peer.gateway::close));
+        }
+        return new PeerRouter(endpoints, now::get);
+    }
+
+    private void advanceMillis(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private Peer peer(String name, long latencyMillis) throws IOException {
+        Peer peer = new Peer(name, latencyMillis);
+        peers.add(peer);
+        return peer;
+    }
+
+    // A gateway peer that answers evaluates with its name, or fails them and endorsements with status, taking
+    // latencyMillis on the test clock. Calls run on the calling thread, so the clock has moved on by the time the
+    // router reads it.
+    private final class Peer extends GatewayGrpc.GatewayImplBase {
+        final String name;
+        final long latencyMillis;
+        final AtomicInteger calls = new AtomicInteger();
+        final Server server;
+        final ManagedChannel channel;
+        final Gateway gateway;
+        final Network network;
+        volatile Status status;
+
+        Peer(String name, long latencyMillis) throws IOException {
+            this.name = name;
+            this.latencyMillis = latencyMillis;
+            String serverName = "peer-router-test-" + name + "-" + System.identityHashCode(this);
+            server = InProcessServerBuilder.forName(serverName).addService(this).directExecutor().build().start();
+            channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+            gateway = Gateway.newInstance()
+                    .identity(new TestIdentity())
+                    .signer(digest -> new byte[0])
+                    .connection(channel)
+                    .connect();
+            network = gateway.getNetwork(FabricGatewayConfig.CHANNEL_NAME);
+        }
+
+        @Override
+        public void evaluate(EvaluateRequest request, StreamObserver<EvaluateResponse> observer) {
+            calls.incrementAndGet();
+            advanceMillis(latencyMillis);
+            Status failure = status;
+            if (failure != null) {
+                observer.onError(failure.asRuntimeException());
+                return;
+            }
+            observer.onNext(EvaluateResponse.newBuilder()
+                    .setResult(Response.newBuilder().setStatus(200).setPayload(ByteString.copyFromUtf8(name)))
+                    .build());
+            observer.onCompleted();
+        }
+
+        // Endorsements only ever fail with status here
+        @Override
+        public void endorse(EndorseRequest request, StreamObserver<EndorseResponse> observer) {
+            calls.incrementAndGet();
+            observer.onError(status.asRuntimeException());
+        }
+
+        void shutdown() {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    private static final class TestIdentity implements Identity {
+        @Override
+        public String getMspId() {
+            return "Org1MSP";
+        }
+
+        @Override
+        public byte[] getCredentials() {
+            return new byte[0];
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.fabric;
+
+import io.grpc.Status;
+import org.hyperledger.fabric.client.CommitStatusException;
+import org.hyperledger.fabric.client.EndorseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class ReadingCoalescerTest {
+
+    // Long enough that only a full batch or a drain flushes
+    private static final long WINDOW_MILLIS = 60_000;
+
+    private final List<List<String>> submitted = Collections.synchronizedList(new ArrayList<>());
+    private ReadingCoalescer coalescer;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (coalescer != null) {
+            coalescer.drain(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void failedBatchIsRetriedPlantByPlant() throws Exception {
+        coalescer = new ReadingCoalescer(readings -> {
+            submitted.add(qrCodes(readings));
+            if (qrCodes(readings).contains("bad")) {
+                throw new EndorseException("tx", Status.UNKNOWN.withDescription("not the owner").asRuntimeException());
+            }
+        }, WINDOW_MILLIS, 3, 100, 1);
+
+        CompletableFuture<Void> first = coalescer.add(reading("qr-1", 1));
+        CompletableFuture<Void> bad = coalescer.add(reading("bad", 2));
+        CompletableFuture<Void> second = coalescer.add(reading("qr-2", 3));
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> bad.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(EndorseException.class);
+        assertThat(submitted).containsExactly(
+                List.of("qr-1", "bad", "qr-2"), List.of("qr-1"), List.of("bad"), List.of("qr-2"));
+        assertThat(coalescer.getPending()).isZero();
+    }
+
+    @Test
+    void batchWithAnUnknownOutcomeIsNotSentAgain() throws Exception {
+        CommitStatusException noStatus = mock(CommitStatusException.class);
+        coalescer = new ReadingCoalescer(readings -> {
+            submitted.add(qrCodes(readings));
+            throw noStatus;
+        }, WINDOW_MILLIS, 2, 100, 1);
+
+        CompletableFuture<Void> first = coalescer.add(reading("qr-1", 1));
+        CompletableFuture<Void> second = coalescer.add(reading("qr-2", 2));
+
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasCause(noStatus);
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCause(noStatus);
+        assertThat(submitted).containsExactly(List.of("qr-1", "qr-2"));
+        assertThat(coalescer.getPending()).isZero();
+    }
+
+    @Test
+    void singlePlantBatchFailsWithoutRetry() throws Exception {
+        coalescer = new ReadingCoalescer(readings -> {
+            submitted.add(qrCodes(readings));
+            throw new IllegalStateException("rejected");
+        }, WINDOW_MILLIS, 2, 100, 1);
+
+        CompletableFuture<Void> first = coalescer.add(reading("qr-1", 1));
+        CompletableFuture<Void> second = coalescer.add(reading("qr-1", 2));
+
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(first).isCompletedExceptionally();
+        assertThat(submitted).containsExactly(List.of("qr-1", "qr-1"));
+    }
+
+    @Test
+    void drainSubmitsBufferedReadingsAndRejectsLaterOnes() throws Exception {
+        coalescer = new ReadingCoalescer(readings -> submitted.add(qrCodes(readings)), WINDOW_MILLIS, 10, 100, 1);
+        CompletableFuture<Void> buffered = coalescer.add(reading("qr-1", 1));
+
+        coalescer.drain(5, TimeUnit.SECONDS);
+
+        assertThat(buffered).isCompleted();
+        assertThat(submitted).containsExactly(List.of("qr-1"));
+        assertThatThrownBy(() -> coalescer.add(reading("qr-1", 2))).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void readingsBeyondMaxPendingAreRejected() {
+        coalescer = new ReadingCoalescer(readings -> { }, WINDOW_MILLIS, 10, 2, 1);
+        coalescer.add(reading("qr-1", 1));
+        coalescer.add(reading("qr-2", 2));
+
+        assertThatThrownBy(() -> coalescer.add(reading("qr-3", 3))).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void readingsLeftOverAtTheDrainDeadlineFailWithoutHoldingTheLock() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        coalescer = new ReadingCoalescer(readings -> release.await(), WINDOW_MILLIS, 1, 100, 1);
+        CompletableFuture<Void> inFlight = coalescer.add(reading("qr-1", 1));
+        // Waits behind the batch in flight for the same plant
+        CompletableFuture<Void> waiting = coalescer.add(reading("qr-1", 2));
+        // A callback that needs the lock from another thread deadlocks if it runs with the lock held
+        CompletableFuture<Integer> pendingSeenByCallback = waiting.handle((ignored, error) -> {
+            CompletableFuture<Integer> pending = CompletableFuture.supplyAsync(coalescer::getPending);
+            try {
+                return pending.get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                return -1;
+            }
+        });
+
+        coalescer.drain(100, TimeUnit.MILLISECONDS);
+
+        assertThat(waiting).isCompletedExceptionally();
+        assertThat(pendingSeenByCallback.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        release.countDown();
+        inFlight.get(5, TimeUnit.SECONDS);
+        coalescer = null;
+    }
+
+    private static BasilReading reading(String qrCode, long timestamp) {
+        return new BasilReading(qrCode, "52.0,5.0", timestamp, "4.5", "60", "In Transit");
+    }
+
+    private static List<String> qrCodes(List<BasilReading> readings) {
+        return readings.stream().map(BasilReading::getQrCode).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.fabric;
+
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SubmitSchedulerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SubmitScheduler scheduler = new SubmitScheduler(registry);
+
+    @Test
+    void readConflictsAreWorthRetrying() {
+        assertThat(SubmitScheduler.conflict(commitFailure(TxValidationCode.MVCC_READ_CONFLICT)))
+                .isEqualTo("MVCC_READ_CONFLICT");
+        assertThat(SubmitScheduler.conflict(commitFailure(TxValidationCode.PHANTOM_READ_CONFLICT)))
+                .isEqualTo("PHANTOM_READ_CONFLICT");
+        Status mismatch = Status.ABORTED.withDescription("ProposalResponsePayloads do not match");
+        assertThat(SubmitScheduler.conflict(endorseFailure(mismatch))).isEqualTo("ENDORSEMENT_MISMATCH");
+    }
+
+    @Test
+    void otherFailuresAreNot() {
+        assertThat(SubmitScheduler.conflict(commitFailure(TxValidationCode.ENDORSEMENT_POLICY_FAILURE))).isNull();
+        Status aborted = Status.ABORTED.withDescription("chaincode error");
+        assertThat(SubmitScheduler.conflict(endorseFailure(aborted))).isNull();
+        assertThat(SubmitScheduler.conflict(endorseFailure(Status.ABORTED))).isNull();
+        assertThat(SubmitScheduler.conflict(endorseFailure(Status.UNAVAILABLE))).isNull();
+        assertThat(SubmitScheduler.conflict(new IllegalStateException("not a gateway failure"))).isNull();
+    }
+
+    @Test
+    void conflictsAreRetriedUntilTheSubmitGoesThrough() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = scheduler.submit("UpdateBasil", "qr-1", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw commitFailure(TxValidationCode.MVCC_READ_CONFLICT);
+            }
+            return "committed";
+        }).get(5, TimeUnit.SECONDS);
+
+        assertThat(result).isEqualTo("committed");
+        assertThat(attempts).hasValue(3);
+        assertThat(conflicts("retried")).isEqualTo(2);
+        assertThat(conflicts("failed")).isZero();
+    }
+
+    @Test
+    void persistentConflictsFailAfterTheLastRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+        CommitException conflict = commitFailure(TxValidationCode.MVCC_READ_CONFLICT);
+
+        assertThatThrownBy(() -> scheduler.submit("UpdateBasil", () -> {
+            attempts.incrementAndGet();
+            throw conflict;
+        })).isSameAs(conflict);
+
+        assertThat(attempts).hasValue(4);
+        assertThat(conflicts("retried")).isEqualTo(3);
+        assertThat(conflicts("failed")).isEqualTo(1);
+    }
+
+    @Test
+    void otherFailuresAreThrownStraightAway() {
+        AtomicInteger attempts = new AtomicInteger();
+        EndorseException unavailable = endorseFailure(Status.UNAVAILABLE);
+
+        assertThatThrownBy(() -> scheduler.submit("UpdateBasil", () -> {
+            attempts.incrementAndGet();
+            throw unavailable;
+        })).isSameAs(unavailable);
+
+        assertThat(attempts).hasValue(1);
+        assertThat(registry.find("fabric.submit.conflicts").counters()).isEmpty();
+    }
+
+    @Test
+    void submitsForOnePlantWaitTheirTurnWithoutHoldingAThread() throws Exception {
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() ->
+                scheduler.submit("UpdateBasil", "qr-1", () -> {
+                    release.join();
+                    return "first";
+                }).join());
+        awaitRunning("qr-1");
+
+        AtomicReference<String> ranOn = new AtomicReference<>();
+        CompletableFuture<String> second = scheduler.submit("UpdateBasil", "qr-1", () -> {
+            ranOn.set(Thread.currentThread().getName());
+            return "second";
+        });
+        CompletableFuture<String> otherPlant = scheduler.submit("UpdateBasil", "qr-2", () -> "other");
+
+        // Queued behind the first, while the returned future leaves this thread free
+        assertThat(second).isNotDone();
+        assertThat(otherPlant).isCompletedWithValue("other");
+
+        release.complete(null);
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("second");
+        assertThat(ranOn.get()).startsWith("submit-chain-");
+    }
+
+    @Test
+    void asyncSubmitsKeepThePlantUntilTheirCommitIsSettled() throws Exception {
+        AtomicReference<Runnable> settled = new AtomicReference<>();
+        CompletableFuture<String> submitted = scheduler.submitAsync("qr-1", done -> {
+            settled.set(done);
+            return "tx-1";
+        });
+        assertThat(submitted).isCompletedWithValue("tx-1");
+
+        CompletableFuture<String> next = scheduler.submit("UpdateBasil", "qr-1", () -> "next");
+        assertThat(next).isNotDone();
+
+        settled.get().run();
+        assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo("next");
+    }
+
+    @Test
+    void failedAsyncSubmitsLetGoOfThePlant() throws Exception {
+        EndorseException unavailable = endorseFailure(Status.UNAVAILABLE);
+
+        CompletableFuture<String> failed = scheduler.submitAsync("qr-1", done -> {
+            throw unavailable;
+        });
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(scheduler.submit("UpdateBasil", "qr-1", () -> "next").get(5, TimeUnit.SECONDS))
+                .isEqualTo("next");
+    }
+
+    @Test
+    void submitsBeyondTheWaitingLimitAreRejected() {
+        SubmitScheduler small = new SubmitScheduler(registry, 1);
+        small.submitAsync("qr-1", done -> "held until settled");
+        CompletableFuture<String> waiting = small.submit("UpdateBasil", "qr-1", () -> "waiting");
+
+        assertThatThrownBy(() -> small.submit("UpdateBasil", "qr-2", () -> "rejected"))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(waiting).isNotDone();
+    }
+
+    // Polls until a submit is running for key, so that the next one has to wait for it
+    private void awaitRunning(String key) throws InterruptedException {
+        for (int i = 0; i < 500 && registry.find("fabric.submit.key.wait").timer().count() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(registry.find("fabric.submit.key.wait").timer().count()).isEqualTo(1);
+    }
+
+    // The gateway client only creates these itself, so the code is stubbed
+    private static CommitException commitFailure(TxValidationCode code) {
+        CommitException failure = mock(CommitException.class);
+        when(failure.getCode()).thenReturn(code);
+        return failure;
+    }
+
+    private static EndorseException endorseFailure(Status status) {
+        return new EndorseException("tx", status.asRuntimeException());
+    }
+
+    private double conflicts(String action) {
+        return registry.find("fabric.submit.conflicts").tag("action", action).counters().stream()
+                .mapToDouble(counter -> counter.count())
+                .sum();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.fabric;
+
+import io.grpc.CallOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hyperledger.fabric.client.CommitStatusException;
+import org.hyperledger.fabric.client.Status;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TransactionTrackerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private TransactionTracker tracker = new TransactionTracker(registry);
+
+    @AfterEach
+    void tearDown() {
+        tracker.shutdown();
+    }
+
+    @Test
+    void pendingUntilTheCommitStatusArrives() throws Exception {
+        CountDownLatch committed = new CountDownLatch(1);
+        SubmittedTransaction transaction = transaction("tx-1", () -> {
+            committed.await();
+            return status(TxValidationCode.VALID, true);
+        });
+
+        String txId = tracker.track("createBasil", () -> transaction);
+
+        assertThat(txId).isEqualTo("tx-1");
+        assertThat(tracker.getStatus("tx-1").getState()).isEqualTo(TransactionStatus.State.PENDING);
+        assertThat(tracker.getStatus("tx-1").getResult()).isEqualTo("result of tx-1");
+        committed.countDown();
+        awaitState("tx-1", TransactionStatus.State.COMMITTED);
+        assertThat(tracker.getStatus("tx-1").getBlockNumber()).isEqualTo(7L);
+        assertThat(tracker.getStatus("tx-1").getValidationCode()).isEqualTo("VALID");
+    }
+
+    @Test
+    void invalidAndUnknownOutcomesFail() throws Exception {
+        SubmittedTransaction invalid = transaction("tx-invalid", () ->
+                status(TxValidationCode.MVCC_READ_CONFLICT, false));
+        CommitStatusException unreachable = mock(CommitStatusException.class);
+        when(unreachable.getMessage()).thenReturn("peer unreachable");
+        SubmittedTransaction error = transaction("tx-error", () -> {
+            throw unreachable;
+        });
+
+        tracker.track("updateBasilState", () -> invalid);
+        tracker.track("updateBasilState", () -> error);
+
+        awaitState("tx-invalid", TransactionStatus.State.FAILED);
+        awaitState("tx-error", TransactionStatus.State.FAILED);
+        assertThat(tracker.getStatus("tx-invalid").getValidationCode()).isEqualTo("MVCC_READ_CONFLICT");
+        assertThat(tracker.getStatus("tx-error").getError()).contains("peer unreachable");
+    }
+
+    @Test
+    void unknownTransactionHasNoStatus() {
+        assertThat(tracker.getStatus("never-submitted")).isNull();
+    }
+
+    @Test
+    void oldestOutcomesAreEvicted() throws Exception {
+        tracker.shutdown();
+        tracker = new TransactionTracker(registry, TransactionTracker.MAX_TRACKED + 1, TransactionTracker.MAX_TRACKED);
+        Status valid = status(TxValidationCode.VALID, true);
+
+        for (int i = 0; i <= TransactionTracker.MAX_TRACKED; i++) {
+            SubmittedTransaction transaction = transaction("tx-" + i, () -> valid);
+            tracker.track("createBasil", () -> transaction);
+        }
+
+        assertThat(tracker.getStatus("tx-0")).isNull();
+        assertThat(tracker.getStatus("tx-1")).isNotNull();
+        assertThat(tracker.getStatus("tx-" + TransactionTracker.MAX_TRACKED)).isNotNull();
+    }
+
+    @Test
+    void fullQueueRejectsBeforeSubmitting() throws Exception {
+        tracker.shutdown();
+        tracker = new TransactionTracker(registry, 1, TransactionTracker.MAX_TRACKED);
+        CountDownLatch committed = new CountDownLatch(1);
+        SubmittedTransaction first = transaction("tx-1", () -> {
+            committed.await();
+            return status(TxValidationCode.VALID, true);
+        });
+        Status valid = status(TxValidationCode.VALID, true);
+        SubmittedTransaction second = transaction("tx-2", () -> valid);
+        SubmittedTransaction third = transaction("tx-3", () -> valid);
+        tracker.track("createBasil", () -> first);
+        AtomicBoolean submitted = new AtomicBoolean();
+
+        assertThatThrownBy(() -> tracker.track("createBasil", () -> {
+            submitted.set(true);
+            return second;
+        })).isInstanceOf(RejectedExecutionException.class);
+        assertThat(submitted).isFalse();
+
+        // The slot comes back once the first commit is in
+        committed.countDown();
+        awaitState("tx-1", TransactionStatus.State.COMMITTED);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.get("fabric.commits.pending").gauge().value() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        tracker.track("createBasil", () -> third);
+        assertThat(tracker.getStatus("tx-3")).isNotNull();
+    }
+
+    // Commit waits run on the tracker's own threads
+    private void awaitState(String txId, TransactionStatus.State state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (tracker.getStatus(txId).getState() != state && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(tracker.getStatus(txId).getState()).isEqualTo(state);
+    }
+
+    @FunctionalInterface
+    private interface CommitStatus {
+        Status get() throws Exception;
+    }
+
+    private static SubmittedTransaction transaction(String txId, CommitStatus commitStatus) throws Exception {
+        SubmittedTransaction transaction = mock(SubmittedTransaction.class);
+        when(transaction.getTransactionId()).thenReturn(txId);
+        when(transaction.getResult()).thenReturn(("result of " + txId).getBytes(StandardCharsets.UTF_8));
+        when(transaction.getStatus(ArgumentMatchers.<UnaryOperator<CallOptions>>any()))
+                .thenAnswer(invocation -> commitStatus.get());
+        return transaction;
+    }
+
+    private static Status status(TxValidationCode code, boolean successful) {
+        Status status = mock(Status.class);
+        when(status.getCode()).thenReturn(code);
+        when(status.isSuccessful()).thenReturn(successful);
+        when(status.getBlockNumber()).thenReturn(7L);
+        return status;
+    }
+}
@@ -0,0 +1,103 @@
+package org.hyperledger.fabric.samples;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the main contract transactions against a plant with historySize transport legs.
+ *
+ * Every invocation runs as its own transaction and is rolled back before returning, so the ledger stays
+ * at exactly historySize legs for the whole trial. Run with the gc profiler (the jmh task does) to get
+ * allocation rates alongside throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BasilContractBenchmark {
+
+    private static final String QR_CODE = "bench-plant";
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int historySize;
+
+    private BenchmarkLedger ledger;
+    private String newPlants;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        ledger = new BenchmarkLedger();
+        ledger.seedPlant(QR_CODE, historySize);
+        newPlants = ledger.newPlantsJson(BATCH_SIZE);
+    }
+
+    @Benchmark
+    public long createBasil() {
+        ledger.submit(ctx -> ledger.contract.createBasil(ctx, "new-plant", "Greenhouse B"));
+        return rollback();
+    }
+
+    // BATCH_SIZE plants in one transaction; compare with BATCH_SIZE createBasil invocations
+    @Benchmark
+    public long createBasilsBatch() {
+        ledger.evaluate(ctx -> ledger.contract.createBasilsBatch(ctx, newPlants));
+        return rollback();
+    }
+
+    @Benchmark
+    public long updateBasilState() {
+        ledger.submit(ctx -> ledger.contract.updateBasilState(ctx, QR_CODE, "52.3676,4.9041", 1_800_000_000L,
+                "5.1", "58.0", "In Transit"));
+        return rollback();
+    }
+
+    @Benchmark
+    public Basil readBasil() {
+        Basil result = ledger.evaluate(ctx -> ledger.contract.readBasil(ctx, QR_CODE));
+        rollback();
+        return result;
+    }
+
+    @Benchmark
+    public List<BasilLeg> getHistory() {
+        List<BasilLeg> result = ledger.evaluate(ctx -> ledger.contract.getHistory(ctx, QR_CODE));
+        rollback();
+        return result;
+    }
+
+    @Benchmark
+    public String getBasilHistory() {
+        String result = ledger.evaluate(ctx -> ledger.contract.getBasilHistory(ctx, QR_CODE));
+        rollback();
+        return result;
+    }
+
+    @Benchmark
+    public BasilVersionPage getBasilHistoryPage() {
+        BasilVersionPage result = ledger.evaluate(ctx -> ledger.contract.getBasilHistoryPage(ctx, QR_CODE, 100, "", true));
+        rollback();
+        return result;
+    }
+
+    private long rollback() {
+        long writeSetBytes = ledger.stub.getWriteSetBytes();
+        ledger.stub.rollback();
+        return writeSetBytes;
+    }
+}
@@ -0,0 +1,70 @@
+package org.hyperledger.fabric.samples;
+
+import com.owlike.genson.Genson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link BasilContract} wired to an {@link InMemoryChaincodeStub}, with helpers to seed plants
+ * with a given transport history length.
+ */
+final class BenchmarkLedger {
+
+    static final String OWNER_MSP = "Org1MSP";
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private final Genson genson = new Genson();
+    final BasilContract contract = new BasilContract();
+    final InMemoryChaincodeStub stub = new InMemoryChaincodeStub(OWNER_MSP);
+
+    // Contexts are created per transaction and flushed afterwards, as the contract router does
+    <T> T evaluate(Function<BasilContext, T> transaction) {
+        BasilContext ctx = contract.createContext(stub);
+        T result = transaction.apply(ctx);
+        contract.afterTransaction(ctx, result);
+        return result;
+    }
+
+    void submit(Consumer<BasilContext> transaction) {
+        evaluate(ctx -> {
+            transaction.accept(ctx);
+            return null;
+        });
+    }
+
+    // Create a plant and give it historySize legs in total, committing as it goes
+    void seedPlant(String qrCode, int historySize) {
+        submit(ctx -> contract.createBasil(ctx, qrCode, "Greenhouse A"));
+        stub.commit();
+
+        int remaining = historySize - 1;
+        long timestamp = 1_700_000_000L;
+        while (remaining > 0) {
+            int batch = Math.min(remaining, SEED_BATCH_SIZE);
+            List<BasilReading> readings = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) {
+                readings.add(reading(qrCode, timestamp++));
+            }
+            String readingsJson = genson.serialize(readings);
+            evaluate(ctx -> contract.updateBasilStatesBatch(ctx, readingsJson));
+            stub.commit();
+            remaining -= batch;
+        }
+    }
+
+    // JSON array of count new plants for createBasilsBatch
+    String newPlantsJson(int count) {
+        List<BasilRegistration> plants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            plants.add(new BasilRegistration("new-plant-" + i, "Greenhouse B"));
+        }
+        return genson.serialize(plants);
+    }
+
+    static BasilReading reading(String qrCode, long timestamp) {
+        return new BasilReading(qrCode, "52.0907,5.1214", timestamp, "4.5", "61.2", "In Transit");
+    }
+}
@@ -0,0 +1,81 @@
+package org.hyperledger.fabric.samples;
+
+import com.owlike.genson.Genson;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Deterministic companion to {@link BasilContractBenchmark}: runs each transaction once per history
+ * size and writes the resulting read-set and write-set sizes as a JSON array, so that a change in
+ * bytes written per transaction shows up as a plain diff between two reports.
+ *
+ * Usage: WriteSetReport [output.json]
+ */
+public final class WriteSetReport {
+
+    private static final int[] HISTORY_SIZES = {1, 10, 100, 1000, 10000};
+    private static final String QR_CODE = "bench-plant";
+    private static final int BATCH_SIZE = 100;
+
+    private WriteSetReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int historySize : HISTORY_SIZES) {
+            BenchmarkLedger ledger = new BenchmarkLedger();
+            ledger.seedPlant(QR_CODE, historySize);
+
+            measure(rows, ledger, "createBasil", historySize,
+                    l -> l.submit(ctx -> l.contract.createBasil(ctx, "new-plant", "Greenhouse B")));
+            String newPlants = ledger.newPlantsJson(BATCH_SIZE);
+            measure(rows, ledger, "createBasilsBatch", historySize,
+                    l -> l.evaluate(ctx -> l.contract.createBasilsBatch(ctx, newPlants)));
+            measure(rows, ledger, "updateBasilState", historySize,
+                    l -> l.submit(ctx -> l.contract.updateBasilState(ctx, QR_CODE, "52.3676,4.9041", 1_800_000_000L,
+                            "5.1", "58.0", "In Transit")));
+            measure(rows, ledger, "readBasil", historySize, l -> l.evaluate(ctx -> l.contract.readBasil(ctx, QR_CODE)));
+            measure(rows, ledger, "getHistory", historySize, l -> l.evaluate(ctx -> l.contract.getHistory(ctx, QR_CODE)));
+            measure(rows, ledger, "getBasilHistory", historySize,
+                    l -> l.evaluate(ctx -> l.contract.getBasilHistory(ctx, QR_CODE)));
+            measure(rows, ledger, "getBasilHistoryPage", historySize,
+                    l -> l.evaluate(ctx -> l.contract.getBasilHistoryPage(ctx, QR_CODE, 100, "", true)));
+        }
+
+        String json = new Genson().serialize(rows);
+        if (args.length > 0) {
+            Path output = Paths.get(args[0]);
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+            Files.write(output, json.getBytes(StandardCharsets.UTF_8));
+        } else {
+            System.out.println(json);
+        }
+    }
+
+    private static void measure(List<Map<String, Object>> rows, BenchmarkLedger ledger, String transaction,
+            int historySize, Consumer<BenchmarkLedger> invocation) {
+        ledger.stub.rollback();
+        invocation.accept(ledger);
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("transaction", transaction);
+        row.put("historySize", historySize);
+        row.put("readSetKeys", ledger.stub.getReadSetSize());
+        row.put("writeSetKeys", ledger.stub.getWriteSetSize());
+        row.put("writeSetBytes", ledger.stub.getWriteSetBytes());
+        rows.add(row);
+
+        ledger.stub.rollback();
+    }
+}
@@ -2,6 +2,7 @@ package org.hyperledger.fabric.samples;
 
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonIgnore;
 import com.owlike.genson.annotation.JsonProperty;
 
 import java.util.List;
@@ -31,6 +32,13 @@ public final class Basil {
     @Property()
     private final List<BasilLeg> transportHistory;
 
+    // Storage bookkeeping kept out of the JSON clients see: without @Property the contract serializer skips
+    // them, and Genson, which writes the change events, skips the ignored getters
+
+    private final Integer legCount; // Number of legs stored under leg~qrCode~seq keys, null for legacy records
+
+    private final Integer archivedLegCount; // Oldest legs rolled into archive~qrCode~seq chunks, null when none
+
     public Basil(
             @JsonProperty("qrCode") String qrCode,
             @JsonProperty("creationTimestamp") Long creationTimestamp,
@@ -38,7 +46,9 @@ public final class Basil {
             @JsonProperty("currentStatus") String currentStatus,
             @JsonProperty("currentGps") String currentGps,
             @JsonProperty("currentOwner") Owner currentOwner,
-            @JsonProperty("transportHistory") List<BasilLeg> transportHistory) {
+            @JsonProperty("transportHistory") List<BasilLeg> transportHistory,
+            @JsonProperty("legCount") Integer legCount,
+            @JsonProperty("archivedLegCount") Integer archivedLegCount) {
         this.qrCode = qrCode;
         this.creationTimestamp = creationTimestamp;
         this.origin = origin;
@@ -46,6 +56,8 @@ public final class Basil {
         this.currentGps = currentGps;
         this.currentOwner = currentOwner;
         this.transportHistory = transportHistory;
+        this.legCount = legCount;
+        this.archivedLegCount = archivedLegCount;
     }
 
     public String getQrCode() {
@@ -76,6 +88,16 @@ public final class Basil {
         return transportHistory;
     }
 
+    @JsonIgnore
+    Integer getLegCount() {
+        return legCount;
+    }
+
+    @JsonIgnore
+    Integer getArchivedLegCount() {
+        return archivedLegCount;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -99,6 +121,8 @@ public final class Basil {
                 ", currentGps='" + currentGps + '\'' +
                 ", currentOwner=" + currentOwner +
                 ", transportHistory=" + transportHistory +
+                ", legCount=" + legCount +
+                ", archivedLegCount=" + archivedLegCount +
                 '}';
     }
 }
\ No newline at end of file
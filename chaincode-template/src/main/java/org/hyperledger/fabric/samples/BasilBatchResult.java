@@ -0,0 +1,56 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+// Outcome of createBasilsBatch: how many plants were created and which QR codes were skipped as duplicates
+@DataType()
+public final class BasilBatchResult {
+
+    @Property()
+    private final int created;
+
+    @Property()
+    private final List<String> duplicates;
+
+    public BasilBatchResult(
+            @JsonProperty("created") int created,
+            @JsonProperty("duplicates") List<String> duplicates) {
+        this.created = created;
+        this.duplicates = duplicates;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public List<String> getDuplicates() {
+        return duplicates;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BasilBatchResult)) return false;
+        BasilBatchResult result = (BasilBatchResult) o;
+        return created == result.created &&
+               Objects.equals(duplicates, result.duplicates);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(created, duplicates);
+    }
+
+    @Override
+    public String toString() {
+        return "BasilBatchResult{" +
+                "created=" + created +
+                ", duplicates=" + duplicates +
+                '}';
+    }
+}
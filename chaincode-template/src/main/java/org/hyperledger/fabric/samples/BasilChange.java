@@ -0,0 +1,60 @@
+package org.hyperledger.fabric.samples;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+// One entry of the BasilChanged chaincode event: the new header of a plant, or deleted with no header
+public final class BasilChange {
+
+    private final String qrCode;
+
+    private final boolean deleted;
+
+    private final Basil basil;
+
+    public BasilChange(
+            @JsonProperty("qrCode") String qrCode,
+            @JsonProperty("deleted") boolean deleted,
+            @JsonProperty("basil") Basil basil) {
+        this.qrCode = qrCode;
+        this.deleted = deleted;
+        this.basil = basil;
+    }
+
+    public String getQrCode() {
+        return qrCode;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public Basil getBasil() {
+        return basil;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BasilChange)) return false;
+        BasilChange change = (BasilChange) o;
+        return deleted == change.deleted &&
+               Objects.equals(qrCode, change.qrCode) &&
+               Objects.equals(basil, change.basil);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(qrCode, deleted, basil);
+    }
+
+    @Override
+    public String toString() {
+        return "BasilChange{" +
+                "qrCode='" + qrCode + '\'' +
+                ", deleted=" + deleted +
+                ", basil=" + basil +
+                '}';
+    }
+}
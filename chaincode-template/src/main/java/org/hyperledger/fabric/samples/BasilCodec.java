@@ -0,0 +1,425 @@
+package org.hyperledger.fabric.samples;
+
+import com.owlike.genson.Genson;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary world-state encoding for {@link Basil}, {@link BasilLeg}, {@link Owner} and archive chunks of legs.
+ *
+ * Every encoded value starts with a version byte. Values written before this codec existed are
+ * Genson JSON and start with '{', so they are still decoded through Genson. Layout of version 1:
+ *
+ * <pre>
+ * version:byte kind:byte ownerCount:varint (orgId:str user:str)* body
+ * </pre>
+ *
+ * Owners are written once per value and referenced by index from the body, so a history that
+ * stays with one owner for hundreds of legs stores that owner once. Longs are zigzag varints,
+ * strings are varint length + 1 (0 meaning null) followed by UTF-8, and temperature/humidity
+ * readings that are plain decimals are stored as an unscaled varint plus a scale, decoding back
+ * to exactly the string that was written. A plant header ends with its archived leg count only
+ * when it has one, so headers written before history compaction still decode.
+ *
+ * An archive chunk is written once and never changed. After the version and kind bytes it holds
+ * the owner table, a leg count and the leg bodies, uncompressed: every endorser must write the
+ * same bytes, and deflate output can differ between zlib builds. Chunks written by earlier
+ * versions of the chaincode carry the deflated kind, with the uncompressed length before the
+ * deflated body, and are still read.
+ */
+final class BasilCodec {
+
+    static final byte VERSION_1 = 1;
+
+    private static final byte JSON_START = '{';
+    private static final byte KIND_BASIL = 1;
+    private static final byte KIND_LEG = 2;
+    // Deflated archive chunks, no longer written
+    private static final byte KIND_DEFLATED_ARCHIVE = 3;
+    private static final byte KIND_ARCHIVE = 4;
+
+    private static final byte READING_NULL = 0;
+    private static final byte READING_DECIMAL = 1;
+    private static final byte READING_TEXT = 2;
+
+    private final Genson genson;
+
+    BasilCodec(Genson genson) {
+        this.genson = genson;
+    }
+
+    byte[] encode(Basil basil) {
+        OwnerTable owners = new OwnerTable();
+        owners.add(basil.getCurrentOwner());
+        if (basil.getTransportHistory() != null) {
+            for (BasilLeg leg : basil.getTransportHistory()) {
+                owners.add(leg.getOwner());
+            }
+        }
+
+        Writer out = new Writer();
+        out.writeByte(VERSION_1);
+        out.writeByte(KIND_BASIL);
+        owners.writeTo(out);
+        out.writeString(basil.getQrCode());
+        out.writeNullableLong(basil.getCreationTimestamp());
+        out.writeString(basil.getOrigin());
+        out.writeString(basil.getCurrentStatus());
+        out.writeString(basil.getCurrentGps());
+        out.writeVarint(owners.ref(basil.getCurrentOwner()));
+        out.writeNullableLong(basil.getLegCount() != null ? basil.getLegCount().longValue() : null);
+        if (basil.getTransportHistory() == null) {
+            out.writeVarint(0);
+        } else {
+            out.writeVarint(basil.getTransportHistory().size() + 1);
+            for (BasilLeg leg : basil.getTransportHistory()) {
+                writeLegBody(out, owners, leg);
+            }
+        }
+        if (basil.getArchivedLegCount() != null) {
+            out.writeVarint(basil.getArchivedLegCount());
+        }
+        return out.toByteArray();
+    }
+
+    byte[] encode(BasilLeg leg) {
+        OwnerTable owners = new OwnerTable();
+        owners.add(leg.getOwner());
+
+        Writer out = new Writer();
+        out.writeByte(VERSION_1);
+        out.writeByte(KIND_LEG);
+        owners.writeTo(out);
+        writeLegBody(out, owners, leg);
+        return out.toByteArray();
+    }
+
+    byte[] encodeArchive(List<BasilLeg> legs) {
+        OwnerTable owners = new OwnerTable();
+        for (BasilLeg leg : legs) {
+            owners.add(leg.getOwner());
+        }
+        Writer out = new Writer();
+        out.writeByte(VERSION_1);
+        out.writeByte(KIND_ARCHIVE);
+        owners.writeTo(out);
+        out.writeVarint(legs.size());
+        for (BasilLeg leg : legs) {
+            writeLegBody(out, owners, leg);
+        }
+        return out.toByteArray();
+    }
+
+    List<BasilLeg> decodeArchive(byte[] data) {
+        Reader in = data.length >= 2 && data[1] == KIND_DEFLATED_ARCHIVE
+                ? new Reader(inflate(open(data, KIND_DEFLATED_ARCHIVE)), 0)
+                : open(data, KIND_ARCHIVE);
+        Owner[] owners = in.readOwners();
+        int count = (int) in.readVarint();
+        List<BasilLeg> legs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            legs.add(readLegBody(in, owners));
+        }
+        return legs;
+    }
+
+    // Body of a deflated archive chunk, after its uncompressed length
+    private static byte[] inflate(Reader header) {
+        byte[] data = header.data;
+        byte[] raw = new byte[(int) header.readVarint()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, header.position, data.length - header.position);
+            int size = 0;
+            while (size < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, size, raw.length - size);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != raw.length) {
+                throw new ChaincodeException("Truncated archive chunk");
+            }
+        } catch (DataFormatException e) {
+            throw new ChaincodeException("Corrupt archive chunk: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    Basil decodeBasil(byte[] data) {
+        if (isJson(data)) {
+            return genson.deserialize(new String(data, StandardCharsets.UTF_8), Basil.class);
+        }
+        Reader in = open(data, KIND_BASIL);
+        Owner[] owners = in.readOwners();
+        String qrCode = in.readString();
+        Long creationTimestamp = in.readNullableLong();
+        String origin = in.readString();
+        String status = in.readString();
+        String gps = in.readString();
+        Owner owner = in.readOwnerRef(owners);
+        Long legCount = in.readNullableLong();
+        List<BasilLeg> history = null;
+        int historySize = (int) in.readVarint();
+        if (historySize > 0) {
+            history = new ArrayList<>(historySize - 1);
+            for (int i = 0; i < historySize - 1; i++) {
+                history.add(readLegBody(in, owners));
+            }
+        }
+        Integer archivedLegCount = in.hasMore() ? (int) in.readVarint() : null;
+        return new Basil(qrCode, creationTimestamp, origin, status, gps, owner, history,
+                legCount != null ? legCount.intValue() : null, archivedLegCount);
+    }
+
+    BasilLeg decodeLeg(byte[] data) {
+        if (isJson(data)) {
+            return genson.deserialize(new String(data, StandardCharsets.UTF_8), BasilLeg.class);
+        }
+        Reader in = open(data, KIND_LEG);
+        Owner[] owners = in.readOwners();
+        return readLegBody(in, owners);
+    }
+
+    private static boolean isJson(byte[] data) {
+        return data.length > 0 && data[0] == JSON_START;
+    }
+
+    private static Reader open(byte[] data, byte expectedKind) {
+        if (data.length < 2 || data[0] != VERSION_1) {
+            throw new ChaincodeException("Unsupported state encoding version");
+        }
+        if (data[1] != expectedKind) {
+            throw new ChaincodeException("Unexpected state record kind: " + data[1]);
+        }
+        return new Reader(data, 2);
+    }
+
+    private static void writeLegBody(Writer out, OwnerTable owners, BasilLeg leg) {
+        out.writeNullableLong(leg.getTimestamp());
+        out.writeString(leg.getGps());
+        out.writeReading(leg.getTemperature());
+        out.writeReading(leg.getHumidity());
+        out.writeVarint(owners.ref(leg.getOwner()));
+    }
+
+    private static BasilLeg readLegBody(Reader in, Owner[] owners) {
+        Long timestamp = in.readNullableLong();
+        String gps = in.readString();
+        String temperature = in.readReading();
+        String humidity = in.readReading();
+        Owner owner = in.readOwnerRef(owners);
+        return new BasilLeg(timestamp, gps, temperature, humidity, owner);
+    }
+
+    // Distinct owners of one value in first-seen order; reference 0 is a null owner
+    private static final class OwnerTable {
+        private final Map<Owner, Integer> index = new LinkedHashMap<>();
+
+        void add(Owner owner) {
+            if (owner != null && !index.containsKey(owner)) {
+                index.put(owner, index.size() + 1);
+            }
+        }
+
+        int ref(Owner owner) {
+            return owner == null ? 0 : index.get(owner);
+        }
+
+        void writeTo(Writer out) {
+            out.writeVarint(index.size());
+            for (Owner owner : index.keySet()) {
+                out.writeString(owner.getOrgId());
+                out.writeString(owner.getUser());
+            }
+        }
+    }
+
+    private static final class Writer {
+        private byte[] buffer = new byte[128];
+        private int size;
+
+        void writeByte(int b) {
+            ensure(1);
+            buffer[size++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeNullableLong(Long value) {
+            if (value == null) {
+                writeByte(0);
+            } else {
+                writeByte(1);
+                writeZigzag(value);
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeReading(String value) {
+            if (value == null) {
+                writeByte(READING_NULL);
+                return;
+            }
+            BigDecimal decimal = toExactDecimal(value);
+            if (decimal == null) {
+                writeByte(READING_TEXT);
+                writeString(value);
+                return;
+            }
+            writeByte(READING_DECIMAL);
+            writeZigzag(decimal.unscaledValue().longValue());
+            writeZigzag(decimal.scale());
+        }
+
+        // Only readings that print back identically are stored as numbers
+        private static BigDecimal toExactDecimal(String value) {
+            if (value.isEmpty() || value.length() > 18) {
+                return null;
+            }
+            try {
+                BigDecimal decimal = new BigDecimal(value);
+                return decimal.toPlainString().equals(value) ? decimal : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        boolean hasMore() {
+            return position < data.length;
+        }
+
+        private byte next() {
+            if (position >= data.length) {
+                throw new ChaincodeException("Truncated state record");
+            }
+            return data[position++];
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = next();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new ChaincodeException("Malformed varint in state record");
+        }
+
+        long readZigzag() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        Long readNullableLong() {
+            return next() == 0 ? null : readZigzag();
+        }
+
+        String readString() {
+            int length = (int) readVarint();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (position + length > data.length) {
+                throw new ChaincodeException("Truncated state record");
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        String readReading() {
+            byte tag = next();
+            switch (tag) {
+                case READING_NULL:
+                    return null;
+                case READING_DECIMAL:
+                    long unscaled = readZigzag();
+                    int scale = (int) readZigzag();
+                    return BigDecimal.valueOf(unscaled, scale).toPlainString();
+                case READING_TEXT:
+                    return readString();
+                default:
+                    throw new ChaincodeException("Unknown reading tag in state record: " + tag);
+            }
+        }
+
+        Owner[] readOwners() {
+            int count = (int) readVarint();
+            Owner[] owners = new Owner[count];
+            for (int i = 0; i < count; i++) {
+                owners[i] = new Owner(readString(), readString());
+            }
+            return owners;
+        }
+
+        Owner readOwnerRef(Owner[] owners) {
+            int ref = (int) readVarint();
+            if (ref == 0) {
+                return null;
+            }
+            if (ref > owners.length) {
+                throw new ChaincodeException("Dangling owner reference in state record");
+            }
+            return owners[ref - 1];
+        }
+    }
+}
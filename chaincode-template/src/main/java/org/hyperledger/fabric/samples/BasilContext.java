@@ -0,0 +1,163 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Transaction context for {@link BasilContract} that keeps a per-transaction view of world state.
+ *
+ * Point reads go to the peer at most once per key and are kept decoded; writes are buffered here and
+ * only encoded and handed to the stub when {@link #flush()} runs at the end of the transaction.
+ * Reads see this transaction's own buffered writes. Range and history queries still go straight to
+ * the stub and, as on the peer, only see committed state.
+ */
+public class BasilContext extends Context {
+
+    // Marks a key that is absent from world state or deleted by this transaction
+    private static final Object ABSENT = new Object();
+
+    private final BasilCodec codec;
+    // Decoded Basil, BasilLeg or raw byte[] per key, as last read or written in this transaction
+    private final Map<String, Object> values = new HashMap<>();
+    // Keys written by this transaction, in write order
+    private final Set<String> dirty = new LinkedHashSet<>();
+    // Plant headers written (or deleted, as null) by this transaction
+    private final Map<String, Basil> changedBasils = new LinkedHashMap<>();
+    // Net change per counter made by this transaction, by dimension and then counted value
+    private final Map<String, Map<String, Long>> countDeltas = new LinkedHashMap<>();
+    // Cold-chain aggregates of the readings this transaction added, by owner organization
+    private final Map<String, ColdChainSummary> coldChainDeltas = new LinkedHashMap<>();
+    private int stateReads;
+
+    BasilContext(ChaincodeStub stub, BasilCodec codec) {
+        super(stub);
+        this.codec = codec;
+    }
+
+    /** The plant header stored under qrCode, or null if there is none. */
+    public Basil getBasil(String qrCode) {
+        return read(qrCode, Basil.class, codec::decodeBasil);
+    }
+
+    public void putBasil(Basil basil) {
+        write(basil.getQrCode(), basil);
+        changedBasils.put(basil.getQrCode(), basil);
+    }
+
+    public void deleteBasil(String qrCode) {
+        write(qrCode, ABSENT);
+        changedBasils.put(qrCode, null);
+    }
+
+    /** Final header per plant written by this transaction, with null for deleted plants. */
+    public Map<String, Basil> getChangedBasils() {
+        return Collections.unmodifiableMap(changedBasils);
+    }
+
+    /** Add delta to the count of value in dimension; the net change is written once, as a delta key, at the end. */
+    public void count(String dimension, String value, long delta) {
+        countDeltas.computeIfAbsent(dimension, key -> new LinkedHashMap<>()).merge(value, delta, Long::sum);
+    }
+
+    /** Net count changes of this transaction, by dimension and then counted value; entries may be zero. */
+    public Map<String, Map<String, Long>> getCountDeltas() {
+        return Collections.unmodifiableMap(countDeltas);
+    }
+
+    /** Merge a reading's cold-chain contribution into its owner's; written once, as a delta key, at the end. */
+    public void addColdChain(String orgId, ColdChainSummary delta) {
+        coldChainDeltas.merge(orgId, delta, ColdChainSummary::merge);
+    }
+
+    /** Cold-chain aggregates of this transaction's readings, by owner organization. */
+    public Map<String, ColdChainSummary> getColdChainDeltas() {
+        return Collections.unmodifiableMap(coldChainDeltas);
+    }
+
+    public BasilLeg getLeg(String key) {
+        return read(key, BasilLeg.class, codec::decodeLeg);
+    }
+
+    public void putLeg(String key, BasilLeg leg) {
+        write(key, leg);
+    }
+
+    /** Raw bytes stored under key, or null if there are none. */
+    public byte[] getState(String key) {
+        return read(key, byte[].class, Function.identity());
+    }
+
+    public void putState(String key, byte[] value) {
+        write(key, value);
+    }
+
+    public void delState(String key) {
+        write(key, ABSENT);
+    }
+
+    /** Number of point reads that actually went to the peer in this transaction. */
+    public int getStateReads() {
+        return stateReads;
+    }
+
+    /** Encode every buffered write and pass it to the stub, in the order the keys were first written. */
+    public void flush() {
+        ChaincodeStub stub = getStub();
+        for (String key : dirty) {
+            Object value = values.get(key);
+            if (value == ABSENT) {
+                stub.delState(key);
+            } else {
+                stub.putState(key, encode(value));
+            }
+        }
+        dirty.clear();
+    }
+
+    private <T> T read(String key, Class<T> type, Function<byte[], T> decoder) {
+        Object cached = values.get(key);
+        if (cached == ABSENT) {
+            return null;
+        }
+        if (type.isInstance(cached)) {
+            return type.cast(cached);
+        }
+        if (cached != null) {
+            // Read or written as another kind of value earlier in this transaction; the cache keeps that one
+            return decoder.apply(encode(cached));
+        }
+
+        stateReads++;
+        byte[] data = getStub().getState(key);
+        if (data == null || data.length == 0) {
+            values.put(key, ABSENT);
+            return null;
+        }
+        T decoded = decoder.apply(data);
+        values.put(key, decoded);
+        return decoded;
+    }
+
+    private byte[] encode(Object value) {
+        if (value instanceof Basil) {
+            return codec.encode((Basil) value);
+        }
+        if (value instanceof BasilLeg) {
+            return codec.encode((BasilLeg) value);
+        }
+        return (byte[]) value;
+    }
+
+    private void write(String key, Object value) {
+        values.put(key, value);
+        dirty.add(key);
+    }
+}
@@ -5,16 +5,30 @@ import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.hyperledger.fabric.shim.ledger.KeyModification;
 
 import com.owlike.genson.Genson;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.owlike.genson.JsonBindingException;
+import com.owlike.genson.stream.JsonStreamException;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Contract(
         name = "BasilContract",
@@ -30,18 +44,96 @@ import java.util.Map;
                         name = "Adrian Transfer",
                         url = "https://hyperledger.example.com")))
 @Default
+// The shim's query iterators declare close() throws Exception, which javac flags on every try-with-resources
+@SuppressWarnings("try")
 public class BasilContract implements ContractInterface {
 
     private final Genson genson = new Genson();
+    private final BasilCodec codec = new BasilCodec(genson);
     private static final String SUPERMARKET_ORG = "Org2MSP";
+    static final String BASIL_CHANGED_EVENT = "BasilChanged";
+    private static final String LEG_KEY_PREFIX = "leg";
+    // Zero padded so that leg keys sort in sequence order
+    private static final String LEG_SEQ_FORMAT = "%010d";
+    // archive~qrCode~firstSeq holds legs [firstSeq, firstSeq + ARCHIVE_CHUNK_SIZE), written by compactHistory
+    private static final String ARCHIVE_KEY_PREFIX = "archive";
+    private static final int ARCHIVE_CHUNK_SIZE = 256;
+    // Upper bound on chunks written by one transaction, keeping its write set small
+    private static final int MAX_COMPACT_CHUNKS = 4;
+    // Marks a history page bookmark that resumes inside the archive at the given leg
+    private static final String ARCHIVE_BOOKMARK = "archive:";
+    private static final String OWNER_INDEX = "owner";
+    private static final String STATUS_INDEX = "status";
+    // Every transaction that changes a count writes count~<index>~<value>~<txId> with its net delta and
+    // never reads a shared total, so concurrent writers cannot conflict. Roll-ups fold the deltas into
+    // countBase~<index>~<value>.
+    private static final String COUNT_DELTA = "count";
+    private static final String COUNT_BASE = "countBase";
+    // Upper bound on deltas folded by one roll-up transaction
+    private static final int MAX_ROLLUP_DELTAS = 5000;
+    // coldchain~qrCode holds a plant's running ColdChainSummary. Owner summaries are kept like the counts:
+    // coldchainDelta~<orgId>~<txId> per transaction, folded into coldchainBase~<orgId> by rollUpColdChain.
+    private static final String COLD_CHAIN_KEY = "coldchain";
+    private static final String COLD_CHAIN_DELTA = "coldchainDelta";
+    private static final String COLD_CHAIN_BASE = "coldchainBase";
+    private static final String COLD_CHAIN_RANGE_KEY = "coldchainRange";
+    // Leading number of a free-text reading such as "21.5", "21,5 C" or "80%"
+    private static final Pattern MEASURE = Pattern.compile("^\\s*([-+]?\\d+(?:[.,]\\d+)?)");
+    // geo~<c1>~<c2>~...~<cN>~qrCode, one attribute per geohash character so that any prefix is a partial key
+    private static final String GEO_INDEX = "geo";
+    private static final int GEO_PRECISION = 9;
+    private static final int MAX_GEO_CELLS = 16;
+    // Index entries only need to exist; an empty value would be treated as a delete
+    private static final byte[] INDEX_VALUE = new byte[] {0x00};
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 500;
+    // Upper bound on legs inspected by one windowed history page
+    private static final int MAX_HISTORY_SCAN = 5000;
+    // Upper bound on the JSON returned by one ledger history call
+    private static final int MAX_HISTORY_BYTES = 512 * 1024;
+
+    // Every transaction reads and writes world state through a BasilContext, see afterTransaction
+    @Override
+    public BasilContext createContext(ChaincodeStub stub) {
+        return new BasilContext(stub, codec);
+    }
+
+    // Announce the plants a successful transaction changed and hand its buffered writes to the peer
+    @Override
+    public void afterTransaction(Context ctx, Object result) {
+        BasilContext basilCtx = (BasilContext) ctx;
+        Map<String, Basil> changed = basilCtx.getChangedBasils();
+        if (!changed.isEmpty()) {
+            List<BasilChange> changes = new ArrayList<>(changed.size());
+            for (Map.Entry<String, Basil> entry : changed.entrySet()) {
+                changes.add(new BasilChange(entry.getKey(), entry.getValue() == null, entry.getValue()));
+            }
+            // Fabric keeps only the last event set by a transaction, so one event carries every change
+            ctx.getStub().setEvent(BASIL_CHANGED_EVENT, genson.serialize(changes).getBytes(StandardCharsets.UTF_8));
+        }
+        ChaincodeStub stub = ctx.getStub();
+        for (Map.Entry<String, Map<String, Long>> dimension : basilCtx.getCountDeltas().entrySet()) {
+            for (Map.Entry<String, Long> delta : dimension.getValue().entrySet()) {
+                if (delta.getValue() != 0) {
+                    basilCtx.putState(stub.createCompositeKey(COUNT_DELTA, dimension.getKey(), delta.getKey(),
+                            stub.getTxId()).toString(), encodeCount(delta.getValue()));
+                }
+            }
+        }
+        for (Map.Entry<String, ColdChainSummary> delta : basilCtx.getColdChainDeltas().entrySet()) {
+            basilCtx.putState(stub.createCompositeKey(COLD_CHAIN_DELTA, delta.getKey(), stub.getTxId()).toString(),
+                    genson.serialize(delta.getValue()).getBytes(StandardCharsets.UTF_8));
+        }
+        basilCtx.flush();
+    }
 
     // Create a new basil plant
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public void createBasil(Context ctx, String qrCode, String origin) {
+    public void createBasil(BasilContext ctx, String qrCode, String origin) {
         rejectIfSupermarket(ctx);
         ChaincodeStub stub = ctx.getStub();
 
-        if (stub.getStringState(qrCode) != null && !stub.getStringState(qrCode).isEmpty()) {
+        if (ctx.getBasil(qrCode) != null) {
             throw new ChaincodeException("Basil already exists with QR: " + qrCode);
         }
 
@@ -49,89 +141,326 @@ public class BasilContract implements ContractInterface {
         Owner owner = new Owner(orgId, "Greenhouse");
         Long creationTimestamp = stub.getTxTimestamp().getEpochSecond();
 
-        BasilLeg initialLeg = createBasilLeg(creationTimestamp, origin, "N/A", "N/A", owner);
-        List<BasilLeg> history = new ArrayList<>();
-        history.add(initialLeg);
+        registerBasil(ctx, qrCode, origin, owner, creationTimestamp);
+    }
 
-        Basil basil = new Basil(qrCode, creationTimestamp, origin, "Created", origin, owner, history);
+    // Create many plants in a single transaction. plantsJson is a JSON array of {qrCode, origin}.
+    // QR codes that already exist, or appear earlier in the same batch, are skipped and reported
+    // as duplicates instead of failing the batch.
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public BasilBatchResult createBasilsBatch(BasilContext ctx, String plantsJson) {
+        rejectIfSupermarket(ctx);
+
+        BasilRegistration[] plants = parseArgument(plantsJson, BasilRegistration[].class, "plants");
+        if (plants == null || plants.length == 0) {
+            throw new ChaincodeException("No plants supplied");
+        }
+        if (plants.length > MAX_BATCH_SIZE) {
+            throw new ChaincodeException("Too many plants in one batch: " + plants.length + " > " + MAX_BATCH_SIZE);
+        }
+        for (BasilRegistration plant : plants) {
+            if (plant.getQrCode() == null || plant.getQrCode().isEmpty() || plant.getOrigin() == null) {
+                throw new ChaincodeException("Every plant needs a qrCode and an origin");
+            }
+        }
 
-        stub.putStringState(qrCode, genson.serialize(basil));
+        Owner owner = new Owner(getClientOrgId(ctx), "Greenhouse");
+        Long creationTimestamp = ctx.getStub().getTxTimestamp().getEpochSecond();
+
+        int created = 0;
+        List<String> duplicates = new ArrayList<>();
+        for (BasilRegistration plant : plants) {
+            // Also true for a plant created earlier in this batch, since the context sees its own writes
+            if (ctx.getBasil(plant.getQrCode()) != null) {
+                duplicates.add(plant.getQrCode());
+                continue;
+            }
+            registerBasil(ctx, plant.getQrCode(), plant.getOrigin(), owner, creationTimestamp);
+            created++;
+        }
+        return new BasilBatchResult(created, duplicates);
     }
 
 
     // Stop tracking a basil plant (delete it)
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public void deleteBasil(Context ctx, String qrCode) {
+    public void deleteBasil(BasilContext ctx, String qrCode) {
         rejectIfSupermarket(ctx);
         ChaincodeStub stub = ctx.getStub();
-        Basil basil = readBasil(ctx, qrCode);
+        Basil basil = readHeader(ctx, qrCode);
 
         String clientOrg = getClientOrgId(ctx);
         if (!basil.getCurrentOwner().getOrgId().equals(clientOrg)) {
             throw new ChaincodeException("Only the current owner can delete the plant.");
         }
 
-        stub.delState(qrCode);
+        try (QueryResultsIterator<KeyValue> legs = stub.getStateByPartialCompositeKey(LEG_KEY_PREFIX, qrCode)) {
+            for (KeyValue leg : legs) {
+                ctx.delState(leg.getKey());
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException("Error deleting transport history: " + e.getMessage());
+        }
+        for (int first = 0; first < archivedLegs(basil); first += ARCHIVE_CHUNK_SIZE) {
+            ctx.delState(archiveKey(stub, qrCode, first));
+        }
+        ctx.delState(coldChainKey(stub, qrCode));
+        ctx.deleteBasil(qrCode);
+        // Legacy records were never indexed or counted, so there is nothing to take them out of
+        if (!isLegacy(basil)) {
+            reindex(ctx, basil, null);
+        }
     }
 
     // Update state: add a BasilLeg and change current info
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public void updateBasilState(Context ctx, String qrCode, String gps, Long timestamp, String temp, String humidity,
+    public void updateBasilState(BasilContext ctx, String qrCode, String gps, Long timestamp, String temp, String humidity,
             String status) {
         rejectIfSupermarket(ctx);
-        ChaincodeStub stub = ctx.getStub();
-        Basil basil = readBasil(ctx, qrCode);
+        Basil basil = readHeader(ctx, qrCode);
 
         String clientOrg = getClientOrgId(ctx);
         if (!basil.getCurrentOwner().getOrgId().equals(clientOrg)) {
             throw new ChaincodeException("Only the current owner can update the plant state.");
         }
 
-        Owner owner = basil.getCurrentOwner();
-        BasilLeg leg = createBasilLeg(timestamp, gps, temp, humidity, owner);
-        basil.getTransportHistory().add(leg);
+        BasilReading reading = new BasilReading(qrCode, gps, timestamp, temp, humidity, status);
+        checkReading(reading);
+        List<BasilReading> readings = new ArrayList<>();
+        readings.add(reading);
+        appendReadings(ctx, basil, readings);
+    }
 
-        Basil updated = new Basil(
-                basil.getQrCode(),
-                basil.getCreationTimestamp(),
-                basil.getOrigin(),
-                status,
-                gps,
-                owner,
-                basil.getTransportHistory());
+    // Apply many sensor readings, possibly for many plants, in a single transaction.
+    // readingsJson is a JSON array of {qrCode, gps, timestamp, temperature, humidity, status};
+    // readings for the same plant are applied in array order. Returns the number of applied readings.
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int updateBasilStatesBatch(BasilContext ctx, String readingsJson) {
+        rejectIfSupermarket(ctx);
+
+        BasilReading[] readings = parseArgument(readingsJson, BasilReading[].class, "readings");
+        if (readings == null || readings.length == 0) {
+            throw new ChaincodeException("No readings supplied");
+        }
+        if (readings.length > MAX_BATCH_SIZE) {
+            throw new ChaincodeException("Too many readings in one batch: " + readings.length + " > " + MAX_BATCH_SIZE);
+        }
+
+        // The whole batch is checked before anything is written
+        Map<String, List<BasilReading>> byPlant = new LinkedHashMap<>();
+        for (BasilReading reading : readings) {
+            checkReading(reading);
+            byPlant.computeIfAbsent(reading.getQrCode(), k -> new ArrayList<>()).add(reading);
+        }
 
-        stub.putStringState(qrCode, genson.serialize(updated));
+        String clientOrg = getClientOrgId(ctx);
+        for (Map.Entry<String, List<BasilReading>> plant : byPlant.entrySet()) {
+            Basil basil = readHeader(ctx, plant.getKey());
+            if (!basil.getCurrentOwner().getOrgId().equals(clientOrg)) {
+                throw new ChaincodeException("Only the current owner can update the plant state: " + plant.getKey());
+            }
+            appendReadings(ctx, basil, plant.getValue());
+        }
+        return readings.length;
     }
 
-    // Get current state of a basil plant
+    // Get current state of a basil plant, including its full transport history
     @Transaction(intent = Transaction.TYPE.EVALUATE)
-    public Basil readBasil(Context ctx, String qrCode) {
-        String data = ctx.getStub().getStringState(qrCode);
-        if (data == null || data.isEmpty()) {
-            throw new ChaincodeException("No basil found with QR: " + qrCode);
-        }
-        return genson.deserialize(data, Basil.class);
+    public Basil readBasil(BasilContext ctx, String qrCode) {
+        return withTransportHistory(ctx, readHeader(ctx, qrCode));
     }
 
+    // Read many plants in one evaluate. qrCodesJson is a JSON array of QR codes; unknown ones are listed as
+    // missing instead of failing the call, and repeated ones are returned once. Without withHistory only the
+    // headers are returned, which skips reading the legs. With it, fails once the plants come to more than
+    // MAX_HISTORY_BYTES of JSON; read fewer at a time.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public BasilReadResult readBasils(BasilContext ctx, String qrCodesJson, boolean withHistory) {
+        String[] qrCodes = parseArgument(qrCodesJson, String[].class, "QR codes");
+        if (qrCodes == null || qrCodes.length == 0) {
+            throw new ChaincodeException("No QR codes supplied");
+        }
+        if (qrCodes.length > MAX_BATCH_SIZE) {
+            throw new ChaincodeException("Too many QR codes in one read: " + qrCodes.length + " > " + MAX_BATCH_SIZE);
+        }
+
+        List<Basil> basils = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        long bytes = 0;
+        for (String qrCode : new LinkedHashSet<>(Arrays.asList(qrCodes))) {
+            if (qrCode == null || qrCode.isEmpty()) {
+                throw new ChaincodeException("QR codes must not be empty");
+            }
+            Basil basil = ctx.getBasil(qrCode);
+            if (basil == null) {
+                missing.add(qrCode);
+            } else if (withHistory) {
+                Basil full = withTransportHistory(ctx, basil);
+                bytes += genson.serialize(full).length();
+                if (bytes > MAX_HISTORY_BYTES) {
+                    throw new ChaincodeException("Plants with their histories exceed " + MAX_HISTORY_BYTES
+                            + " bytes, read fewer at a time or without the history");
+                }
+                basils.add(full);
+            } else {
+                basils.add(new Basil(
+                        basil.getQrCode(),
+                        basil.getCreationTimestamp(),
+                        basil.getOrigin(),
+                        basil.getCurrentStatus(),
+                        basil.getCurrentGps(),
+                        basil.getCurrentOwner(),
+                        null,
+                        basil.getLegCount(),
+                        basil.getArchivedLegCount()));
+            }
+        }
+        return new BasilReadResult(basils, missing);
+    }
 
     // Get the transport history
     @Transaction(intent = Transaction.TYPE.EVALUATE)
-    public List<BasilLeg> getHistory(Context ctx, String qrCode) {
-        Basil basil = readBasil(ctx, qrCode);
-        return basil.getTransportHistory();
+    public List<BasilLeg> getHistory(BasilContext ctx, String qrCode) {
+        Basil basil = readHeader(ctx, qrCode);
+        if (isLegacy(basil)) {
+            return basil.getTransportHistory();
+        }
+        return readHistory(ctx, basil);
     }
 
-    // Transfer ownership to another organization
+    // Roll all but the newest keepLegs legs into archive chunks, at most MAX_COMPACT_CHUNKS per call.
+    // Only whole chunks are archived. Returns the number of legs archived; call again while it is positive.
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int compactHistory(BasilContext ctx, String qrCode, int keepLegs) {
+        rejectIfSupermarket(ctx);
+        if (keepLegs < 0) {
+            throw new ChaincodeException("keepLegs must not be negative");
+        }
+        Basil basil = readHeader(ctx, qrCode);
+        if (!basil.getCurrentOwner().getOrgId().equals(getClientOrgId(ctx))) {
+            throw new ChaincodeException("Only the current owner can compact the plant history.");
+        }
+        basil = migrateIfLegacy(ctx, basil);
+        return archivedLegs(compact(ctx, basil, keepLegs)) - archivedLegs(basil);
+    }
+
+    // Get one page of the transport history, oldest leg first unless newestFirst. pageSize is capped at
+    // MAX_PAGE_SIZE, bookmark is empty for the first page, and fromTimestamp/toTimestamp bound the legs
+    // returned (inclusive, 0 leaves that side open). A windowed page can hold fewer than pageSize legs;
+    // keep following the bookmark until it comes back empty. Bookmarks only resume in the order they were
+    // handed out in.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public BasilLegPage getHistoryPage(BasilContext ctx, String qrCode, int pageSize, String bookmark,
+            long fromTimestamp, long toTimestamp, boolean newestFirst) {
+        if (pageSize <= 0) {
+            throw new ChaincodeException("Page size must be positive");
+        }
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+
+        Basil basil = readHeader(ctx, qrCode);
+        if (isLegacy(basil)) {
+            return legacyHistoryPage(basil, pageSize, bookmark, fromTimestamp, toTimestamp, newestFirst);
+        }
+        if (newestFirst) {
+            return newestFirstHistoryPage(ctx, basil, pageSize, bookmark, fromTimestamp, toTimestamp);
+        }
+
+        ChaincodeStub stub = ctx.getStub();
+        CompositeKey prefix = stub.createCompositeKey(LEG_KEY_PREFIX, qrCode);
+        List<BasilLeg> legs = new ArrayList<>();
+        String next = decodeBookmark(bookmark);
+        int scanned = 0;
+
+        // Archived legs come first and are addressed by sequence number; live legs follow them
+        int archived = archivedLegs(basil);
+        if ((next.isEmpty() && archived > 0) || next.startsWith(ARCHIVE_BOOKMARK)) {
+            int seq;
+            try {
+                seq = next.isEmpty() ? 0 : Integer.parseInt(next.substring(ARCHIVE_BOOKMARK.length()));
+            } catch (NumberFormatException e) {
+                throw new ChaincodeException("Invalid bookmark: " + bookmark);
+            }
+            while (seq < archived && legs.size() < pageSize && scanned < MAX_HISTORY_SCAN) {
+                List<BasilLeg> chunk = readArchiveChunk(ctx, qrCode, seq - seq % ARCHIVE_CHUNK_SIZE);
+                for (int i = seq % ARCHIVE_CHUNK_SIZE; i < chunk.size() && legs.size() < pageSize
+                        && scanned < MAX_HISTORY_SCAN; i++, seq++) {
+                    scanned++;
+                    if (inWindow(chunk.get(i), fromTimestamp, toTimestamp)) {
+                        legs.add(chunk.get(i));
+                    }
+                }
+            }
+            if (legs.size() == pageSize || scanned == MAX_HISTORY_SCAN) {
+                boolean more = seq < basil.getLegCount();
+                return new BasilLegPage(legs, more ? encodeBookmark(ARCHIVE_BOOKMARK + seq) : "");
+            }
+            next = "";
+        }
+
+        do {
+            // Only ask for as many legs as are still missing, so that every fetched leg is consumed
+            // and the bookmark handed back by the peer is always the right place to resume.
+            int fetch = Math.min(pageSize - legs.size(), MAX_HISTORY_SCAN - scanned);
+            try (QueryResultsIteratorWithMetadata<KeyValue> results =
+                    stub.getStateByPartialCompositeKeyWithPagination(prefix, fetch, next)) {
+                for (KeyValue result : results) {
+                    scanned++;
+                    BasilLeg leg = codec.decodeLeg(result.getValue());
+                    if (inWindow(leg, fromTimestamp, toTimestamp)) {
+                        legs.add(leg);
+                    }
+                }
+                next = results.getMetadata().getBookmark();
+            } catch (Exception e) {
+                throw new ChaincodeException("Error reading transport history: " + e.getMessage());
+            }
+        } while (legs.size() < pageSize && scanned < MAX_HISTORY_SCAN && !next.isEmpty());
+
+        return new BasilLegPage(legs, encodeBookmark(next));
+    }
+
+    // Convert a record that still embeds its transport history into the per-leg layout
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public void transferOwnership(Context ctx, String qrCode, String newOrgId, String newName) {
+    public void migrateBasil(BasilContext ctx, String qrCode) {
+        rejectIfSupermarket(ctx);
+        migrateIfLegacy(ctx, readHeader(ctx, qrCode));
+    }
+
+    // Convert every legacy record with a key in [startKey, endKey), returns the number of migrated records
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int migrateBasils(BasilContext ctx, String startKey, String endKey) {
         rejectIfSupermarket(ctx);
         ChaincodeStub stub = ctx.getStub();
-        Basil basil = readBasil(ctx, qrCode);
+
+        List<Basil> legacy = new ArrayList<>();
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey)) {
+            for (KeyValue result : results) {
+                Basil basil = codec.decodeBasil(result.getValue());
+                if (isLegacy(basil)) {
+                    legacy.add(basil);
+                }
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException("Error scanning basil records: " + e.getMessage());
+        }
+
+        for (Basil basil : legacy) {
+            migrateIfLegacy(ctx, basil);
+        }
+        return legacy.size();
+    }
+
+    // Transfer ownership to another organization
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public void transferOwnership(BasilContext ctx, String qrCode, String newOrgId, String newName) {
+        rejectIfSupermarket(ctx);
+        Basil basil = readHeader(ctx, qrCode);
 
         String clientOrg = getClientOrgId(ctx);
         if (!basil.getCurrentOwner().getOrgId().equals(clientOrg)) {
             throw new ChaincodeException("Only the current owner can transfer ownership.");
         }
+        basil = migrateIfLegacy(ctx, basil);
 
         Owner newOwner = new Owner(newOrgId, newName);
         Basil updated = new Basil(
@@ -141,46 +470,430 @@ public class BasilContract implements ContractInterface {
                 basil.getCurrentStatus(),
                 basil.getCurrentGps(),
                 newOwner,
-                basil.getTransportHistory());
+                null,
+                basil.getLegCount(),
+                basil.getArchivedLegCount());
+
+        ctx.putBasil(updated);
+        reindex(ctx, basil, updated);
+    }
 
-        stub.putStringState(qrCode, genson.serialize(updated));
+    // List the plants currently owned by an organization, one page at a time
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public BasilPage queryBasilsByOwner(BasilContext ctx, String orgId, int pageSize, String bookmark) {
+        return queryIndex(ctx, OWNER_INDEX, orgId, pageSize, bookmark);
     }
 
+    // List the plants with a given current status, one page at a time
     @Transaction(intent = Transaction.TYPE.EVALUATE)
-    public String getBasilHistory(final Context ctx, final String id) {
+    public BasilPage queryBasilsByStatus(BasilContext ctx, String status, int pageSize, String bookmark) {
+        return queryIndex(ctx, STATUS_INDEX, status, pageSize, bookmark);
+    }
+
+    // List every plant in QR code order, one page at a time, including legacy records that no index covers.
+    // Meant for building off-chain copies of the ledger.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public BasilPage listBasils(BasilContext ctx, int pageSize, String bookmark) {
+        if (pageSize <= 0) {
+            throw new ChaincodeException("Page size must be positive");
+        }
+        List<Basil> basils = new ArrayList<>();
+        String next;
+        // Plants are the only records under simple keys; legs, indexes and counts all use composite keys
+        try (QueryResultsIteratorWithMetadata<KeyValue> results = ctx.getStub().getStateByRangeWithPagination(
+                "", "", Math.min(pageSize, MAX_PAGE_SIZE), decodeBookmark(bookmark))) {
+            for (KeyValue result : results) {
+                basils.add(codec.decodeBasil(result.getValue()));
+            }
+            next = results.getMetadata().getBookmark();
+        } catch (Exception e) {
+            throw new ChaincodeException("Error listing basils: " + e.getMessage());
+        }
+        return new BasilPage(basils, encodeBookmark(next));
+    }
+
+    // List the plants whose current GPS lies inside the box, one page at a time. Only the geo index entries
+    // under the geohash cells covering the box are scanned, and plants in those cells but outside the box are
+    // dropped, so a page may hold fewer than pageSize plants while the bookmark is still non-empty.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public BasilPage queryBasilsInBoundingBox(BasilContext ctx, double minLat, double minLon, double maxLat,
+            double maxLon, int pageSize, String bookmark) {
+        if (pageSize <= 0) {
+            throw new ChaincodeException("Page size must be positive");
+        }
+        if (!(minLat >= -90 && minLat <= maxLat && maxLat <= 90 && minLon >= -180 && minLon <= maxLon && maxLon <= 180)) {
+            throw new ChaincodeException("Invalid bounding box: " + minLat + "," + minLon + " to " + maxLat + "," + maxLon);
+        }
+        int limit = Math.min(pageSize, MAX_PAGE_SIZE);
+        ChaincodeStub stub = ctx.getStub();
+        List<String> cells = Geohash.cover(minLat, minLon, maxLat, maxLon, GEO_PRECISION, MAX_GEO_CELLS);
+
+        // Bookmark is <cell index>:<peer bookmark within that cell>
+        int cell = 0;
+        String cellBookmark = "";
+        String resume = decodeBookmark(bookmark);
+        if (!resume.isEmpty()) {
+            int colon = resume.indexOf(':');
+            if (colon <= 0 || !resume.substring(0, colon).chars().allMatch(Character::isDigit)) {
+                throw new ChaincodeException("Invalid bookmark: " + bookmark);
+            }
+            cell = Integer.parseInt(resume.substring(0, colon));
+            cellBookmark = resume.substring(colon + 1);
+        }
+
+        List<Basil> basils = new ArrayList<>();
+        while (cell < cells.size() && basils.size() < limit) {
+            int wanted = limit - basils.size();
+            int scanned = 0;
+            String next;
+            try (QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                    geoKey(stub, cells.get(cell), null), wanted, cellBookmark)) {
+                for (KeyValue result : results) {
+                    scanned++;
+                    List<String> attributes = stub.splitCompositeKey(result.getKey()).getAttributes();
+                    Basil basil = readHeader(ctx, attributes.get(attributes.size() - 1));
+                    double[] position = Geohash.parse(basil.getCurrentGps());
+                    if (position != null && Geohash.contains(position, minLat, minLon, maxLat, maxLon)) {
+                        basils.add(basil);
+                    }
+                }
+                next = results.getMetadata().getBookmark();
+            } catch (ChaincodeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ChaincodeException("Error querying " + GEO_INDEX + " index: " + e.getMessage());
+            }
+            if (scanned < wanted || next == null || next.isEmpty()) {
+                cell++;
+                cellBookmark = "";
+            } else {
+                cellBookmark = next;
+            }
+        }
+        return new BasilPage(basils, cell < cells.size() ? encodeBookmark(cell + ":" + cellBookmark) : "");
+    }
+
+    // Number of plants per owner organization (dimension "owner") or per status ("status") as a JSON object.
+    // Adds the pending deltas to the rolled-up bases, so it costs one key per change since the last roll-up.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getBasilCounts(BasilContext ctx, String dimension) {
+        checkCountDimension(dimension);
+        Map<String, Long> counts = new TreeMap<>();
+        sumCounts(ctx, COUNT_BASE, dimension, counts);
+        sumCounts(ctx, COUNT_DELTA, dimension, counts);
+        counts.values().removeIf(count -> count == 0);
+        return genson.serialize(counts);
+    }
+
+    // Fold up to MAX_ROLLUP_DELTAS count deltas into their bases and delete them. Returns the number folded;
+    // run it periodically. A transaction writing new count deltas meanwhile makes only this one fail, on a
+    // phantom read. Owner cold-chain deltas are folded by rollUpColdChain.
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int rollUpCounts(BasilContext ctx) {
+        rejectIfSupermarket(ctx);
+        ChaincodeStub stub = ctx.getStub();
+
+        Map<String, Long> totals = new LinkedHashMap<>();
+        int folded = 0;
+        try (QueryResultsIterator<KeyValue> deltas =
+                stub.getStateByPartialCompositeKey(stub.createCompositeKey(COUNT_DELTA))) {
+            for (KeyValue delta : deltas) {
+                if (folded == MAX_ROLLUP_DELTAS) {
+                    break;
+                }
+                List<String> attributes = stub.splitCompositeKey(delta.getKey()).getAttributes();
+                String base = stub.createCompositeKey(COUNT_BASE, attributes.get(0), attributes.get(1)).toString();
+                totals.merge(base, decodeCount(delta.getValue()), Long::sum);
+                ctx.delState(delta.getKey());
+                folded++;
+            }
+        } catch (ChaincodeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ChaincodeException("Error reading count deltas: " + e.getMessage());
+        }
+
+        for (Map.Entry<String, Long> total : totals.entrySet()) {
+            byte[] base = ctx.getState(total.getKey());
+            long count = (base != null ? decodeCount(base) : 0) + total.getValue();
+            if (count == 0) {
+                ctx.delState(total.getKey());
+            } else {
+                ctx.putState(total.getKey(), encodeCount(count));
+            }
+        }
+        return folded;
+    }
+
+    // Keys of up to limit (at most MAX_ROLLUP_DELTAS) owner cold-chain deltas, as a JSON array for rollUpColdChain.
+    // Every reading writes one, so listing them in an evaluate keeps the range scan out of the roll-up.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String listColdChainDeltas(BasilContext ctx, int limit) {
+        if (limit <= 0) {
+            throw new ChaincodeException("limit must be positive");
+        }
         ChaincodeStub stub = ctx.getStub();
-        String key = id;  // Use the ID directly as the key
+        List<String> keys = new ArrayList<>();
+        try (QueryResultsIterator<KeyValue> deltas =
+                stub.getStateByPartialCompositeKey(stub.createCompositeKey(COLD_CHAIN_DELTA))) {
+            for (KeyValue delta : deltas) {
+                if (keys.size() == Math.min(limit, MAX_ROLLUP_DELTAS)) {
+                    break;
+                }
+                keys.add(delta.getKey());
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException("Error reading cold-chain deltas: " + e.getMessage());
+        }
+        return genson.serialize(keys);
+    }
 
+    // Fold the owner cold-chain deltas named in deltaKeysJson, as listed by listColdChainDeltas, into their bases
+    // and delete them. Only reads those keys, so readings written meanwhile never make it fail; keys another
+    // roll-up has folded already are skipped. Returns the number folded.
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int rollUpColdChain(BasilContext ctx, String deltaKeysJson) {
+        rejectIfSupermarket(ctx);
+        String[] keys = parseArgument(deltaKeysJson, String[].class, "cold-chain delta keys");
+        if (keys == null) {
+            throw new ChaincodeException("No cold-chain delta keys supplied");
+        }
+        if (keys.length > MAX_ROLLUP_DELTAS) {
+            throw new ChaincodeException("Too many cold-chain deltas in one roll-up: " + keys.length + " > "
+                    + MAX_ROLLUP_DELTAS);
+        }
+        ChaincodeStub stub = ctx.getStub();
+        Map<String, ColdChainSummary> totals = new LinkedHashMap<>();
+        int folded = 0;
+        for (String key : new LinkedHashSet<>(Arrays.asList(keys))) {
+            if (!isColdChainDelta(stub, key)) {
+                throw new ChaincodeException("Not a cold-chain delta key: " + key);
+            }
+            CompositeKey delta = stub.splitCompositeKey(key);
+            byte[] value = ctx.getState(key);
+            if (value == null) {
+                continue;
+            }
+            String base = stub.createCompositeKey(COLD_CHAIN_BASE, delta.getAttributes().get(0)).toString();
+            totals.merge(base, decodeColdChainSummary(value), ColdChainSummary::merge);
+            ctx.delState(key);
+            folded++;
+        }
+
+        for (Map.Entry<String, ColdChainSummary> total : totals.entrySet()) {
+            ColdChainSummary summary = readColdChainSummary(ctx, total.getKey()).merge(total.getValue());
+            ctx.putState(total.getKey(), genson.serialize(summary).getBytes(StandardCharsets.UTF_8));
+        }
+        return folded;
+    }
+
+    // Reset the counts of a dimension to the number of entries in its index, for plants created before
+    // counting existed. Scans the whole index, so run it once, when the network is quiet.
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int rebuildCounts(BasilContext ctx, String dimension) {
+        rejectIfSupermarket(ctx);
+        checkCountDimension(dimension);
+        ChaincodeStub stub = ctx.getStub();
+
+        Map<String, Long> counts = new TreeMap<>();
+        int plants = 0;
+        try (QueryResultsIterator<KeyValue> entries =
+                stub.getStateByPartialCompositeKey(stub.createCompositeKey(dimension))) {
+            for (KeyValue entry : entries) {
+                counts.merge(stub.splitCompositeKey(entry.getKey()).getAttributes().get(0), 1L, Long::sum);
+                plants++;
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException("Error scanning " + dimension + " index: " + e.getMessage());
+        }
+        for (String type : new String[] {COUNT_BASE, COUNT_DELTA}) {
+            try (QueryResultsIterator<KeyValue> stale = stub.getStateByPartialCompositeKey(type, dimension)) {
+                for (KeyValue entry : stale) {
+                    ctx.delState(entry.getKey());
+                }
+            } catch (Exception e) {
+                throw new ChaincodeException("Error clearing " + dimension + " counts: " + e.getMessage());
+            }
+        }
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            ctx.putState(stub.createCompositeKey(COUNT_BASE, dimension, count.getKey()).toString(),
+                    encodeCount(count.getValue()));
+        }
+        return plants;
+    }
+
+    // Running cold-chain aggregates of a plant's readings; a single key read, however long the history is
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public ColdChainSummary getColdChainSummary(BasilContext ctx, String qrCode) {
+        readHeader(ctx, qrCode);
+        return readColdChainSummary(ctx, coldChainKey(ctx.getStub(), qrCode));
+    }
+
+    // Cold-chain aggregates of every reading taken while orgId owned the plant, deleted plants included.
+    // Adds the pending deltas to the rolled-up base, so it costs one key per transaction since the last roll-up.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public ColdChainSummary getOwnerColdChainSummary(BasilContext ctx, String orgId) {
+        ChaincodeStub stub = ctx.getStub();
+        ColdChainSummary summary =
+                readColdChainSummary(ctx, stub.createCompositeKey(COLD_CHAIN_BASE, orgId).toString());
+        try (QueryResultsIterator<KeyValue> deltas = stub.getStateByPartialCompositeKey(COLD_CHAIN_DELTA, orgId)) {
+            for (KeyValue delta : deltas) {
+                summary = summary.merge(decodeColdChainSummary(delta.getValue()));
+            }
+        } catch (ChaincodeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ChaincodeException("Error reading cold-chain deltas: " + e.getMessage());
+        }
+        return summary;
+    }
+
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public ColdChainRange getColdChainRange(BasilContext ctx) {
+        return readColdChainRange(ctx);
+    }
+
+    // Set the temperature (Celsius) and humidity (%) limits for readings from now on; aggregates already
+    // recorded keep the excursions counted under the old limits
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public void setColdChainRange(BasilContext ctx, double minTemperature, double maxTemperature,
+            double minHumidity, double maxHumidity) {
+        rejectIfSupermarket(ctx);
+        if (!(minTemperature <= maxTemperature) || !(minHumidity <= maxHumidity)
+                || Double.isInfinite(minTemperature) || Double.isInfinite(maxTemperature)
+                || Double.isInfinite(minHumidity) || Double.isInfinite(maxHumidity)) {
+            throw new ChaincodeException("Cold-chain limits must be finite with min <= max");
+        }
+        ColdChainRange range = new ColdChainRange(minTemperature, maxTemperature, minHumidity, maxHumidity);
+        ctx.putState(ctx.getStub().createCompositeKey(COLD_CHAIN_RANGE_KEY).toString(),
+                genson.serialize(range).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Every committed version of the record as a JSON array, newest first, each with the transport history it
+    // had then. Deleted versions are left out, and versions from before a delete list no legs unless they
+    // embedded them, since their leg keys are gone. Fails once the response would exceed MAX_HISTORY_BYTES;
+    // use getBasilHistoryPage for busy plants.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getBasilHistory(final BasilContext ctx, final String id) {
         // Check if basil exists
-        String data = stub.getStringState(key);
-        if (data == null || data.isEmpty()) {
+        Basil current = ctx.getBasil(id);
+        if (current == null) {
             throw new ChaincodeException("Basil with ID " + id + " does not exist");
         }
 
-        try {
-            // Get history iterator
-            QueryResultsIterator<KeyModification> historyIterator = stub.getHistoryForKey(key);
-            
-            // Convert history to JSON array
-            List<Map<String, Object>> history = new ArrayList<>();
-            for (KeyModification modification : historyIterator) {
-                try {
-                    // Parse the value using Genson
-                    Map<String, Object> record = genson.deserialize(modification.getStringValue(), Map.class);
-                    // Add transaction timestamp
-                    record.put("timestamp", modification.getTimestamp().getEpochSecond());
-                    history.add(record);
-                } catch (Exception e) {
-                    // Skip invalid records
+        StringBuilder json = new StringBuilder("[");
+        // Per-leg versions only ever append, so each one's history is a prefix of the current legs
+        List<BasilLeg> currentLegs = null;
+        boolean pastDelete = false;
+        try (QueryResultsIterator<KeyModification> history = ctx.getStub().getHistoryForKey(id)) {
+            for (KeyModification modification : history) {
+                if (modification.isDeleted()) {
+                    pastDelete = true;
                     continue;
                 }
-            }
+                // Past versions may be JSON or binary; normalise them to the JSON shape clients expect
+                Basil version = decodeVersion(modification);
+                List<BasilLeg> legs;
+                if (isLegacy(version)) {
+                    legs = version.getTransportHistory() != null ? version.getTransportHistory() : new ArrayList<>();
+                } else if (pastDelete) {
+                    legs = new ArrayList<>();
+                } else {
+                    if (currentLegs == null) {
+                        currentLegs = readHistory(ctx, current);
+                    }
+                    legs = currentLegs.subList(0, Math.min(version.getLegCount(), currentLegs.size()));
+                }
+
+                Map<String, Object> record = new LinkedHashMap<>();
+                record.put("qrCode", version.getQrCode());
+                record.put("creationTimestamp", version.getCreationTimestamp());
+                record.put("origin", version.getOrigin());
+                record.put("currentStatus", version.getCurrentStatus());
+                record.put("currentGps", version.getCurrentGps());
+                record.put("currentOwner", version.getCurrentOwner());
+                record.put("transportHistory", legs);
+                record.put("timestamp", modification.getTimestamp().getEpochSecond());
 
-            // Return history as JSON array using Genson
-            return genson.serialize(history);
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append(genson.serialize(record));
+                if (json.length() > MAX_HISTORY_BYTES) {
+                    throw new ChaincodeException("History of " + id + " exceeds " + MAX_HISTORY_BYTES
+                            + " bytes, use getBasilHistoryPage");
+                }
+            }
+        } catch (ChaincodeException e) {
+            throw e;
         } catch (Exception e) {
             throw new ChaincodeException("Error getting basil history: " + e.getMessage());
         }
+        return json.append(']').toString();
+    }
+
+    // Walk the ledger history of a record one page at a time, newest version first. A page holds at most
+    // pageSize versions (capped at MAX_PAGE_SIZE) and at most MAX_HISTORY_BYTES of JSON; keep following the
+    // bookmark until it comes back empty. With deltas, each version only carries what changed since the
+    // version before it, which keeps pages small for records that still embed their transport history.
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public BasilVersionPage getBasilHistoryPage(BasilContext ctx, String qrCode, int pageSize, String bookmark,
+            boolean deltas) {
+        if (pageSize <= 0) {
+            throw new ChaincodeException("Page size must be positive");
+        }
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+        String resumeTxId = decodeBookmark(bookmark);
+
+        List<BasilVersion> versions = new ArrayList<>();
+        int bytes = 0;
+        String next = "";
+        try (QueryResultsIterator<KeyModification> history = ctx.getStub().getHistoryForKey(qrCode)) {
+            Iterator<KeyModification> modifications = history.iterator();
+            KeyModification current = null;
+            while (modifications.hasNext()) {
+                KeyModification modification = modifications.next();
+                if (resumeTxId.isEmpty() || resumeTxId.equals(modification.getTxId())) {
+                    current = modification;
+                    break;
+                }
+            }
+            if (current == null && !resumeTxId.isEmpty()) {
+                throw new ChaincodeException("Invalid bookmark: " + bookmark);
+            }
+
+            Basil currentValue = current != null ? decodeVersion(current) : null;
+            while (current != null) {
+                if (versions.size() == pageSize) {
+                    next = current.getTxId();
+                    break;
+                }
+                // History comes newest first, so the version a delta is taken against is the next one
+                KeyModification older = modifications.hasNext() ? modifications.next() : null;
+                Basil olderValue = older != null ? decodeVersion(older) : null;
+
+                BasilVersion version = toVersion(current, currentValue, deltas ? olderValue : null);
+                int size = genson.serialize(version).getBytes(StandardCharsets.UTF_8).length;
+                if (bytes + size > MAX_HISTORY_BYTES) {
+                    if (versions.isEmpty()) {
+                        throw new ChaincodeException("Version " + current.getTxId() + " of " + qrCode
+                                + " alone exceeds " + MAX_HISTORY_BYTES + " bytes");
+                    }
+                    next = current.getTxId();
+                    break;
+                }
+                versions.add(version);
+                bytes += size;
+
+                current = older;
+                currentValue = olderValue;
+            }
+        } catch (ChaincodeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ChaincodeException("Error reading ledger history: " + e.getMessage());
+        }
+        return new BasilVersionPage(versions, encodeBookmark(next));
     }
 
     private String getClientOrgId(Context ctx) {
@@ -196,4 +909,553 @@ public class BasilContract implements ContractInterface {
     private BasilLeg createBasilLeg(Long timestamp, String gps, String temperature, String humidity, Owner owner) {
         return new BasilLeg(timestamp, gps, temperature, humidity, owner);
     }
+
+    // Write the header, initial leg and index entries of a new plant
+    private Basil registerBasil(BasilContext ctx, String qrCode, String origin, Owner owner, Long creationTimestamp) {
+        BasilLeg initialLeg = createBasilLeg(creationTimestamp, origin, "N/A", "N/A", owner);
+        putLeg(ctx, qrCode, 0, initialLeg);
+
+        Basil basil = new Basil(qrCode, creationTimestamp, origin, "Created", origin, owner, null, 1, null);
+
+        ctx.putBasil(basil);
+        reindex(ctx, null, basil);
+        return basil;
+    }
+
+    // Store one leg per reading and write the header once with the state of the last reading
+    private Basil appendReadings(BasilContext ctx, Basil basil, List<BasilReading> readings) {
+        basil = migrateIfLegacy(ctx, basil);
+
+        Owner owner = basil.getCurrentOwner();
+        ColdChainRange range = readColdChainRange(ctx);
+        String summaryKey = coldChainKey(ctx.getStub(), basil.getQrCode());
+        ColdChainSummary summary = readColdChainSummary(ctx, summaryKey);
+        int seq = basil.getLegCount();
+        for (BasilReading reading : readings) {
+            BasilLeg leg = createBasilLeg(reading.getTimestamp(), reading.getGps(), reading.getTemperature(),
+                    reading.getHumidity(), owner);
+            putLeg(ctx, basil.getQrCode(), seq++, leg);
+            summary = recordColdChain(ctx, summary, reading, range, owner.getOrgId());
+        }
+        ctx.putState(summaryKey, genson.serialize(summary).getBytes(StandardCharsets.UTF_8));
+
+        BasilReading last = readings.get(readings.size() - 1);
+        Basil updated = new Basil(
+                basil.getQrCode(),
+                basil.getCreationTimestamp(),
+                basil.getOrigin(),
+                last.getStatus(),
+                last.getGps(),
+                owner,
+                null,
+                seq,
+                basil.getArchivedLegCount());
+
+        ctx.putBasil(updated);
+        reindex(ctx, basil, updated);
+        return updated;
+    }
+
+    // A reading becomes the plant's header and index entries, so it needs everything they are built from
+    private static void checkReading(BasilReading reading) {
+        if (reading == null || reading.getQrCode() == null || reading.getQrCode().isEmpty()
+                || reading.getTimestamp() == null) {
+            throw new ChaincodeException("Every reading needs a qrCode and a timestamp");
+        }
+        if (reading.getStatus() == null || reading.getStatus().isEmpty()
+                || reading.getGps() == null || reading.getGps().isEmpty()) {
+            throw new ChaincodeException("Every reading needs a status and a gps position: " + reading.getQrCode());
+        }
+    }
+
+    // The header with its legs stitched back in; legacy records already carry their history
+    private Basil withTransportHistory(BasilContext ctx, Basil basil) {
+        if (isLegacy(basil)) {
+            return basil;
+        }
+        return new Basil(
+                basil.getQrCode(),
+                basil.getCreationTimestamp(),
+                basil.getOrigin(),
+                basil.getCurrentStatus(),
+                basil.getCurrentGps(),
+                basil.getCurrentOwner(),
+                readHistory(ctx, basil),
+                basil.getLegCount(),
+                basil.getArchivedLegCount());
+    }
+
+    // Read the record stored under the plain qrCode key without loading the transport legs
+    private Basil readHeader(BasilContext ctx, String qrCode) {
+        Basil basil = ctx.getBasil(qrCode);
+        if (basil == null) {
+            throw new ChaincodeException("No basil found with QR: " + qrCode);
+        }
+        return basil;
+    }
+
+    // Decode one entry of the ledger history; a delete has no value and decodes to null
+    private Basil decodeVersion(KeyModification modification) {
+        if (modification.isDeleted()) {
+            return null;
+        }
+        try {
+            return codec.decodeBasil(modification.getValue());
+        } catch (RuntimeException e) {
+            throw new ChaincodeException("Unreadable version " + modification.getTxId() + ": " + e.getMessage());
+        }
+    }
+
+    // A full version when previous is null, otherwise only the fields that differ from previous
+    private BasilVersion toVersion(KeyModification modification, Basil value, Basil previous) {
+        Long timestamp = modification.getTimestamp() != null ? modification.getTimestamp().getEpochSecond() : null;
+        if (value == null) {
+            return new BasilVersion(modification.getTxId(), timestamp, true, null, null, null, null, null, null, null);
+        }
+        if (previous == null) {
+            return new BasilVersion(modification.getTxId(), timestamp, false, value.getOrigin(),
+                    value.getCreationTimestamp(), value.getCurrentStatus(), value.getCurrentGps(),
+                    value.getCurrentOwner(), value.getLegCount(), value.getTransportHistory());
+        }
+        return new BasilVersion(modification.getTxId(), timestamp, false,
+                changed(value.getOrigin(), previous.getOrigin()),
+                changed(value.getCreationTimestamp(), previous.getCreationTimestamp()),
+                changed(value.getCurrentStatus(), previous.getCurrentStatus()),
+                changed(value.getCurrentGps(), previous.getCurrentGps()),
+                changed(value.getCurrentOwner(), previous.getCurrentOwner()),
+                changed(value.getLegCount(), previous.getLegCount()),
+                appendedLegs(value.getTransportHistory(), previous.getTransportHistory()));
+    }
+
+    private static <T> T changed(T value, T previous) {
+        return Objects.equals(value, previous) ? null : value;
+    }
+
+    // Embedded histories only ever grow at the end; anything else is reported in full
+    private static List<BasilLeg> appendedLegs(List<BasilLeg> history, List<BasilLeg> previous) {
+        if (history == null) {
+            return null;
+        }
+        if (previous == null || previous.size() > history.size()
+                || (!previous.isEmpty() && !previous.get(previous.size() - 1).equals(history.get(previous.size() - 1)))) {
+            return history;
+        }
+        return previous.size() == history.size() ? null : new ArrayList<>(history.subList(previous.size(), history.size()));
+    }
+
+    // Legacy records keep their history inline, so their bookmark is simply the next list index
+    private BasilLegPage legacyHistoryPage(Basil basil, int pageSize, String bookmark, long fromTimestamp,
+            long toTimestamp, boolean newestFirst) {
+        List<BasilLeg> history = basil.getTransportHistory() != null ? basil.getTransportHistory() : new ArrayList<>();
+        int step = newestFirst ? -1 : 1;
+        int index = parseSeqBookmark(bookmark, newestFirst ? history.size() - 1 : 0, history.size());
+
+        List<BasilLeg> legs = new ArrayList<>();
+        while (index >= 0 && index < history.size() && legs.size() < pageSize) {
+            BasilLeg leg = history.get(index);
+            index += step;
+            if (inWindow(leg, fromTimestamp, toTimestamp)) {
+                legs.add(leg);
+            }
+        }
+        boolean more = index >= 0 && index < history.size();
+        return new BasilLegPage(legs, encodeBookmark(more ? Integer.toString(index) : ""));
+    }
+
+    // Walks sequence numbers downwards from the newest leg, so the bookmark is the next sequence number.
+    // Live legs are read by key, since range scans cannot run backwards, and archived ones chunk by chunk.
+    private BasilLegPage newestFirstHistoryPage(BasilContext ctx, Basil basil, int pageSize, String bookmark,
+            long fromTimestamp, long toTimestamp) {
+        ChaincodeStub stub = ctx.getStub();
+        String qrCode = basil.getQrCode();
+        int archived = archivedLegs(basil);
+        int seq = parseSeqBookmark(bookmark, basil.getLegCount() - 1, basil.getLegCount());
+
+        List<BasilLeg> legs = new ArrayList<>();
+        List<BasilLeg> chunk = null;
+        int scanned = 0;
+        while (seq >= 0 && legs.size() < pageSize && scanned < MAX_HISTORY_SCAN) {
+            BasilLeg leg;
+            if (seq >= archived) {
+                leg = ctx.getLeg(legKey(stub, qrCode, seq));
+                if (leg == null) {
+                    throw new ChaincodeException("Missing leg " + seq + " of " + qrCode);
+                }
+            } else {
+                if (chunk == null || seq % ARCHIVE_CHUNK_SIZE == ARCHIVE_CHUNK_SIZE - 1) {
+                    chunk = readArchiveChunk(ctx, qrCode, seq - seq % ARCHIVE_CHUNK_SIZE);
+                }
+                leg = chunk.get(seq % ARCHIVE_CHUNK_SIZE);
+            }
+            seq--;
+            scanned++;
+            if (inWindow(leg, fromTimestamp, toTimestamp)) {
+                legs.add(leg);
+            }
+        }
+        return new BasilLegPage(legs, encodeBookmark(seq >= 0 ? Integer.toString(seq) : ""));
+    }
+
+    // A bookmark holding a list index or leg sequence number below size; an empty one starts at first
+    private int parseSeqBookmark(String bookmark, int first, int size) {
+        String position = decodeBookmark(bookmark);
+        if (position.isEmpty()) {
+            return first;
+        }
+        try {
+            int seq = Integer.parseInt(position);
+            if (seq >= 0 && seq < size) {
+                return seq;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new ChaincodeException("Invalid bookmark: " + bookmark);
+    }
+
+    private static int archivedLegs(Basil basil) {
+        return basil.getArchivedLegCount() != null ? basil.getArchivedLegCount() : 0;
+    }
+
+    private String archiveKey(ChaincodeStub stub, String qrCode, int firstSeq) {
+        return stub.createCompositeKey(ARCHIVE_KEY_PREFIX, qrCode, String.format(LEG_SEQ_FORMAT, firstSeq)).toString();
+    }
+
+    private List<BasilLeg> readArchiveChunk(BasilContext ctx, String qrCode, int firstSeq) {
+        byte[] chunk = ctx.getState(archiveKey(ctx.getStub(), qrCode, firstSeq));
+        if (chunk == null) {
+            throw new ChaincodeException("Missing archive chunk " + firstSeq + " of " + qrCode);
+        }
+        return codec.decodeArchive(chunk);
+    }
+
+    // The whole transport history of a per-leg record: its archive chunks stitched in front of the live legs
+    private List<BasilLeg> readHistory(BasilContext ctx, Basil basil) {
+        List<BasilLeg> legs = new ArrayList<>(basil.getLegCount());
+        for (int first = 0; first < archivedLegs(basil); first += ARCHIVE_CHUNK_SIZE) {
+            legs.addAll(readArchiveChunk(ctx, basil.getQrCode(), first));
+        }
+        legs.addAll(readLegs(ctx.getStub(), basil.getQrCode()));
+        return legs;
+    }
+
+    // Move whole chunks of the oldest live legs, up to all but the newest keepLegs, into archive keys and
+    // delete their leg keys. Writes and returns the new header; returns basil itself when nothing is due.
+    private Basil compact(BasilContext ctx, Basil basil, int keepLegs) {
+        int archived = archivedLegs(basil);
+        int end = Math.max(0, basil.getLegCount() - keepLegs);
+        end = Math.min(archived + MAX_COMPACT_CHUNKS * ARCHIVE_CHUNK_SIZE, end - end % ARCHIVE_CHUNK_SIZE);
+        if (end <= archived) {
+            return basil;
+        }
+
+        ChaincodeStub stub = ctx.getStub();
+        String qrCode = basil.getQrCode();
+        // One scan for the committed legs; legs written earlier in this transaction come from the context
+        Map<String, BasilLeg> committed = new HashMap<>();
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(LEG_KEY_PREFIX, qrCode)) {
+            for (KeyValue result : results) {
+                if (committed.size() == end - archived) {
+                    break;
+                }
+                committed.put(result.getKey(), codec.decodeLeg(result.getValue()));
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException("Error reading transport history: " + e.getMessage());
+        }
+
+        for (int first = archived; first < end; first += ARCHIVE_CHUNK_SIZE) {
+            List<BasilLeg> chunk = new ArrayList<>(ARCHIVE_CHUNK_SIZE);
+            for (int seq = first; seq < first + ARCHIVE_CHUNK_SIZE; seq++) {
+                String key = legKey(stub, qrCode, seq);
+                BasilLeg leg = committed.containsKey(key) ? committed.get(key) : ctx.getLeg(key);
+                if (leg == null) {
+                    throw new ChaincodeException("Missing leg " + seq + " of " + qrCode);
+                }
+                chunk.add(leg);
+                ctx.delState(key);
+            }
+            ctx.putState(archiveKey(stub, qrCode, first), codec.encodeArchive(chunk));
+        }
+
+        Basil compacted = new Basil(
+                qrCode,
+                basil.getCreationTimestamp(),
+                basil.getOrigin(),
+                basil.getCurrentStatus(),
+                basil.getCurrentGps(),
+                basil.getCurrentOwner(),
+                null,
+                basil.getLegCount(),
+                end);
+        ctx.putBasil(compacted);
+        return compacted;
+    }
+
+    // Peer bookmarks are composite keys containing \u0000 separators; hand them out URL-safe
+    private String encodeBookmark(String bookmark) {
+        if (bookmark == null || bookmark.isEmpty()) {
+            return "";
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bookmark.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decodeBookmark(String bookmark) {
+        if (bookmark == null || bookmark.isEmpty()) {
+            return "";
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(bookmark), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ChaincodeException("Invalid bookmark: " + bookmark);
+        }
+    }
+
+    private boolean inWindow(BasilLeg leg, long fromTimestamp, long toTimestamp) {
+        long timestamp = leg.getTimestamp() != null ? leg.getTimestamp() : 0L;
+        return (fromTimestamp == 0 || timestamp >= fromTimestamp) && (toTimestamp == 0 || timestamp <= toTimestamp);
+    }
+
+    // Records written before the per-leg layout carry their whole history and no leg counter
+    private boolean isLegacy(Basil basil) {
+        return basil.getLegCount() == null;
+    }
+
+    private Basil migrateIfLegacy(BasilContext ctx, Basil basil) {
+        if (!isLegacy(basil)) {
+            return basil;
+        }
+
+        List<BasilLeg> history = basil.getTransportHistory() != null ? basil.getTransportHistory() : new ArrayList<>();
+        for (int seq = 0; seq < history.size(); seq++) {
+            putLeg(ctx, basil.getQrCode(), seq, history.get(seq));
+        }
+
+        Basil migrated = new Basil(
+                basil.getQrCode(),
+                basil.getCreationTimestamp(),
+                basil.getOrigin(),
+                basil.getCurrentStatus(),
+                basil.getCurrentGps(),
+                basil.getCurrentOwner(),
+                null,
+                history.size(),
+                null);
+        ctx.putBasil(migrated);
+        // Legacy records were never indexed
+        reindex(ctx, null, migrated);
+        return migrated;
+    }
+
+    // Move the owner, status and geo index entries from one header version to the next.
+    // before is null for a new plant and after is null for a deleted one.
+    private void reindex(BasilContext ctx, Basil before, Basil after) {
+        String oldOrg = before != null ? before.getCurrentOwner().getOrgId() : null;
+        String newOrg = after != null ? after.getCurrentOwner().getOrgId() : null;
+        updateIndexEntry(ctx, OWNER_INDEX, oldOrg, newOrg, before != null ? before.getQrCode() : after.getQrCode());
+
+        String oldStatus = before != null ? before.getCurrentStatus() : null;
+        String newStatus = after != null ? after.getCurrentStatus() : null;
+        updateIndexEntry(ctx, STATUS_INDEX, oldStatus, newStatus, before != null ? before.getQrCode() : after.getQrCode());
+
+        String oldGeohash = before != null ? geohash(before.getCurrentGps()) : null;
+        String newGeohash = after != null ? geohash(after.getCurrentGps()) : null;
+        if (!Objects.equals(oldGeohash, newGeohash)) {
+            ChaincodeStub stub = ctx.getStub();
+            if (oldGeohash != null) {
+                ctx.delState(geoKey(stub, oldGeohash, before.getQrCode()).toString());
+            }
+            if (newGeohash != null) {
+                ctx.putState(geoKey(stub, newGeohash, after.getQrCode()).toString(), INDEX_VALUE);
+            }
+        }
+    }
+
+    // Plants whose GPS is not a "lat,lon" pair, such as a fresh plant carrying its origin, are not geo-indexed
+    private static String geohash(String gps) {
+        double[] position = Geohash.parse(gps);
+        return position != null ? Geohash.encode(position[0], position[1], GEO_PRECISION) : null;
+    }
+
+    // Full key for a plant, or the partial key of a geohash prefix when qrCode is null
+    private CompositeKey geoKey(ChaincodeStub stub, String geohash, String qrCode) {
+        String[] attributes = new String[geohash.length() + (qrCode != null ? 1 : 0)];
+        for (int i = 0; i < geohash.length(); i++) {
+            attributes[i] = String.valueOf(geohash.charAt(i));
+        }
+        if (qrCode != null) {
+            attributes[geohash.length()] = qrCode;
+        }
+        return stub.createCompositeKey(GEO_INDEX, attributes);
+    }
+
+    // Each owner and status index entry is also counted, so the counts always match the index
+    private void updateIndexEntry(BasilContext ctx, String index, String oldValue, String newValue, String qrCode) {
+        if (Objects.equals(oldValue, newValue)) {
+            return;
+        }
+        ChaincodeStub stub = ctx.getStub();
+        if (oldValue != null) {
+            ctx.delState(stub.createCompositeKey(index, oldValue, qrCode).toString());
+            ctx.count(index, oldValue, -1);
+        }
+        if (newValue != null) {
+            ctx.putState(stub.createCompositeKey(index, newValue, qrCode).toString(), INDEX_VALUE);
+            ctx.count(index, newValue, 1);
+        }
+    }
+
+    private BasilPage queryIndex(BasilContext ctx, String index, String value, int pageSize, String bookmark) {
+        if (pageSize <= 0) {
+            throw new ChaincodeException("Page size must be positive");
+        }
+        ChaincodeStub stub = ctx.getStub();
+
+        List<Basil> basils = new ArrayList<>();
+        String next;
+        try (QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                stub.createCompositeKey(index, value), Math.min(pageSize, MAX_PAGE_SIZE), decodeBookmark(bookmark))) {
+            for (KeyValue result : results) {
+                String qrCode = stub.splitCompositeKey(result.getKey()).getAttributes().get(1);
+                basils.add(readHeader(ctx, qrCode));
+            }
+            next = results.getMetadata().getBookmark();
+        } catch (Exception e) {
+            throw new ChaincodeException("Error querying " + index + " index: " + e.getMessage());
+        }
+        return new BasilPage(basils, encodeBookmark(next));
+    }
+
+    // A JSON transaction argument, or null for JSON null; malformed JSON fails the transaction with its reason
+    private <T> T parseArgument(String json, Class<T> type, String what) {
+        try {
+            return genson.deserialize(json, type);
+        } catch (JsonBindingException | JsonStreamException e) {
+            throw new ChaincodeException("Invalid " + what + ": " + e.getMessage());
+        }
+    }
+
+    // Only coldchainDelta~<orgId>~<txId> keys may be folded, so a roll-up can never delete anything else
+    private static boolean isColdChainDelta(ChaincodeStub stub, String key) {
+        try {
+            CompositeKey delta = stub.splitCompositeKey(key);
+            return COLD_CHAIN_DELTA.equals(delta.getObjectType()) && delta.getAttributes().size() == 2;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Add one reading to a plant's summary and its contribution to the owner's summary of this transaction.
+    // Time from an out-of-range reading to the next one counts as outside; readings older than the latest
+    // one still count towards the aggregates but add no time.
+    private ColdChainSummary recordColdChain(BasilContext ctx, ColdChainSummary plant, BasilReading reading,
+            ColdChainRange range, String orgId) {
+        long timestamp = reading.getTimestamp();
+        Double temperature = parseMeasure(reading.getTemperature());
+        Double humidity = parseMeasure(reading.getHumidity());
+        boolean outside = range.isOutside(temperature, humidity);
+        boolean wasOutside = plant.getExcursionStart() != null;
+
+        long timeOutside = wasOutside && plant.getLastTimestamp() != null && timestamp > plant.getLastTimestamp()
+                ? timestamp - plant.getLastTimestamp()
+                : 0;
+        ColdChainSummary contribution = ColdChainSummary.ofReading(timestamp, temperature, humidity, outside,
+                outside && !wasOutside ? 1 : 0, timeOutside);
+        ctx.addColdChain(orgId, contribution);
+        return plant.merge(contribution).withExcursionStart(!outside ? null
+                : wasOutside ? plant.getExcursionStart() : Long.valueOf(timestamp));
+    }
+
+    // The leading number of a reading, or null when there is none, as for "N/A"
+    private static Double parseMeasure(String value) {
+        if (value == null) {
+            return null;
+        }
+        Matcher matcher = MEASURE.matcher(value);
+        return matcher.find() ? Double.valueOf(matcher.group(1).replace(',', '.')) : null;
+    }
+
+    private ColdChainRange readColdChainRange(BasilContext ctx) {
+        byte[] value = ctx.getState(ctx.getStub().createCompositeKey(COLD_CHAIN_RANGE_KEY).toString());
+        if (value == null) {
+            return ColdChainRange.DEFAULT;
+        }
+        try {
+            return genson.deserialize(value, ColdChainRange.class);
+        } catch (RuntimeException e) {
+            throw new ChaincodeException("Malformed cold-chain range: " + e.getMessage());
+        }
+    }
+
+    private String coldChainKey(ChaincodeStub stub, String qrCode) {
+        return stub.createCompositeKey(COLD_CHAIN_KEY, qrCode).toString();
+    }
+
+    // The summary stored under key, empty when nothing has been recorded yet
+    private ColdChainSummary readColdChainSummary(BasilContext ctx, String key) {
+        byte[] value = ctx.getState(key);
+        return value != null ? decodeColdChainSummary(value) : ColdChainSummary.EMPTY;
+    }
+
+    private ColdChainSummary decodeColdChainSummary(byte[] value) {
+        try {
+            return genson.deserialize(value, ColdChainSummary.class);
+        } catch (RuntimeException e) {
+            throw new ChaincodeException("Malformed cold-chain summary: " + e.getMessage());
+        }
+    }
+
+    private static void checkCountDimension(String dimension) {
+        if (!OWNER_INDEX.equals(dimension) && !STATUS_INDEX.equals(dimension)) {
+            throw new ChaincodeException("Unknown count dimension: " + dimension + ", expected "
+                    + OWNER_INDEX + " or " + STATUS_INDEX);
+        }
+    }
+
+    // Add every count~ or countBase~ entry of a dimension to counts, by counted value
+    private void sumCounts(BasilContext ctx, String type, String dimension, Map<String, Long> counts) {
+        ChaincodeStub stub = ctx.getStub();
+        try (QueryResultsIterator<KeyValue> entries = stub.getStateByPartialCompositeKey(type, dimension)) {
+            for (KeyValue entry : entries) {
+                String value = stub.splitCompositeKey(entry.getKey()).getAttributes().get(1);
+                counts.merge(value, decodeCount(entry.getValue()), Long::sum);
+            }
+        } catch (ChaincodeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ChaincodeException("Error reading " + dimension + " counts: " + e.getMessage());
+        }
+    }
+
+    private static byte[] encodeCount(long count) {
+        return Long.toString(count).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long decodeCount(byte[] value) {
+        try {
+            return Long.parseLong(new String(value, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            throw new ChaincodeException("Malformed count value");
+        }
+    }
+
+    private String legKey(ChaincodeStub stub, String qrCode, int seq) {
+        return stub.createCompositeKey(LEG_KEY_PREFIX, qrCode, String.format(LEG_SEQ_FORMAT, seq)).toString();
+    }
+
+    private void putLeg(BasilContext ctx, String qrCode, int seq, BasilLeg leg) {
+        ctx.putLeg(legKey(ctx.getStub(), qrCode, seq), leg);
+    }
+
+    private List<BasilLeg> readLegs(ChaincodeStub stub, String qrCode) {
+        List<BasilLeg> legs = new ArrayList<>();
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(LEG_KEY_PREFIX, qrCode)) {
+            for (KeyValue result : results) {
+                legs.add(codec.decodeLeg(result.getValue()));
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException("Error reading transport history: " + e.getMessage());
+        }
+        return legs;
+    }
 }
@@ -0,0 +1,56 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+// One page of transport history; an empty bookmark means there are no more legs
+@DataType()
+public final class BasilLegPage {
+
+    @Property()
+    private final List<BasilLeg> legs;
+
+    @Property()
+    private final String bookmark;
+
+    public BasilLegPage(
+            @JsonProperty("legs") List<BasilLeg> legs,
+            @JsonProperty("bookmark") String bookmark) {
+        this.legs = legs;
+        this.bookmark = bookmark;
+    }
+
+    public List<BasilLeg> getLegs() {
+        return legs;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BasilLegPage)) return false;
+        BasilLegPage page = (BasilLegPage) o;
+        return Objects.equals(legs, page.legs) &&
+               Objects.equals(bookmark, page.bookmark);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(legs, bookmark);
+    }
+
+    @Override
+    public String toString() {
+        return "BasilLegPage{" +
+                "legs=" + legs +
+                ", bookmark='" + bookmark + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,56 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+// One page of basil records from an index query; an empty bookmark means there are no more records
+@DataType()
+public final class BasilPage {
+
+    @Property()
+    private final List<Basil> basils;
+
+    @Property()
+    private final String bookmark;
+
+    public BasilPage(
+            @JsonProperty("basils") List<Basil> basils,
+            @JsonProperty("bookmark") String bookmark) {
+        this.basils = basils;
+        this.bookmark = bookmark;
+    }
+
+    public List<Basil> getBasils() {
+        return basils;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BasilPage)) return false;
+        BasilPage page = (BasilPage) o;
+        return Objects.equals(basils, page.basils) &&
+               Objects.equals(bookmark, page.bookmark);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(basils, bookmark);
+    }
+
+    @Override
+    public String toString() {
+        return "BasilPage{" +
+                "basils=" + basils +
+                ", bookmark='" + bookmark + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,56 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+// Outcome of readBasils: the plants found, in request order, and the QR codes that do not exist
+@DataType()
+public final class BasilReadResult {
+
+    @Property()
+    private final List<Basil> basils;
+
+    @Property()
+    private final List<String> missing;
+
+    public BasilReadResult(
+            @JsonProperty("basils") List<Basil> basils,
+            @JsonProperty("missing") List<String> missing) {
+        this.basils = basils;
+        this.missing = missing;
+    }
+
+    public List<Basil> getBasils() {
+        return basils;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BasilReadResult)) return false;
+        BasilReadResult result = (BasilReadResult) o;
+        return Objects.equals(basils, result.basils) &&
+               Objects.equals(missing, result.missing);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(basils, missing);
+    }
+
+    @Override
+    public String toString() {
+        return "BasilReadResult{" +
+                "basils=" + basils +
+                ", missing=" + missing +
+                '}';
+    }
+}
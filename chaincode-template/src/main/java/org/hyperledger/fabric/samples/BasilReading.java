@@ -0,0 +1,79 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+// One sensor sample submitted through updateBasilStatesBatch
+@DataType()
+public final class BasilReading {
+
+    @Property()
+    private final String qrCode;
+
+    @Property()
+    private final String gps;
+
+    @Property()
+    private final Long timestamp;
+
+    @Property()
+    private final String temperature;
+
+    @Property()
+    private final String humidity;
+
+    @Property()
+    private final String status;
+
+    public BasilReading(
+            @JsonProperty("qrCode") String qrCode,
+            @JsonProperty("gps") String gps,
+            @JsonProperty("timestamp") Long timestamp,
+            @JsonProperty("temperature") String temperature,
+            @JsonProperty("humidity") String humidity,
+            @JsonProperty("status") String status) {
+        this.qrCode = qrCode;
+        this.gps = gps;
+        this.timestamp = timestamp;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.status = status;
+    }
+
+    public String getQrCode() {
+        return qrCode;
+    }
+
+    public String getGps() {
+        return gps;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getTemperature() {
+        return temperature;
+    }
+
+    public String getHumidity() {
+        return humidity;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "BasilReading{" +
+                "qrCode='" + qrCode + '\'' +
+                ", gps='" + gps + '\'' +
+                ", timestamp=" + timestamp +
+                ", temperature='" + temperature + '\'' +
+                ", humidity='" + humidity + '\'' +
+                ", status='" + status + '\'' +
+                '}';
+    }
+}
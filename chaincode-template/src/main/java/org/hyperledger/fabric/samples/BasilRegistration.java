@@ -0,0 +1,55 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+// One new plant submitted through createBasilsBatch
+@DataType()
+public final class BasilRegistration {
+
+    @Property()
+    private final String qrCode;
+
+    @Property()
+    private final String origin;
+
+    public BasilRegistration(
+            @JsonProperty("qrCode") String qrCode,
+            @JsonProperty("origin") String origin) {
+        this.qrCode = qrCode;
+        this.origin = origin;
+    }
+
+    public String getQrCode() {
+        return qrCode;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BasilRegistration)) return false;
+        BasilRegistration that = (BasilRegistration) o;
+        return Objects.equals(qrCode, that.qrCode) &&
+               Objects.equals(origin, that.origin);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(qrCode, origin);
+    }
+
+    @Override
+    public String toString() {
+        return "BasilRegistration{" +
+                "qrCode='" + qrCode + '\'' +
+                ", origin='" + origin + '\'' +
+                '}';
+    }
+}
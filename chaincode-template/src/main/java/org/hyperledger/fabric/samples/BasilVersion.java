@@ -0,0 +1,137 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+// One committed version of a basil record as found in the ledger history.
+// As a delta, fields that did not change since the previous (older) version are null, and
+// transportLegs only holds the legs that records with an embedded history gained in this version.
+@DataType()
+public final class BasilVersion {
+
+    @Property()
+    private final String txId;
+
+    @Property()
+    private final Long timestamp;
+
+    @Property()
+    private final boolean deleted;
+
+    @Property()
+    private final String origin;
+
+    @Property()
+    private final Long creationTimestamp;
+
+    @Property()
+    private final String currentStatus;
+
+    @Property()
+    private final String currentGps;
+
+    @Property()
+    private final Owner currentOwner;
+
+    @Property()
+    private final Integer legCount;
+
+    @Property()
+    private final List<BasilLeg> transportLegs;
+
+    public BasilVersion(
+            @JsonProperty("txId") String txId,
+            @JsonProperty("timestamp") Long timestamp,
+            @JsonProperty("deleted") boolean deleted,
+            @JsonProperty("origin") String origin,
+            @JsonProperty("creationTimestamp") Long creationTimestamp,
+            @JsonProperty("currentStatus") String currentStatus,
+            @JsonProperty("currentGps") String currentGps,
+            @JsonProperty("currentOwner") Owner currentOwner,
+            @JsonProperty("legCount") Integer legCount,
+            @JsonProperty("transportLegs") List<BasilLeg> transportLegs) {
+        this.txId = txId;
+        this.timestamp = timestamp;
+        this.deleted = deleted;
+        this.origin = origin;
+        this.creationTimestamp = creationTimestamp;
+        this.currentStatus = currentStatus;
+        this.currentGps = currentGps;
+        this.currentOwner = currentOwner;
+        this.legCount = legCount;
+        this.transportLegs = transportLegs;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public Long getCreationTimestamp() {
+        return creationTimestamp;
+    }
+
+    public String getCurrentStatus() {
+        return currentStatus;
+    }
+
+    public String getCurrentGps() {
+        return currentGps;
+    }
+
+    public Owner getCurrentOwner() {
+        return currentOwner;
+    }
+
+    public Integer getLegCount() {
+        return legCount;
+    }
+
+    public List<BasilLeg> getTransportLegs() {
+        return transportLegs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BasilVersion)) return false;
+        BasilVersion version = (BasilVersion) o;
+        return Objects.equals(txId, version.txId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(txId);
+    }
+
+    @Override
+    public String toString() {
+        return "BasilVersion{" +
+                "txId='" + txId + '\'' +
+                ", timestamp=" + timestamp +
+                ", deleted=" + deleted +
+                ", origin='" + origin + '\'' +
+                ", creationTimestamp=" + creationTimestamp +
+                ", currentStatus='" + currentStatus + '\'' +
+                ", currentGps='" + currentGps + '\'' +
+                ", currentOwner=" + currentOwner +
+                ", legCount=" + legCount +
+                ", transportLegs=" + transportLegs +
+                '}';
+    }
+}
@@ -0,0 +1,56 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+// One page of ledger history, newest version first; an empty bookmark means there are no more versions
+@DataType()
+public final class BasilVersionPage {
+
+    @Property()
+    private final List<BasilVersion> versions;
+
+    @Property()
+    private final String bookmark;
+
+    public BasilVersionPage(
+            @JsonProperty("versions") List<BasilVersion> versions,
+            @JsonProperty("bookmark") String bookmark) {
+        this.versions = versions;
+        this.bookmark = bookmark;
+    }
+
+    public List<BasilVersion> getVersions() {
+        return versions;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BasilVersionPage)) return false;
+        BasilVersionPage page = (BasilVersionPage) o;
+        return Objects.equals(versions, page.versions) &&
+               Objects.equals(bookmark, page.bookmark);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(versions, bookmark);
+    }
+
+    @Override
+    public String toString() {
+        return "BasilVersionPage{" +
+                "versions=" + versions +
+                ", bookmark='" + bookmark + '\'' +
+                '}';
+    }
+}
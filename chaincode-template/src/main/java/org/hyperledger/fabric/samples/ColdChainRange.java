@@ -0,0 +1,86 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+// Inclusive temperature (Celsius) and relative humidity (%) limits; readings outside them are excursions
+@DataType()
+public final class ColdChainRange {
+
+    // Used until setColdChainRange is submitted: basil chills below 10 C and wilts in warm, dry air
+    static final ColdChainRange DEFAULT = new ColdChainRange(10.0, 25.0, 40.0, 95.0);
+
+    @Property()
+    private final double minTemperature;
+
+    @Property()
+    private final double maxTemperature;
+
+    @Property()
+    private final double minHumidity;
+
+    @Property()
+    private final double maxHumidity;
+
+    public ColdChainRange(
+            @JsonProperty("minTemperature") double minTemperature,
+            @JsonProperty("maxTemperature") double maxTemperature,
+            @JsonProperty("minHumidity") double minHumidity,
+            @JsonProperty("maxHumidity") double maxHumidity) {
+        this.minTemperature = minTemperature;
+        this.maxTemperature = maxTemperature;
+        this.minHumidity = minHumidity;
+        this.maxHumidity = maxHumidity;
+    }
+
+    public double getMinTemperature() {
+        return minTemperature;
+    }
+
+    public double getMaxTemperature() {
+        return maxTemperature;
+    }
+
+    public double getMinHumidity() {
+        return minHumidity;
+    }
+
+    public double getMaxHumidity() {
+        return maxHumidity;
+    }
+
+    // A missing or unreadable value never counts as outside the range
+    boolean isOutside(Double temperature, Double humidity) {
+        return (temperature != null && (temperature < minTemperature || temperature > maxTemperature))
+                || (humidity != null && (humidity < minHumidity || humidity > maxHumidity));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ColdChainRange)) return false;
+        ColdChainRange range = (ColdChainRange) o;
+        return Double.compare(minTemperature, range.minTemperature) == 0 &&
+               Double.compare(maxTemperature, range.maxTemperature) == 0 &&
+               Double.compare(minHumidity, range.minHumidity) == 0 &&
+               Double.compare(maxHumidity, range.maxHumidity) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(minTemperature, maxTemperature, minHumidity, maxHumidity);
+    }
+
+    @Override
+    public String toString() {
+        return "ColdChainRange{" +
+                "minTemperature=" + minTemperature +
+                ", maxTemperature=" + maxTemperature +
+                ", minHumidity=" + minHumidity +
+                ", maxHumidity=" + maxHumidity +
+                '}';
+    }
+}
@@ -0,0 +1,237 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+import com.owlike.genson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+// Running temperature and humidity aggregates of a plant, or of every reading taken while an organization
+// owned the plant. Summaries merge, so partial ones written by concurrent transactions add up later.
+@DataType()
+public final class ColdChainSummary {
+
+    static final ColdChainSummary EMPTY =
+            new ColdChainSummary(0L, 0L, null, null, 0.0, 0L, null, null, 0.0, 0L, 0L, null, null, null);
+
+    @Property()
+    private final long readings;
+
+    @Property()
+    private final long temperatureCount; // Readings whose temperature could be parsed
+
+    @Property()
+    private final Double temperatureMin;
+
+    @Property()
+    private final Double temperatureMax;
+
+    @Property()
+    private final double temperatureSum;
+
+    @Property()
+    private final long humidityCount; // Readings whose humidity could be parsed
+
+    @Property()
+    private final Double humidityMin;
+
+    @Property()
+    private final Double humidityMax;
+
+    @Property()
+    private final double humiditySum;
+
+    @Property()
+    private final long excursions; // Times the readings left the cold-chain range
+
+    @Property()
+    private final long timeOutside; // Between an out-of-range reading and the next one, in timestamp units
+
+    @Property()
+    private final Long lastExcursion; // Timestamp of the latest out-of-range reading
+
+    @Property()
+    private final Long excursionStart; // Plants only: start of the excursion in progress, null when in range
+
+    @Property()
+    private final Long lastTimestamp; // Latest reading timestamp
+
+    public ColdChainSummary(
+            @JsonProperty("readings") long readings,
+            @JsonProperty("temperatureCount") long temperatureCount,
+            @JsonProperty("temperatureMin") Double temperatureMin,
+            @JsonProperty("temperatureMax") Double temperatureMax,
+            @JsonProperty("temperatureSum") double temperatureSum,
+            @JsonProperty("humidityCount") long humidityCount,
+            @JsonProperty("humidityMin") Double humidityMin,
+            @JsonProperty("humidityMax") Double humidityMax,
+            @JsonProperty("humiditySum") double humiditySum,
+            @JsonProperty("excursions") long excursions,
+            @JsonProperty("timeOutside") long timeOutside,
+            @JsonProperty("lastExcursion") Long lastExcursion,
+            @JsonProperty("excursionStart") Long excursionStart,
+            @JsonProperty("lastTimestamp") Long lastTimestamp) {
+        this.readings = readings;
+        this.temperatureCount = temperatureCount;
+        this.temperatureMin = temperatureMin;
+        this.temperatureMax = temperatureMax;
+        this.temperatureSum = temperatureSum;
+        this.humidityCount = humidityCount;
+        this.humidityMin = humidityMin;
+        this.humidityMax = humidityMax;
+        this.humiditySum = humiditySum;
+        this.excursions = excursions;
+        this.timeOutside = timeOutside;
+        this.lastExcursion = lastExcursion;
+        this.excursionStart = excursionStart;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    // The contribution of one reading; excursions and timeOutside depend on the readings before it
+    static ColdChainSummary ofReading(long timestamp, Double temperature, Double humidity, boolean outside,
+            long excursions, long timeOutside) {
+        return new ColdChainSummary(1L,
+                temperature != null ? 1L : 0L, temperature, temperature, temperature != null ? temperature : 0.0,
+                humidity != null ? 1L : 0L, humidity, humidity, humidity != null ? humidity : 0.0,
+                excursions, timeOutside, outside ? timestamp : null, null, timestamp);
+    }
+
+    // Both summaries together; the excursion in progress is kept from this one
+    ColdChainSummary merge(ColdChainSummary other) {
+        return new ColdChainSummary(
+                readings + other.readings,
+                temperatureCount + other.temperatureCount,
+                min(temperatureMin, other.temperatureMin),
+                max(temperatureMax, other.temperatureMax),
+                temperatureSum + other.temperatureSum,
+                humidityCount + other.humidityCount,
+                min(humidityMin, other.humidityMin),
+                max(humidityMax, other.humidityMax),
+                humiditySum + other.humiditySum,
+                excursions + other.excursions,
+                timeOutside + other.timeOutside,
+                max(lastExcursion, other.lastExcursion),
+                excursionStart,
+                max(lastTimestamp, other.lastTimestamp));
+    }
+
+    ColdChainSummary withExcursionStart(Long start) {
+        return new ColdChainSummary(readings, temperatureCount, temperatureMin, temperatureMax, temperatureSum,
+                humidityCount, humidityMin, humidityMax, humiditySum, excursions, timeOutside, lastExcursion,
+                start, lastTimestamp);
+    }
+
+    public long getReadings() {
+        return readings;
+    }
+
+    public long getTemperatureCount() {
+        return temperatureCount;
+    }
+
+    public Double getTemperatureMin() {
+        return temperatureMin;
+    }
+
+    public Double getTemperatureMax() {
+        return temperatureMax;
+    }
+
+    public double getTemperatureSum() {
+        return temperatureSum;
+    }
+
+    public Double getTemperatureMean() {
+        return temperatureCount > 0 ? temperatureSum / temperatureCount : null;
+    }
+
+    public long getHumidityCount() {
+        return humidityCount;
+    }
+
+    public Double getHumidityMin() {
+        return humidityMin;
+    }
+
+    public Double getHumidityMax() {
+        return humidityMax;
+    }
+
+    public double getHumiditySum() {
+        return humiditySum;
+    }
+
+    public Double getHumidityMean() {
+        return humidityCount > 0 ? humiditySum / humidityCount : null;
+    }
+
+    public long getExcursions() {
+        return excursions;
+    }
+
+    public long getTimeOutside() {
+        return timeOutside;
+    }
+
+    public Long getLastExcursion() {
+        return lastExcursion;
+    }
+
+    public Long getExcursionStart() {
+        return excursionStart;
+    }
+
+    public Long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    private static <T extends Comparable<T>> T min(T a, T b) {
+        return a == null ? b : b == null ? a : a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static <T extends Comparable<T>> T max(T a, T b) {
+        return a == null ? b : b == null ? a : a.compareTo(b) >= 0 ? a : b;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ColdChainSummary)) return false;
+        ColdChainSummary summary = (ColdChainSummary) o;
+        return readings == summary.readings &&
+               temperatureCount == summary.temperatureCount &&
+               Objects.equals(temperatureMin, summary.temperatureMin) &&
+               Objects.equals(temperatureMax, summary.temperatureMax) &&
+               Double.compare(temperatureSum, summary.temperatureSum) == 0 &&
+               humidityCount == summary.humidityCount &&
+               Objects.equals(humidityMin, summary.humidityMin) &&
+               Objects.equals(humidityMax, summary.humidityMax) &&
+               Double.compare(humiditySum, summary.humiditySum) == 0 &&
+               excursions == summary.excursions &&
+               timeOutside == summary.timeOutside &&
+               Objects.equals(lastExcursion, summary.lastExcursion) &&
+               Objects.equals(excursionStart, summary.excursionStart) &&
+               Objects.equals(lastTimestamp, summary.lastTimestamp);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(readings, temperatureCount, temperatureMin, temperatureMax, temperatureSum,
+                humidityCount, humidityMin, humidityMax, humiditySum, excursions, timeOutside, lastExcursion,
+                excursionStart, lastTimestamp);
+    }
+
+    @Override
+    public String toString() {
+        return "ColdChainSummary{" +
+                "readings=" + readings +
+                ", temperature=" + temperatureMin + ".." + temperatureMax + " over " + temperatureCount +
+                ", humidity=" + humidityMin + ".." + humidityMax + " over " + humidityCount +
+                ", excursions=" + excursions +
+                ", timeOutside=" + timeOutside +
+                ", lastExcursion=" + lastExcursion +
+                ", excursionStart=" + excursionStart +
+                ", lastTimestamp=" + lastTimestamp +
+                '}';
+    }
+}
@@ -0,0 +1,126 @@
+package org.hyperledger.fabric.samples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Geohash encoding of "lat,lon" GPS strings, and the cells that cover a bounding box.
+ *
+ * A geohash interleaves longitude and latitude bits, longitude first, and writes them five at a
+ * time in base 32. Every character narrows the cell, so all points inside a cell share its hash as
+ * a prefix and a box can be searched by scanning the prefixes of the few cells that cover it.
+ */
+final class Geohash {
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private Geohash() {
+    }
+
+    // {lat, lon} from "lat,lon", or null when the string is not a valid coordinate pair
+    static double[] parse(String gps) {
+        if (gps == null) {
+            return null;
+        }
+        int comma = gps.indexOf(',');
+        if (comma < 0 || gps.indexOf(',', comma + 1) >= 0) {
+            return null;
+        }
+        try {
+            double lat = Double.parseDouble(gps.substring(0, comma).trim());
+            double lon = Double.parseDouble(gps.substring(comma + 1).trim());
+            if (!(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+                return null;
+            }
+            return new double[] {lat, lon};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static String encode(double lat, double lon, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    // Sorted geohashes of the longest length, up to maxPrecision, whose cells cover the box in at most maxCells
+    static List<String> cover(double minLat, double minLon, double maxLat, double maxLon, int maxPrecision,
+            int maxCells) {
+        for (int precision = maxPrecision; precision > 1; precision--) {
+            List<String> cells = cells(minLat, minLon, maxLat, maxLon, precision, maxCells);
+            if (cells != null) {
+                return cells;
+            }
+        }
+        // Precision 1 splits the world into 32 cells
+        return cells(minLat, minLon, maxLat, maxLon, 1, Integer.MAX_VALUE);
+    }
+
+    static boolean contains(double[] point, double minLat, double minLon, double maxLat, double maxLon) {
+        return point[0] >= minLat && point[0] <= maxLat && point[1] >= minLon && point[1] <= maxLon;
+    }
+
+    // Walk the grid of cells at this precision row by row; null when it takes more than maxCells
+    private static List<String> cells(double minLat, double minLon, double maxLat, double maxLon, int precision,
+            int maxCells) {
+        int bits = precision * 5;
+        long latCells = 1L << (bits / 2);
+        long lonCells = 1L << ((bits + 1) / 2);
+        double cellHeight = 180.0 / latCells;
+        double cellWidth = 360.0 / lonCells;
+
+        long firstRow = cellIndex(minLat, -90, cellHeight, latCells);
+        long lastRow = cellIndex(maxLat, -90, cellHeight, latCells);
+        long firstColumn = cellIndex(minLon, -180, cellWidth, lonCells);
+        long lastColumn = cellIndex(maxLon, -180, cellWidth, lonCells);
+        if ((lastRow - firstRow + 1) * (lastColumn - firstColumn + 1) > maxCells) {
+            return null;
+        }
+
+        TreeSet<String> cells = new TreeSet<>();
+        for (long r = firstRow; r <= lastRow; r++) {
+            for (long c = firstColumn; c <= lastColumn; c++) {
+                cells.add(encode(-90 + (r + 0.5) * cellHeight, -180 + (c + 0.5) * cellWidth, precision));
+            }
+        }
+        return new ArrayList<>(cells);
+    }
+
+    // Position of the cell holding value along one axis; the upper edge belongs to the last cell
+    private static long cellIndex(double value, double origin, double cellSize, long count) {
+        return Math.min(count - 1, (long) Math.floor((value - origin) / cellSize));
+    }
+}
@@ -0,0 +1,168 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+
+import com.owlike.genson.Genson;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BasilCodecTest {
+
+    private static final Owner GROWER = new Owner("Org1MSP", "Greenhouse");
+    private static final Owner CARRIER = new Owner("Org3MSP", "Truck 7");
+
+    private final Genson genson = new Genson();
+    private final BasilCodec codec = new BasilCodec(genson);
+
+    @ParameterizedTest
+    @ValueSource(strings = {"4.5", "-0.25", "0", "21,5 C", "80%", "N/A", "", "007", "1e3", "4.50",
+            "123456789012345678901"})
+    void readingsDecodeToTheExactStringWritten(String reading) {
+        BasilLeg leg = new BasilLeg(100L, "52.0907,5.1214", reading, reading, GROWER);
+
+        BasilLeg decoded = codec.decodeLeg(codec.encode(leg));
+
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(leg);
+    }
+
+    @Test
+    void plainDecimalsAreStoredAsNumbersAndEverythingElseAsText() {
+        byte[] decimal = codec.encode(new BasilLeg(100L, "x", "21.75", null, GROWER));
+        byte[] text = codec.encode(new BasilLeg(100L, "x", "21.75 C", null, GROWER));
+
+        assertThat(new String(decimal, StandardCharsets.ISO_8859_1)).doesNotContain("21.75");
+        assertThat(new String(text, StandardCharsets.ISO_8859_1)).contains("21.75 C");
+        assertThat(decimal.length).isLessThan(text.length);
+    }
+
+    @Test
+    void nullReadingsSurviveTheRoundTrip() {
+        BasilLeg leg = new BasilLeg(null, null, null, null, GROWER);
+
+        assertThat(codec.decodeLeg(codec.encode(leg))).usingRecursiveComparison().isEqualTo(leg);
+    }
+
+    @Test
+    void headerRoundTripKeepsItsLegCounters() {
+        Basil basil = new Basil("qr-1", 1L, "NL", "In Transit", "52.0,5.0", CARRIER, null, 600, 512);
+        Basil fresh = new Basil("qr-2", 1L, "NL", "Created", "NL", GROWER, null, 1, null);
+
+        assertThat(codec.decodeBasil(codec.encode(basil))).usingRecursiveComparison().isEqualTo(basil);
+        assertThat(codec.decodeBasil(codec.encode(fresh))).usingRecursiveComparison().isEqualTo(fresh);
+    }
+
+    @Test
+    void embeddedHistoryRoundTripsWithEveryOwner() {
+        List<BasilLeg> history = Arrays.asList(
+                new BasilLeg(1L, "NL", "N/A", "N/A", GROWER),
+                new BasilLeg(2L, "52.0,5.0", "4.5", "61.2", CARRIER));
+        Basil basil = new Basil("qr-1", 1L, "NL", "In Transit", "52.0,5.0", CARRIER, history, null, null);
+
+        assertThat(codec.decodeBasil(codec.encode(basil))).usingRecursiveComparison().isEqualTo(basil);
+    }
+
+    @Test
+    void archiveChunkRoundTrips() {
+        List<BasilLeg> legs = Arrays.asList(
+                new BasilLeg(1L, "NL", "N/A", "N/A", GROWER),
+                new BasilLeg(2L, "52.0,5.0", "4.5", "61.2", CARRIER),
+                new BasilLeg(3L, "52.1,5.1", "5", "60 %", CARRIER));
+
+        assertThat(codec.decodeArchive(codec.encodeArchive(legs))).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(legs);
+    }
+
+    @Test
+    void archiveChunksAreWrittenUncompressed() {
+        List<BasilLeg> legs = Arrays.asList(
+                new BasilLeg(1L, "NL", "N/A", "N/A", GROWER),
+                new BasilLeg(2L, "52.0,5.0", "4.5", "61.2", CARRIER));
+
+        byte[] chunk = codec.encodeArchive(legs);
+
+        // Every endorser has to write the same bytes, so the leg text is stored as it is
+        assertThat(new String(chunk, StandardCharsets.UTF_8)).contains("Greenhouse", "Truck 7", "52.0,5.0");
+        assertThat(codec.encodeArchive(legs)).isEqualTo(chunk);
+    }
+
+    @Test
+    void deflatedChunksFromEarlierVersionsStillDecode() {
+        List<BasilLeg> legs = Arrays.asList(
+                new BasilLeg(1L, "NL", "N/A", "N/A", GROWER),
+                new BasilLeg(2L, "52.0,5.0", "4.5", "61.2", CARRIER));
+        byte[] plain = codec.encodeArchive(legs);
+        byte[] body = Arrays.copyOfRange(plain, 2, plain.length);
+        assertThat(body.length).isLessThan(128);
+
+        // Version, the deflated kind, the uncompressed length as a one byte varint, then the deflated body
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        deflated.write(BasilCodec.VERSION_1);
+        deflated.write(3);
+        deflated.write(body.length);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(body);
+        deflater.finish();
+        byte[] buffer = new byte[256];
+        while (!deflater.finished()) {
+            deflated.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        assertThat(codec.decodeArchive(deflated.toByteArray())).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(legs);
+    }
+
+    @Test
+    void legacyJsonRecordsAreDetectedAndDecoded() {
+        String json = "{\"qrCode\":\"qr-1\",\"creationTimestamp\":1,\"origin\":\"NL\",\"currentStatus\":\"Created\","
+                + "\"currentGps\":\"NL\",\"currentOwner\":{\"orgId\":\"Org1MSP\",\"user\":\"Greenhouse\"},"
+                + "\"transportHistory\":[{\"timestamp\":1,\"gps\":\"NL\",\"temperature\":\"N/A\","
+                + "\"humidity\":\"N/A\",\"owner\":{\"orgId\":\"Org1MSP\",\"user\":\"Greenhouse\"}}]}";
+
+        Basil basil = codec.decodeBasil(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(basil.getLegCount()).isNull();
+        assertThat(basil.getTransportHistory()).extracting(BasilLeg::getGps).containsExactly("NL");
+        assertThat(basil.getCurrentOwner().getOrgId()).isEqualTo("Org1MSP");
+    }
+
+    @Test
+    void legacyJsonLegsAreDecoded() {
+        String json = "{\"timestamp\":7,\"gps\":\"NL\",\"temperature\":\"4.5\",\"humidity\":\"60\","
+                + "\"owner\":{\"orgId\":\"Org1MSP\",\"user\":\"Greenhouse\"}}";
+
+        BasilLeg leg = codec.decodeLeg(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(leg.getTimestamp()).isEqualTo(7L);
+        assertThat(leg.getTemperature()).isEqualTo("4.5");
+    }
+
+    @Test
+    void binaryRecordsNeverLookLikeJson() {
+        byte[] encoded = codec.encode(new Basil("{qr", 1L, "NL", "Created", "NL", GROWER, null, 1, null));
+
+        assertThat(encoded[0]).isEqualTo(BasilCodec.VERSION_1);
+    }
+
+    @Test
+    void unknownVersionsAndKindsAreRejected() {
+        byte[] leg = codec.encode(new BasilLeg(1L, "NL", "4", "60", GROWER));
+        byte[] future = leg.clone();
+        future[0] = 9;
+
+        assertThatThrownBy(() -> codec.decodeBasil(leg)).isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("kind");
+        assertThatThrownBy(() -> codec.decodeLeg(future)).isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("version");
+    }
+}
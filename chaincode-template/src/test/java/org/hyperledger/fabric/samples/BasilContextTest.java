@@ -0,0 +1,50 @@
+package org.hyperledger.fabric.samples;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BasilContextTest {
+
+    private final TestLedger ledger = new TestLedger();
+
+    @Test
+    void headerCachedDecodedCanBeReadRaw() {
+        ledger.create("qr-1");
+
+        byte[] raw = ledger.evaluate(ctx -> {
+            ctx.getBasil("qr-1");
+            return ctx.getState("qr-1");
+        });
+
+        assertThat(raw).isEqualTo(ledger.stub.getState("qr-1"));
+    }
+
+    @Test
+    void keyCachedRawCanBeReadDecoded() {
+        ledger.create("qr-1");
+
+        Basil basil = ledger.evaluate(ctx -> {
+            ctx.getState("qr-1");
+            return ctx.getBasil("qr-1");
+        });
+
+        assertThat(basil.getQrCode()).isEqualTo("qr-1");
+        assertThat(basil.getCurrentStatus()).isEqualTo("Created");
+    }
+
+    @Test
+    void bufferedHeaderIsReadRawAsItWillBeWritten() {
+        ledger.create("qr-1");
+
+        ledger.run(ctx -> {
+            Basil basil = ctx.getBasil("qr-1");
+            ctx.putBasil(new Basil(basil.getQrCode(), basil.getCreationTimestamp(), basil.getOrigin(), "Sold",
+                    basil.getCurrentGps(), basil.getCurrentOwner(), null, basil.getLegCount(),
+                    basil.getArchivedLegCount()));
+            byte[] buffered = ctx.getState("qr-1");
+            assertThat(new BasilCodec(ledger.genson).decodeBasil(buffered).getCurrentStatus()).isEqualTo("Sold");
+            assertThat(ctx.getStateReads()).isEqualTo(1);
+        });
+    }
+}
@@ -0,0 +1,243 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.Test;
+
+import com.owlike.genson.GenericType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BasilContractTest {
+
+    private final TestLedger ledger = new TestLedger();
+
+    @Test
+    void createdPlantStartsWithItsOriginLeg() {
+        ledger.create("qr-1");
+
+        Basil basil = ledger.evaluate(ctx -> ledger.contract.readBasil(ctx, "qr-1"));
+
+        assertThat(basil.getCurrentStatus()).isEqualTo("Created");
+        assertThat(basil.getCurrentOwner().getOrgId()).isEqualTo(TestLedger.GROWER_MSP);
+        assertThat(basil.getTransportHistory()).extracting(BasilLeg::getGps).containsExactly("Greenhouse A");
+    }
+
+    @Test
+    void readingsAppendLegsAndMoveTheHeader() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", 100L, 3);
+
+        Basil basil = ledger.evaluate(ctx -> ledger.contract.readBasil(ctx, "qr-1"));
+
+        assertThat(basil.getCurrentStatus()).isEqualTo("In Transit");
+        assertThat(basil.getTransportHistory()).extracting(BasilLeg::getTimestamp)
+                .hasSize(4)
+                .endsWith(100L, 101L, 102L);
+    }
+
+    @Test
+    void onlyTheOwnerMayUpdate() {
+        ledger.create("qr-1");
+        ledger.stub.setMspId("Org3MSP");
+
+        assertThatThrownBy(() -> ledger.update("qr-1", 100L, 1))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Only the current owner");
+    }
+
+    @Test
+    void batchWithAReadingWithoutStatusWritesNothing() {
+        ledger.create("qr-1");
+        ledger.create("qr-2");
+        BasilReading valid = TestLedger.reading("qr-1", 100L, "4", "60");
+        BasilReading noStatus = new BasilReading("qr-2", "52.0907,5.1214", 100L, "4", "60", "");
+
+        assertThatThrownBy(() -> ledger.update(valid, noStatus))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("status");
+        assertThatThrownBy(() -> ledger.run(ctx ->
+                ledger.contract.updateBasilState(ctx, "qr-1", null, 100L, "4", "60", "In Transit")))
+                .isInstanceOf(ChaincodeException.class);
+
+        Basil basil = ledger.evaluate(ctx -> ledger.contract.readBasil(ctx, "qr-1"));
+        assertThat(basil.getCurrentStatus()).isEqualTo("Created");
+        assertThat(basil.getTransportHistory()).hasSize(1);
+    }
+
+    @Test
+    void supermarketCannotCreate() {
+        ledger.stub.setMspId(TestLedger.SUPERMARKET_MSP);
+
+        assertThatThrownBy(() -> ledger.create("qr-1")).isInstanceOf(ChaincodeException.class);
+    }
+
+    @Test
+    void deleteRemovesEveryKeyOfThePlant() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", 100L, 3);
+        ledger.run(ctx -> ledger.contract.deleteBasil(ctx, "qr-1"));
+
+        assertThatThrownBy(() -> ledger.evaluate(ctx -> ledger.contract.readBasil(ctx, "qr-1")))
+                .isInstanceOf(ChaincodeException.class);
+        assertThat(ledger.stub.getStateByPartialCompositeKey("leg", "qr-1")).isEmpty();
+        assertThat(ledger.stub.getStateByPartialCompositeKey("coldchain", "qr-1")).isEmpty();
+    }
+
+    @Test
+    void ledgerHistoryListsTheLegsEachVersionHad() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", 100L, 1);
+        ledger.update("qr-1", 200L, 2);
+
+        String json = ledger.evaluate(ctx -> ledger.contract.getBasilHistory(ctx, "qr-1"));
+        List<Map<String, Object>> versions = ledger.genson.deserialize(json,
+                new GenericType<List<Map<String, Object>>>() { });
+
+        assertThat(json).doesNotContain("legCount");
+        assertThat(versions).extracting(version -> ((List<?>) version.get("transportHistory")).size())
+                .containsExactly(4, 2, 1);
+        assertThat(versions.get(0)).containsKeys("qrCode", "currentStatus", "currentOwner", "timestamp");
+    }
+
+    @Test
+    void versionsFromBeforeADeleteListNoLegs() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", 100L, 1);
+        ledger.run(ctx -> ledger.contract.deleteBasil(ctx, "qr-1"));
+        ledger.create("qr-1");
+
+        String json = ledger.evaluate(ctx -> ledger.contract.getBasilHistory(ctx, "qr-1"));
+        List<Map<String, Object>> versions = ledger.genson.deserialize(json,
+                new GenericType<List<Map<String, Object>>>() { });
+
+        assertThat(versions).extracting(version -> ((List<?>) version.get("transportHistory")).size())
+                .containsExactly(1, 0, 0);
+    }
+
+    @Test
+    void listBasilsPagesOverEveryPlantIncludingUnindexedLegacyRecords() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", 100L, 2);
+        ledger.create("qr-2");
+        ledger.putLegacy("qr-0", 0);
+
+        BasilPage first = ledger.evaluate(ctx -> ledger.contract.listBasils(ctx, 2, ""));
+        BasilPage second = ledger.evaluate(ctx -> ledger.contract.listBasils(ctx, 2, first.getBookmark()));
+
+        assertThat(first.getBasils()).extracting(Basil::getQrCode).containsExactly("qr-0", "qr-1");
+        assertThat(first.getBookmark()).isNotEmpty();
+        assertThat(second.getBasils()).extracting(Basil::getQrCode).containsExactly("qr-2");
+        assertThat(second.getBookmark()).isEmpty();
+    }
+
+    @Test
+    void boundingBoxQueryFollowsThePlantsAsTheyMove() {
+        for (String qrCode : List.of("qr-1", "qr-2", "qr-3")) {
+            ledger.create(qrCode);
+        }
+        ledger.update(at("qr-1", 100L, "52.0907,5.1214"), at("qr-2", 100L, "52.1,5.15"),
+                at("qr-3", 100L, "48.8566,2.3522"));
+
+        assertThat(inBox(52.0, 5.0, 52.2, 5.2)).containsExactlyInAnyOrder("qr-1", "qr-2");
+
+        ledger.update(at("qr-1", 200L, "48.8566,2.3522"));
+        assertThat(inBox(52.0, 5.0, 52.2, 5.2)).containsExactly("qr-2");
+        assertThat(inBox(48.0, 2.0, 49.0, 3.0)).containsExactlyInAnyOrder("qr-1", "qr-3");
+    }
+
+    @Test
+    void invalidBoundingBoxIsRejected() {
+        assertThatThrownBy(() -> ledger.evaluate(ctx ->
+                ledger.contract.queryBasilsInBoundingBox(ctx, 53.0, 5.0, 52.0, 6.0, 10, "")))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Invalid bounding box");
+    }
+
+    @Test
+    void readBasilsListsMissingCodesAndReturnsRepeatedOnesOnce() {
+        ledger.create("qr-1");
+        ledger.create("qr-2");
+
+        BasilReadResult result = readBasils("[\"qr-2\",\"qr-9\",\"qr-1\",\"qr-2\"]", false);
+
+        assertThat(result.getBasils()).extracting(Basil::getQrCode).containsExactly("qr-2", "qr-1");
+        assertThat(result.getMissing()).containsExactly("qr-9");
+    }
+
+    @Test
+    void readBasilsOnlyReadsTheLegsWithHistory() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", 100L, 2);
+
+        Basil header = readBasils("[\"qr-1\"]", false).getBasils().get(0);
+        Basil full = readBasils("[\"qr-1\"]", true).getBasils().get(0);
+
+        assertThat(header.getTransportHistory()).isNull();
+        assertThat(header.getCurrentStatus()).isEqualTo("In Transit");
+        assertThat(full.getTransportHistory()).extracting(BasilLeg::getTimestamp).hasSize(3).endsWith(100L, 101L);
+    }
+
+    @Test
+    void readBasilsRefusesMoreThanTheBatchLimit() {
+        StringBuilder qrCodes = new StringBuilder("[");
+        for (int i = 0; i <= 1000; i++) {
+            qrCodes.append(i == 0 ? "" : ",").append("\"qr-").append(i).append('"');
+        }
+        String json = qrCodes.append(']').toString();
+
+        assertThatThrownBy(() -> readBasils(json, false))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Too many QR codes in one read: 1001 > 1000");
+    }
+
+    @Test
+    void readBasilsWithHistoryStopsAtTheSizeLimit() {
+        // Each inline leg is over 100 bytes of JSON, so 5000 of them pass 512 KiB
+        ledger.putLegacy("legacy", 5000);
+
+        assertThat(readBasils("[\"legacy\"]", false).getBasils()).hasSize(1);
+        assertThatThrownBy(() -> readBasils("[\"legacy\"]", true))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("exceed");
+    }
+
+    @Test
+    void malformedJsonArgumentsFailAsChaincodeErrors() {
+        assertThatThrownBy(() -> readBasils("[\"qr-1\"", false))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Invalid QR codes");
+        assertThatThrownBy(() -> readBasils("{\"qrCode\":1}", false))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Invalid QR codes");
+        assertThatThrownBy(() -> ledger.submit(ctx -> ledger.contract.updateBasilStatesBatch(ctx, "not json")))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Invalid readings");
+    }
+
+    private BasilReadResult readBasils(String qrCodesJson, boolean withHistory) {
+        return ledger.evaluate(ctx -> ledger.contract.readBasils(ctx, qrCodesJson, withHistory));
+    }
+
+    // Walks every page one plant at a time, so the bookmark has to carry over between cells
+    private List<String> inBox(double minLat, double minLon, double maxLat, double maxLon) {
+        List<String> qrCodes = new ArrayList<>();
+        String bookmark = "";
+        do {
+            String current = bookmark;
+            BasilPage page = ledger.evaluate(ctx ->
+                    ledger.contract.queryBasilsInBoundingBox(ctx, minLat, minLon, maxLat, maxLon, 1, current));
+            page.getBasils().forEach(basil -> qrCodes.add(basil.getQrCode()));
+            bookmark = page.getBookmark();
+        } while (!bookmark.isEmpty());
+        return qrCodes;
+    }
+
+    private static BasilReading at(String qrCode, long timestamp, String gps) {
+        return new BasilReading(qrCode, gps, timestamp, "4.5", "61.2", "In Transit");
+    }
+}
@@ -0,0 +1,47 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.execution.JSONTransactionSerializer;
+import org.hyperledger.fabric.contract.metadata.TypeSchema;
+import org.hyperledger.fabric.contract.routing.impl.TypeRegistryImpl;
+import org.junit.jupiter.api.Test;
+
+import com.owlike.genson.Genson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BasilJsonTest {
+
+    private final Basil basil = new Basil("qr-1", 1L, "NL", "In Transit", "52.0,5.0",
+            new Owner("Org1MSP", "Greenhouse"), Collections.emptyList(), 3, 256);
+
+    @Test
+    void storageCountersStayOutOfTransactionResults() {
+        TypeRegistryImpl.getInstance().addDataType(Basil.class);
+        TypeRegistryImpl.getInstance().addDataType(Owner.class);
+        TypeRegistryImpl.getInstance().addDataType(BasilLeg.class);
+        JSONTransactionSerializer serializer = new JSONTransactionSerializer();
+
+        String json = new String(serializer.toBuffer(basil, TypeSchema.typeConvert(Basil.class)), StandardCharsets.UTF_8);
+
+        assertThat(json).contains("\"qrCode\":\"qr-1\"").doesNotContain("legCount").doesNotContain("archivedLegCount");
+    }
+
+    @Test
+    void storageCountersStayOutOfEvents() {
+        String json = new Genson().serialize(new BasilChange("qr-1", false, basil));
+
+        assertThat(json).contains("\"currentStatus\":\"In Transit\"").doesNotContain("legCount");
+    }
+
+    @Test
+    void storedJsonHeadersStillReadTheirCounters() {
+        Basil stored = new Genson().deserialize("{\"qrCode\":\"qr-1\",\"legCount\":3,\"archivedLegCount\":256}",
+                Basil.class);
+
+        assertThat(stored.getLegCount()).isEqualTo(3);
+        assertThat(stored.getArchivedLegCount()).isEqualTo(256);
+    }
+}
@@ -0,0 +1,210 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.junit.jupiter.api.Test;
+
+import com.owlike.genson.Genson;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.hyperledger.fabric.samples.TestLedger.reading;
+
+class ColdChainTest {
+
+    private final TestLedger ledger = new TestLedger();
+
+    @Test
+    void rangeLimitsAreInclusiveAndMissingValuesAreInside() {
+        ColdChainRange range = ColdChainRange.DEFAULT;
+
+        assertThat(range.isOutside(10.0, 40.0)).isFalse();
+        assertThat(range.isOutside(25.0, 95.0)).isFalse();
+        assertThat(range.isOutside(9.9, 60.0)).isTrue();
+        assertThat(range.isOutside(25.1, 60.0)).isTrue();
+        assertThat(range.isOutside(20.0, 39.9)).isTrue();
+        assertThat(range.isOutside(20.0, 95.1)).isTrue();
+        assertThat(range.isOutside(null, null)).isFalse();
+        assertThat(range.isOutside(null, 99.0)).isTrue();
+    }
+
+    @Test
+    void summariesMergeIntoTheirCombinedAggregates() {
+        ColdChainSummary first = ColdChainSummary.ofReading(10L, 20.0, 60.0, false, 0, 0);
+        ColdChainSummary second = ColdChainSummary.ofReading(20L, 4.0, null, true, 1, 0);
+        ColdChainSummary third = ColdChainSummary.ofReading(30L, null, 80.0, false, 0, 10);
+
+        ColdChainSummary merged = first.withExcursionStart(5L).merge(third).merge(second);
+
+        assertThat(merged.getReadings()).isEqualTo(3);
+        assertThat(merged.getTemperatureCount()).isEqualTo(2);
+        assertThat(merged.getTemperatureMin()).isEqualTo(4.0);
+        assertThat(merged.getTemperatureMax()).isEqualTo(20.0);
+        assertThat(merged.getTemperatureMean()).isEqualTo(12.0);
+        assertThat(merged.getHumidityCount()).isEqualTo(2);
+        assertThat(merged.getHumidityMean()).isEqualTo(70.0);
+        assertThat(merged.getExcursions()).isEqualTo(1);
+        assertThat(merged.getTimeOutside()).isEqualTo(10);
+        assertThat(merged.getLastExcursion()).isEqualTo(20L);
+        assertThat(merged.getLastTimestamp()).isEqualTo(30L);
+        // The excursion in progress is the receiver's
+        assertThat(merged.getExcursionStart()).isEqualTo(5L);
+        assertThat(ColdChainSummary.EMPTY.merge(merged).withExcursionStart(5L)).isEqualTo(merged);
+        assertThat(ColdChainSummary.EMPTY.getTemperatureMean()).isNull();
+    }
+
+    @Test
+    void plantSummaryTracksExcursionsAcrossTransactions() {
+        ledger.create("qr-1");
+        ledger.update(reading("qr-1", 10L, "20", "60"), reading("qr-1", 20L, "4", "60"),
+                reading("qr-1", 30L, "5", "60"));
+        ledger.update(reading("qr-1", 40L, "20", "60"), reading("qr-1", 50L, "30", "60"));
+
+        ColdChainSummary summary = plant("qr-1");
+
+        assertThat(summary.getReadings()).isEqualTo(5);
+        assertThat(summary.getTemperatureMin()).isEqualTo(4.0);
+        assertThat(summary.getTemperatureMax()).isEqualTo(30.0);
+        assertThat(summary.getTemperatureMean()).isCloseTo(15.8, within(1e-9));
+        assertThat(summary.getHumidityMean()).isEqualTo(60.0);
+        // Out from 20 until the reading at 40 was back in range, then out again from 50
+        assertThat(summary.getExcursions()).isEqualTo(2);
+        assertThat(summary.getTimeOutside()).isEqualTo(20);
+        assertThat(summary.getLastExcursion()).isEqualTo(50L);
+        assertThat(summary.getExcursionStart()).isEqualTo(50L);
+    }
+
+    @Test
+    void unreadableValuesAndLateReadingsAddNothing() {
+        ledger.create("qr-1");
+        ledger.update(reading("qr-1", 10L, "4", "N/A"), reading("qr-1", 5L, "4", "N/A"),
+                reading("qr-1", 20L, "4.5 C", "60,5 %"), reading("qr-1", 30L, "N/A", "N/A"));
+
+        ColdChainSummary summary = plant("qr-1");
+
+        assertThat(summary.getReadings()).isEqualTo(4);
+        assertThat(summary.getTemperatureCount()).isEqualTo(3);
+        assertThat(summary.getTemperatureMax()).isEqualTo(4.5);
+        assertThat(summary.getHumidityCount()).isEqualTo(1);
+        assertThat(summary.getHumidityMin()).isEqualTo(60.5);
+        // The late reading adds no time, and a reading without values is never outside, so it ends the excursion
+        assertThat(summary.getExcursions()).isEqualTo(1);
+        assertThat(summary.getTimeOutside()).isEqualTo(20);
+        assertThat(summary.getExcursionStart()).isNull();
+        assertThat(summary.getLastTimestamp()).isEqualTo(30L);
+    }
+
+    @Test
+    void ownerSummariesFollowTheOwnerAtReadingTimeAndOutliveThePlant() {
+        ledger.create("qr-1");
+        ledger.create("qr-2");
+        ledger.update(reading("qr-1", 10L, "4", "60"), reading("qr-2", 10L, "20", "60"));
+        ledger.run(ctx -> ledger.contract.transferOwnership(ctx, "qr-1", "Org3MSP", "Distributor"));
+        ledger.stub.setMspId("Org3MSP");
+        ledger.update(reading("qr-1", 20L, "20", "60"));
+
+        ColdChainSummary grower = owner(TestLedger.GROWER_MSP);
+        ColdChainSummary distributor = owner("Org3MSP");
+        assertThat(grower.getReadings()).isEqualTo(2);
+        assertThat(grower.getExcursions()).isEqualTo(1);
+        assertThat(distributor.getReadings()).isEqualTo(1);
+        // The excursion started under the grower; the time until the next reading is the distributor's
+        assertThat(distributor.getExcursions()).isZero();
+        assertThat(distributor.getTimeOutside()).isEqualTo(10);
+        assertThat(grower.merge(distributor).getReadings()).isEqualTo(plant("qr-1").getReadings() + 1);
+
+        ledger.run(ctx -> ledger.contract.deleteBasil(ctx, "qr-1"));
+
+        assertThat(owner("Org3MSP")).isEqualTo(distributor);
+        assertThatThrownBy(() -> plant("qr-1")).isInstanceOf(ChaincodeException.class);
+    }
+
+    @Test
+    void rollUpFoldsOwnerDeltasWithoutChangingTheSummaries() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", 10L, 3);
+        ledger.update("qr-1", 20L, 2);
+        ColdChainSummary before = owner(TestLedger.GROWER_MSP);
+        assertThat(keys("coldchainDelta")).isEqualTo(2);
+
+        int folded = rollUp(listDeltas(10));
+
+        assertThat(folded).isEqualTo(2);
+        assertThat(keys("coldchainDelta")).isZero();
+        assertThat(keys("coldchainBase")).isEqualTo(1);
+        assertThat(owner(TestLedger.GROWER_MSP)).isEqualTo(before);
+
+        ledger.update("qr-1", 30L, 1);
+        assertThat(owner(TestLedger.GROWER_MSP).getReadings()).isEqualTo(6);
+    }
+
+    @Test
+    void rollUpOnlyFoldsTheListedDeltas() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", 10L, 1);
+        String listed = listDeltas(10);
+        // Written after the listing, as by a reading committed while the roll-up was on its way
+        ledger.update("qr-1", 20L, 1);
+
+        assertThat(rollUp(listed)).isEqualTo(1);
+        assertThat(keys("coldchainDelta")).isEqualTo(1);
+        // Folded already, so listing it again is harmless
+        assertThat(rollUp(listed)).isZero();
+        assertThat(owner(TestLedger.GROWER_MSP).getReadings()).isEqualTo(2);
+    }
+
+    @Test
+    void rollUpRefusesKeysThatAreNotColdChainDeltas() {
+        ledger.create("qr-1");
+        String plantKey = ledger.stub.createCompositeKey("coldchain", "qr-1").toString();
+        String keys = new Genson().serialize(new String[] {plantKey});
+
+        assertThatThrownBy(() -> rollUp(keys))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Not a cold-chain delta key");
+        assertThatThrownBy(() -> rollUp("[\"qr-1\"]")).isInstanceOf(ChaincodeException.class);
+        assertThatThrownBy(() -> rollUp("{")).isInstanceOf(ChaincodeException.class);
+    }
+
+    @Test
+    void newLimitsApplyToLaterReadings() {
+        ledger.create("qr-1");
+        ledger.update(reading("qr-1", 10L, "4", "60"));
+        ledger.run(ctx -> ledger.contract.setColdChainRange(ctx, 2.0, 8.0, 50.0, 90.0));
+        ledger.update(reading("qr-1", 20L, "5", "60"), reading("qr-1", 30L, "20", "60"));
+
+        ColdChainSummary summary = plant("qr-1");
+        ColdChainRange range = ledger.evaluate(ctx -> ledger.contract.getColdChainRange(ctx));
+
+        assertThat(range).isEqualTo(new ColdChainRange(2.0, 8.0, 50.0, 90.0));
+        assertThat(summary.getExcursions()).isEqualTo(2);
+        assertThat(summary.getTimeOutside()).isEqualTo(10);
+        assertThatThrownBy(() -> ledger.run(ctx -> ledger.contract.setColdChainRange(ctx, 8.0, 2.0, 50.0, 90.0)))
+                .isInstanceOf(ChaincodeException.class);
+    }
+
+    private ColdChainSummary plant(String qrCode) {
+        return ledger.evaluate(ctx -> ledger.contract.getColdChainSummary(ctx, qrCode));
+    }
+
+    private ColdChainSummary owner(String orgId) {
+        return ledger.evaluate(ctx -> ledger.contract.getOwnerColdChainSummary(ctx, orgId));
+    }
+
+    private String listDeltas(int limit) {
+        return ledger.evaluate(ctx -> ledger.contract.listColdChainDeltas(ctx, limit));
+    }
+
+    private int rollUp(String deltaKeysJson) {
+        return ledger.submit(ctx -> ledger.contract.rollUpColdChain(ctx, deltaKeysJson));
+    }
+
+    private int keys(String type) {
+        int count = 0;
+        for (KeyValue ignored : ledger.stub.getStateByPartialCompositeKey(ledger.stub.createCompositeKey(type))) {
+            count++;
+        }
+        return count;
+    }
+}
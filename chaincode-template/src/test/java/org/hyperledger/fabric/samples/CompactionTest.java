@@ -0,0 +1,106 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompactionTest {
+
+    private static final long FIRST_READING = 1000L;
+
+    private final TestLedger ledger = new TestLedger();
+
+    @Test
+    void readingsNeverCompactTheHistoryThemselves() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", FIRST_READING, 600);
+
+        // Archiving is left to compactHistory, so a reading only ever writes its own legs
+        assertThat(count("archive", "qr-1")).isZero();
+        assertThat(count("leg", "qr-1")).isEqualTo(601);
+        assertThat(timestamps("qr-1")).hasSize(601).endsWith(FIRST_READING + 599);
+    }
+
+    @Test
+    void compactHistoryKeepsTheNewestLegsAndOnlyArchivesWholeChunks() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", FIRST_READING, 299);
+        List<Long> before = timestamps("qr-1");
+
+        assertThat(compact("qr-1", 100)).isZero();
+        assertThat(compact("qr-1", 44)).isEqualTo(256);
+        assertThat(compact("qr-1", 0)).isZero();
+
+        assertThat(count("leg", "qr-1")).isEqualTo(44);
+        assertThat(timestamps("qr-1")).isEqualTo(before);
+    }
+
+    @Test
+    void oneCallArchivesAtMostFourChunks() {
+        // A legacy record is migrated with all of its legs live
+        ledger.putLegacy("legacy", 1300);
+
+        assertThat(compact("legacy", 0)).isEqualTo(1024);
+        assertThat(compact("legacy", 0)).isEqualTo(256);
+        assertThat(compact("legacy", 0)).isZero();
+
+        assertThat(count("archive", "legacy")).isEqualTo(5);
+        assertThat(count("leg", "legacy")).isEqualTo(20);
+        assertThat(timestamps("legacy")).isEqualTo(LongStream.range(0, 1300).boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    void compactingThenDeletingLeavesNoKeysBehind() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", FIRST_READING, 600);
+        assertThat(compact("qr-1", 256)).isEqualTo(256);
+        ledger.run(ctx -> ledger.contract.deleteBasil(ctx, "qr-1"));
+
+        assertThat(count("archive", "qr-1")).isZero();
+        assertThat(count("leg", "qr-1")).isZero();
+    }
+
+    @Test
+    void onlyTheOwnerMayCompact() {
+        ledger.create("qr-1");
+        ledger.stub.setMspId("Org3MSP");
+
+        assertThatThrownBy(() -> compact("qr-1", 0))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Only the current owner");
+    }
+
+    @Test
+    void negativeKeepIsRejected() {
+        ledger.create("qr-1");
+
+        assertThatThrownBy(() -> compact("qr-1", -1))
+                .isInstanceOf(ChaincodeException.class);
+    }
+
+    private int compact(String qrCode, int keepLegs) {
+        return ledger.submit(ctx -> ledger.contract.compactHistory(ctx, qrCode, keepLegs));
+    }
+
+    private List<Long> timestamps(String qrCode) {
+        return ledger.evaluate(ctx -> ledger.contract.getHistory(ctx, qrCode)).stream()
+                .map(BasilLeg::getTimestamp)
+                .collect(Collectors.toList());
+    }
+
+    private int count(String prefix, String qrCode) {
+        int count = 0;
+        for (KeyValue ignored : ledger.stub.getStateByPartialCompositeKey(prefix, qrCode)) {
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,115 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.junit.jupiter.api.Test;
+
+import com.owlike.genson.GenericType;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountTest {
+
+    private final TestLedger ledger = new TestLedger();
+
+    @Test
+    void createsCountPerOwnerAndStatus() {
+        ledger.create("qr-1");
+        ledger.create("qr-2");
+
+        assertThat(counts("owner")).containsExactly(Map.entry(TestLedger.GROWER_MSP, 2L));
+        assertThat(counts("status")).containsExactly(Map.entry("Created", 2L));
+    }
+
+    @Test
+    void changesMoveTheCountsAndDeletesDropThem() {
+        ledger.create("qr-1");
+        ledger.create("qr-2");
+        ledger.update("qr-1", 100L, 1);
+        ledger.run(ctx -> ledger.contract.transferOwnership(ctx, "qr-2", "Org3MSP", "Distributor"));
+
+        assertThat(counts("status")).isEqualTo(Map.of("Created", 1L, "In Transit", 1L));
+        assertThat(counts("owner")).isEqualTo(Map.of(TestLedger.GROWER_MSP, 1L, "Org3MSP", 1L));
+
+        ledger.run(ctx -> ledger.contract.deleteBasil(ctx, "qr-1"));
+
+        assertThat(counts("status")).containsExactly(Map.entry("Created", 1L));
+        assertThat(counts("owner")).containsExactly(Map.entry("Org3MSP", 1L));
+    }
+
+    // Every transaction writes its own delta keys, so concurrent writes to one count never conflict
+    @Test
+    void rollUpFoldsTheDeltasWithoutChangingTheCounts() {
+        ledger.create("qr-1");
+        ledger.create("qr-2");
+        ledger.update("qr-1", 100L, 1);
+        Map<String, Long> before = counts("status");
+        // Two per create, and the update moves only the status
+        assertThat(keys("count")).isEqualTo(6);
+        int deltas = keys("count");
+        int coldChainDeltas = keys("coldchainDelta");
+
+        int folded = ledger.submit(ctx -> ledger.contract.rollUpCounts(ctx));
+
+        // Owner cold-chain deltas are left to rollUpColdChain
+        assertThat(folded).isEqualTo(deltas);
+        assertThat(keys("count")).isZero();
+        assertThat(keys("coldchainDelta")).isEqualTo(coldChainDeltas);
+        assertThat(counts("status")).isEqualTo(before);
+        assertThat(keys("countBase")).isEqualTo(3);
+
+        ledger.run(ctx -> ledger.contract.deleteBasil(ctx, "qr-2"));
+        ledger.submit(ctx -> ledger.contract.rollUpCounts(ctx));
+        assertThat(counts("status")).containsExactly(Map.entry("In Transit", 1L));
+    }
+
+    @Test
+    void legacyRecordsAreCountedOnceMigrated() {
+        ledger.create("qr-1");
+        ledger.putLegacy("legacy", 2);
+        assertThat(counts("owner")).containsExactly(Map.entry(TestLedger.GROWER_MSP, 1L));
+
+        ledger.run(ctx -> ledger.contract.migrateBasil(ctx, "legacy"));
+
+        assertThat(counts("owner")).containsExactly(Map.entry(TestLedger.GROWER_MSP, 2L));
+        assertThat(counts("status")).isEqualTo(Map.of("Created", 1L, "In Transit", 1L));
+    }
+
+    @Test
+    void deletingAnUnmigratedLegacyRecordLeavesTheCountsAlone() {
+        ledger.create("qr-1");
+        ledger.putLegacy("legacy", 2);
+
+        ledger.run(ctx -> ledger.contract.deleteBasil(ctx, "legacy"));
+
+        assertThat(counts("owner")).containsExactly(Map.entry(TestLedger.GROWER_MSP, 1L));
+        assertThat(counts("status")).containsExactly(Map.entry("Created", 1L));
+    }
+
+    @Test
+    void rebuildResetsTheCountsToTheIndex() {
+        ledger.create("qr-1");
+        ledger.create("qr-2");
+        ledger.update("qr-1", 100L, 1);
+
+        int plants = ledger.submit(ctx -> ledger.contract.rebuildCounts(ctx, "status"));
+
+        assertThat(plants).isEqualTo(2);
+        assertThat(counts("status")).isEqualTo(Map.of("Created", 1L, "In Transit", 1L));
+        assertThat(counts("owner")).containsExactly(Map.entry(TestLedger.GROWER_MSP, 2L));
+    }
+
+    private Map<String, Long> counts(String dimension) {
+        String json = ledger.evaluate(ctx -> ledger.contract.getBasilCounts(ctx, dimension));
+        return ledger.genson.deserialize(json, new GenericType<Map<String, Long>>() { });
+    }
+
+    private int keys(String type) {
+        int count = 0;
+        for (KeyValue ignored : ledger.stub.getStateByPartialCompositeKey(ledger.stub.createCompositeKey(type))) {
+            count++;
+        }
+        return count;
+    }
+}
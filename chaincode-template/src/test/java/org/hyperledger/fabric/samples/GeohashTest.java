@@ -0,0 +1,84 @@
+package org.hyperledger.fabric.samples;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeohashTest {
+
+    @Test
+    void encodesKnownPoints() {
+        assertThat(Geohash.encode(57.64911, 10.40744, 11)).isEqualTo("u4pruydqqvj");
+        assertThat(Geohash.encode(0, 0, 5)).isEqualTo("s0000");
+        assertThat(Geohash.encode(-90, -180, 3)).isEqualTo("000");
+        assertThat(Geohash.encode(90, 180, 3)).isEqualTo("zzz");
+    }
+
+    @Test
+    void parsesLatLonPairs() {
+        assertThat(Geohash.parse(" 52.0907 , 5.1214 ")).containsExactly(52.0907, 5.1214);
+        assertThat(Geohash.parse("-90,180")).containsExactly(-90.0, 180.0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "Greenhouse A", "52.0907", "1,2,3", "91,0", "0,-181", "NaN,0", "north,east"})
+    void rejectsAnythingElse(String gps) {
+        assertThat(Geohash.parse(gps)).isNull();
+    }
+
+    @Test
+    void smallBoxIsCoveredAtFullPrecision() {
+        List<String> cells = Geohash.cover(52.09070, 5.12140, 52.09072, 5.12142, 9, 16);
+
+        assertThat(cells).isNotEmpty().hasSizeLessThanOrEqualTo(16).isSorted();
+        assertThat(cells).allSatisfy(cell -> assertThat(cell).hasSize(9));
+    }
+
+    @Test
+    void largerBoxFallsBackToShorterCells() {
+        List<String> cells = Geohash.cover(50.0, 3.0, 54.0, 7.0, 9, 16);
+
+        assertThat(cells).hasSizeLessThanOrEqualTo(16);
+        assertThat(cells.get(0).length()).isLessThan(9);
+    }
+
+    @Test
+    void wholeWorldTakesEveryTopLevelCell() {
+        assertThat(Geohash.cover(-90, -180, 90, 180, 9, 16)).hasSize(32);
+    }
+
+    // Every point inside the box lies in one of the covering cells, so the prefix scans miss nothing
+    @Test
+    void coverContainsEveryPointOfTheBox() {
+        Random random = new Random(17);
+        for (int box = 0; box < 200; box++) {
+            double lat = -90 + random.nextDouble() * 179;
+            double lon = -180 + random.nextDouble() * 359;
+            double height = Math.min(90 - lat, Math.pow(10, -4 + random.nextInt(5)));
+            double width = Math.min(180 - lon, Math.pow(10, -4 + random.nextInt(5)));
+            List<String> cells = Geohash.cover(lat, lon, lat + height, lon + width, 9, 16);
+
+            assertThat(cells).hasSizeLessThanOrEqualTo(32);
+            for (int point = 0; point < 20; point++) {
+                // Corners included
+                double pointLat = point == 0 ? lat : point == 1 ? lat + height : lat + random.nextDouble() * height;
+                double pointLon = point == 0 ? lon : point == 1 ? lon + width : lon + random.nextDouble() * width;
+                String hash = Geohash.encode(pointLat, pointLon, 9);
+                assertThat(cells).as("%s,%s in box %d", pointLat, pointLon, box).anyMatch(hash::startsWith);
+            }
+        }
+    }
+
+    @Test
+    void containsIncludesTheEdges() {
+        double[] corner = {52.0, 5.0};
+
+        assertThat(Geohash.contains(corner, 52.0, 5.0, 53.0, 6.0)).isTrue();
+        assertThat(Geohash.contains(corner, 52.1, 5.0, 53.0, 6.0)).isFalse();
+    }
+}
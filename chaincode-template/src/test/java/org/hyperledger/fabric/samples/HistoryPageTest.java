@@ -0,0 +1,118 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HistoryPageTest {
+
+    // Origin leg plus 299 readings; compacting keeps 44 live, so the first 256 legs are one archive chunk
+    private static final int LEGS = 300;
+    private static final long FIRST_READING = 1000L;
+
+    private final TestLedger ledger = new TestLedger();
+    private List<Long> timestamps;
+
+    @BeforeEach
+    void seed() {
+        ledger.create("qr-1");
+        ledger.update("qr-1", FIRST_READING, LEGS - 1);
+        int archived = ledger.submit(ctx -> ledger.contract.compactHistory(ctx, "qr-1", 44));
+        assertThat(archived).isEqualTo(256);
+
+        timestamps = new ArrayList<>();
+        for (BasilLeg leg : ledger.evaluate(ctx -> ledger.contract.getHistory(ctx, "qr-1"))) {
+            timestamps.add(leg.getTimestamp());
+        }
+        assertThat(timestamps).hasSize(LEGS);
+    }
+
+    @Test
+    void oldestFirstPagesCrossFromArchiveIntoLiveLegs() {
+        assertThat(walk("qr-1", 70, 0, 0, false)).isEqualTo(timestamps);
+    }
+
+    @Test
+    void newestFirstPagesCrossFromLiveLegsIntoArchive() {
+        List<Long> reversed = new ArrayList<>(timestamps);
+        Collections.reverse(reversed);
+
+        assertThat(walk("qr-1", 70, 0, 0, true)).isEqualTo(reversed);
+    }
+
+    @Test
+    void windowSpanningTheArchiveBoundaryIsReturnedInBothOrders() {
+        long from = FIRST_READING + 250;
+        long to = FIRST_READING + 260;
+
+        List<Long> oldestFirst = walk("qr-1", 4, from, to, false);
+        List<Long> newestFirst = walk("qr-1", 4, from, to, true);
+
+        assertThat(oldestFirst).hasSize(11).first().isEqualTo(from);
+        Collections.reverse(newestFirst);
+        assertThat(newestFirst).isEqualTo(oldestFirst);
+    }
+
+    @Test
+    void firstNewestPageStartsAtTheLatestReading() {
+        BasilLegPage page = ledger.evaluate(ctx -> ledger.contract.getHistoryPage(ctx, "qr-1", 3, "", 0, 0, true));
+
+        assertThat(page.getLegs()).extracting(BasilLeg::getTimestamp)
+                .containsExactly(FIRST_READING + LEGS - 2, FIRST_READING + LEGS - 3, FIRST_READING + LEGS - 4);
+        assertThat(page.getBookmark()).isNotEmpty();
+    }
+
+    @Test
+    void legacyRecordsPageOverTheirInlineHistory() {
+        ledger.stub.putState("legacy", ("{\"qrCode\":\"legacy\",\"creationTimestamp\":1,\"origin\":\"NL\","
+                + "\"currentStatus\":\"In Transit\",\"currentGps\":\"NL\",\"currentOwner\":{\"orgId\":\"Org1MSP\","
+                + "\"user\":\"Greenhouse\"},\"transportHistory\":[" + legacyLeg(1) + "," + legacyLeg(2) + ","
+                + legacyLeg(3) + "]}").getBytes(StandardCharsets.UTF_8));
+        ledger.stub.commit();
+
+        assertThat(walk("legacy", 2, 0, 0, false)).containsExactly(1L, 2L, 3L);
+        assertThat(walk("legacy", 2, 0, 0, true)).containsExactly(3L, 2L, 1L);
+    }
+
+    @Test
+    void bookmarkOutsideTheHistoryIsRejected() {
+        String bookmark = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Integer.toString(LEGS).getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> ledger.evaluate(ctx -> ledger.contract.getHistoryPage(ctx, "qr-1", 10, bookmark,
+                0, 0, true)))
+                .isInstanceOf(ChaincodeException.class)
+                .hasMessageContaining("Invalid bookmark");
+    }
+
+    // Follow the bookmarks until they run out, collecting leg timestamps
+    private List<Long> walk(String qrCode, int pageSize, long from, long to, boolean newestFirst) {
+        List<Long> seen = new ArrayList<>();
+        String bookmark = "";
+        int pages = 0;
+        do {
+            String current = bookmark;
+            BasilLegPage page = ledger.evaluate(ctx -> ledger.contract.getHistoryPage(ctx, qrCode, pageSize, current,
+                    from, to, newestFirst));
+            assertThat(page.getLegs().size()).isLessThanOrEqualTo(pageSize);
+            page.getLegs().forEach(leg -> seen.add(leg.getTimestamp()));
+            bookmark = page.getBookmark();
+            assertThat(++pages).isLessThan(1000);
+        } while (!bookmark.isEmpty());
+        return seen;
+    }
+
+    private static String legacyLeg(long timestamp) {
+        return "{\"timestamp\":" + timestamp + ",\"gps\":\"NL\",\"temperature\":\"4\",\"humidity\":\"60\","
+                + "\"owner\":{\"orgId\":\"Org1MSP\",\"user\":\"Greenhouse\"}}";
+    }
+}
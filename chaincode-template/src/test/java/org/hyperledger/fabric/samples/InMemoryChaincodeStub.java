@@ -0,0 +1,503 @@
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.protos.msp.SerializedIdentity;
+import org.hyperledger.fabric.protos.peer.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import com.google.protobuf.ByteString;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Single-threaded stand-in for the peer side of the shim, used by the unit tests and the benchmarks.
+ *
+ * Committed world state lives in a sorted map. Like a real endorser, a transaction only ever sees
+ * committed state, never its own writes; it records a read set and a write set, and {@link #commit()}
+ * applies the write set and appends every written key to that key's history.
+ */
+public final class InMemoryChaincodeStub implements ChaincodeStub {
+
+    // Self-signed test certificate; only parsed by ClientIdentity, never verified
+    private static final String TEST_CERTIFICATE = "-----BEGIN CERTIFICATE-----\n"
+            + "MIICATCCAaegAwIBAgIUAiKGwKFR9Zt18zcPnUd5AyJp/GowCgYIKoZIzj0EAwIw\n"
+            + "VTELMAkGA1UEBhMCVVMxFDASBgNVBAoMC0h5cGVybGVkZ2VyMQ8wDQYDVQQLDAZj\n"
+            + "bGllbnQxHzAdBgNVBAMMFlVzZXIxQG9yZzEuZXhhbXBsZS5jb20wIBcNMjYxMDE3\n"
+            + "MTAxOTIxWhgPMjEyNjA5MjMxMDE5MjFaMFUxCzAJBgNVBAYTAlVTMRQwEgYDVQQK\n"
+            + "DAtIeXBlcmxlZGdlcjEPMA0GA1UECwwGY2xpZW50MR8wHQYDVQQDDBZVc2VyMUBv\n"
+            + "cmcxLmV4YW1wbGUuY29tMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEGTtdpggx\n"
+            + "MHLHNYL3a0nvmQ2GmW4LJo5UxGUdKd7c9xez0N24f+mwWQmJ/ZLRSIuFLk8j6fDx\n"
+            + "hlWiF4JTD3tzv6NTMFEwHQYDVR0OBBYEFNOVt2RFo+gQYQ/zzniuy0TnZx7UMB8G\n"
+            + "A1UdIwQYMBaAFNOVt2RFo+gQYQ/zzniuy0TnZx7UMA8GA1UdEwEB/wQFMAMBAf8w\n"
+            + "CgYIKoZIzj0EAwIDSAAwRQIgLtirrS5qh95HA2le9vvE9BK8TDz4hdseeve0kvuh\n"
+            + "KDcCIQCdjPiJTUpBNmmXs46WbVoZKXZL7/YS+xyvPs/vpBYi3Q==\n"
+            + "-----END CERTIFICATE-----\n";
+
+    private static final long GENESIS_EPOCH_SECOND = 1_700_000_000L;
+
+    private final NavigableMap<String, byte[]> state = new TreeMap<>();
+    private final Map<String, List<KeyModification>> history = new HashMap<>();
+    private final Set<String> readSet = new LinkedHashSet<>();
+    // A null value marks a delete
+    private final Map<String, byte[]> writeSet = new LinkedHashMap<>();
+    private String mspId;
+    private byte[] creator;
+
+    private long txCounter;
+    private String txId;
+    private Instant txTimestamp;
+    private ChaincodeEvent event;
+
+    public InMemoryChaincodeStub(String mspId) {
+        setMspId(mspId);
+        beginTransaction();
+    }
+
+    /** Submits the following transactions as a client of another organization. */
+    public void setMspId(String mspId) {
+        this.mspId = mspId;
+        this.creator = SerializedIdentity.newBuilder()
+                .setMspid(mspId)
+                .setIdBytes(ByteString.copyFromUtf8(TEST_CERTIFICATE))
+                .build()
+                .toByteArray();
+    }
+
+    /** Discards any uncommitted writes and starts a new transaction with a fresh ID and timestamp. */
+    public void beginTransaction() {
+        txCounter++;
+        txId = "tx" + txCounter;
+        txTimestamp = Instant.ofEpochSecond(GENESIS_EPOCH_SECOND + txCounter);
+        readSet.clear();
+        writeSet.clear();
+        event = null;
+    }
+
+    /** Applies the write set to world state and history, then starts the next transaction. */
+    public void commit() {
+        for (Map.Entry<String, byte[]> write : writeSet.entrySet()) {
+            byte[] value = write.getValue();
+            if (value == null) {
+                state.remove(write.getKey());
+            } else {
+                state.put(write.getKey(), value);
+            }
+            history.computeIfAbsent(write.getKey(), k -> new ArrayList<>())
+                    .add(new Modification(txId, value, txTimestamp));
+        }
+        beginTransaction();
+    }
+
+    /** Throws away the write set, as when an endorsement is never submitted. */
+    public void rollback() {
+        beginTransaction();
+    }
+
+    public int getReadSetSize() {
+        return readSet.size();
+    }
+
+    public int getWriteSetSize() {
+        return writeSet.size();
+    }
+
+    /** Key plus value bytes of every entry in the current write set. */
+    public long getWriteSetBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, byte[]> write : writeSet.entrySet()) {
+            bytes += write.getKey().getBytes(StandardCharsets.UTF_8).length;
+            if (write.getValue() != null) {
+                bytes += write.getValue().length;
+            }
+        }
+        return bytes;
+    }
+
+    public int getStateSize() {
+        return state.size();
+    }
+
+    @Override
+    public byte[] getState(String key) {
+        readSet.add(key);
+        byte[] value = state.get(key);
+        return value != null ? value : new byte[0];
+    }
+
+    @Override
+    public void putState(String key, byte[] value) {
+        writeSet.put(key, value);
+    }
+
+    @Override
+    public void delState(String key) {
+        writeSet.put(key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+        return scanRange(startKey, endKey, Integer.MAX_VALUE, "");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey,
+            int pageSize, String bookmark) {
+        return scanRange(startKey, endKey, pageSize, bookmark);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String compositeKey) {
+        return scanPrefix(compositeKey, Integer.MAX_VALUE, "");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+        return getStateByPartialCompositeKey(createCompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {
+        return scanPrefix(compositeKey.toString(), Integer.MAX_VALUE, "");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            CompositeKey compositeKey, int pageSize, String bookmark) {
+        return scanPrefix(compositeKey.toString(), pageSize, bookmark);
+    }
+
+    // Simple keys only, as on the peer
+    private Results<KeyValue> scanRange(String startKey, String endKey, int pageSize, String bookmark) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        String start = bookmark == null || bookmark.isEmpty() ? startKey : bookmark;
+        List<KeyValue> results = new ArrayList<>();
+        String next = "";
+        for (Map.Entry<String, byte[]> entry : state.tailMap(start, true).entrySet()) {
+            String key = entry.getKey();
+            if (!endKey.isEmpty() && key.compareTo(endKey) >= 0) {
+                break;
+            }
+            if (key.startsWith(CompositeKey.NAMESPACE)) {
+                continue;
+            }
+            if (results.size() == pageSize) {
+                next = key;
+                break;
+            }
+            results.add(read(entry));
+        }
+        return new Results<>(results, next);
+    }
+
+    // Like the peer, the bookmark of a range query is the first key of the next page
+    private Results<KeyValue> scanPrefix(String prefix, int pageSize, String bookmark) {
+        String start = bookmark == null || bookmark.isEmpty() ? prefix : bookmark;
+        List<KeyValue> results = new ArrayList<>();
+        String next = "";
+        for (Map.Entry<String, byte[]> entry : state.tailMap(start, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (results.size() == pageSize) {
+                next = entry.getKey();
+                break;
+            }
+            results.add(read(entry));
+        }
+        return new Results<>(results, next);
+    }
+
+    private KeyValue read(Map.Entry<String, byte[]> entry) {
+        readSet.add(entry.getKey());
+        return new Entry(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(String objectType, String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(String key) {
+        List<KeyModification> modifications = new ArrayList<>(history.getOrDefault(key, Collections.emptyList()));
+        // The peer returns the most recent modification first
+        Collections.reverse(modifications);
+        return new Results<>(modifications, "");
+    }
+
+    @Override
+    public void setEvent(String name, byte[] payload) {
+        event = ChaincodeEvent.newBuilder()
+                .setEventName(name)
+                .setPayload(ByteString.copyFrom(payload))
+                .setTxId(txId)
+                .build();
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return txTimestamp;
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return creator;
+    }
+
+    @Override
+    public String getMspId() {
+        return mspId;
+    }
+
+    @Override
+    public String getChannelId() {
+        return "mychannel";
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getFunction() {
+        return null;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Chaincode.Response invokeChaincode(String chaincodeName, List<byte[]> args, String channel) {
+        throw new UnsupportedOperationException("invokeChaincode");
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(String key) {
+        throw new UnsupportedOperationException("getStateValidationParameter");
+    }
+
+    @Override
+    public void setStateValidationParameter(String key, byte[] value) {
+        throw new UnsupportedOperationException("setStateValidationParameter");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(String query) {
+        throw new UnsupportedOperationException("getQueryResult");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize,
+            String bookmark) {
+        throw new UnsupportedOperationException("getQueryResultWithPagination");
+    }
+
+    @Override
+    public byte[] getPrivateData(String collection, String key) {
+        throw new UnsupportedOperationException("getPrivateData");
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(String collection, String key) {
+        throw new UnsupportedOperationException("getPrivateDataHash");
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(String collection, String key) {
+        throw new UnsupportedOperationException("getPrivateDataValidationParameter");
+    }
+
+    @Override
+    public void putPrivateData(String collection, String key, byte[] value) {
+        throw new UnsupportedOperationException("putPrivateData");
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(String collection, String key, byte[] value) {
+        throw new UnsupportedOperationException("setPrivateDataValidationParameter");
+    }
+
+    @Override
+    public void delPrivateData(String collection, String key) {
+        throw new UnsupportedOperationException("delPrivateData");
+    }
+
+    @Override
+    public void purgePrivateData(String collection, String key) {
+        throw new UnsupportedOperationException("purgePrivateData");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(String collection, String startKey, String endKey) {
+        throw new UnsupportedOperationException("getPrivateDataByRange");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection,
+            String compositeKey) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection,
+            CompositeKey compositeKey) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection,
+            String objectType, String... attributes) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(String collection, String query) {
+        throw new UnsupportedOperationException("getPrivateDataQueryResult");
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        throw new UnsupportedOperationException("getSignedProposal");
+    }
+
+    @Override
+    public byte[] getBinding() {
+        throw new UnsupportedOperationException("getBinding");
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        Entry(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Modification implements KeyModification {
+        private final String txId;
+        private final byte[] value;
+        private final Instant timestamp;
+
+        Modification(String txId, byte[] value, Instant timestamp) {
+            this.txId = txId;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String getTxId() {
+            return txId;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value != null ? value : new byte[0];
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(getValue(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return value == null;
+        }
+    }
+
+    private static final class Results<T> implements QueryResultsIterator<T>, QueryResultsIteratorWithMetadata<T> {
+        private final List<T> results;
+        private final String bookmark;
+
+        Results(List<T> results, String bookmark) {
+            this.results = results;
+            this.bookmark = bookmark;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder()
+                    .setBookmark(bookmark)
+                    .setFetchedRecordsCount(results.size())
+                    .build();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.hyperledger.fabric.samples;
+
+import com.owlike.genson.Genson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link BasilContract} wired to an {@link InMemoryChaincodeStub}. Submits commit as soon as the transaction
+ * returns; evaluates, and submits that throw, leave the ledger untouched.
+ */
+final class TestLedger {
+
+    static final String GROWER_MSP = "Org1MSP";
+    static final String SUPERMARKET_MSP = "Org2MSP";
+
+    final Genson genson = new Genson();
+    final BasilContract contract = new BasilContract();
+    final InMemoryChaincodeStub stub = new InMemoryChaincodeStub(GROWER_MSP);
+
+    // Contexts are created per transaction and flushed afterwards, as the contract router does
+    <T> T evaluate(Function<BasilContext, T> transaction) {
+        BasilContext ctx = contract.createContext(stub);
+        try {
+            T result = transaction.apply(ctx);
+            contract.afterTransaction(ctx, result);
+            return result;
+        } finally {
+            stub.rollback();
+        }
+    }
+
+    <T> T submit(Function<BasilContext, T> transaction) {
+        BasilContext ctx = contract.createContext(stub);
+        T result;
+        try {
+            result = transaction.apply(ctx);
+            contract.afterTransaction(ctx, result);
+        } catch (RuntimeException e) {
+            stub.rollback();
+            throw e;
+        }
+        stub.commit();
+        return result;
+    }
+
+    void run(Consumer<BasilContext> transaction) {
+        submit(ctx -> {
+            transaction.accept(ctx);
+            return null;
+        });
+    }
+
+    void create(String qrCode) {
+        run(ctx -> contract.createBasil(ctx, qrCode, "Greenhouse A"));
+    }
+
+    // Appends one leg per reading in a single transaction
+    void update(BasilReading... readings) {
+        String readingsJson = genson.serialize(Arrays.asList(readings));
+        submit(ctx -> contract.updateBasilStatesBatch(ctx, readingsJson));
+    }
+
+    // Appends count legs with timestamps firstTimestamp, firstTimestamp + 1, ...
+    void update(String qrCode, long firstTimestamp, int count) {
+        BasilReading[] readings = new BasilReading[count];
+        for (int i = 0; i < count; i++) {
+            readings[i] = reading(qrCode, firstTimestamp + i, "4.5", "61.2");
+        }
+        update(readings);
+    }
+
+    // Stores and commits a record in the old layout, owned by GROWER_MSP, with legs timestamped 0, 1, ... inline
+    void putLegacy(String qrCode, int legs) {
+        StringBuilder json = new StringBuilder("{\"qrCode\":\"" + qrCode + "\",\"creationTimestamp\":0,"
+                + "\"origin\":\"NL\",\"currentStatus\":\"In Transit\",\"currentGps\":\"NL\","
+                + "\"currentOwner\":{\"orgId\":\"" + GROWER_MSP + "\",\"user\":\"Greenhouse\"},\"transportHistory\":[");
+        for (int i = 0; i < legs; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"timestamp\":").append(i)
+                    .append(",\"gps\":\"NL\",\"temperature\":\"4\",\"humidity\":\"60\","
+                            + "\"owner\":{\"orgId\":\"" + GROWER_MSP + "\",\"user\":\"Greenhouse\"}}");
+        }
+        stub.putState(qrCode, json.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+        stub.commit();
+    }
+
+    static BasilReading reading(String qrCode, long timestamp, String temperature, String humidity) {
+        return new BasilReading(qrCode, "52.0907,5.1214", timestamp, temperature, humidity, "In Transit");
+    }
+}
@@ -1,7 +1,8 @@
-import { Component } from '@angular/core';
+import { Component, OnDestroy } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
-import { BasilService } from '../../services/basil.service';
+import { Subscription } from 'rxjs';
+import { BasilChange, BasilService } from '../../services/basil.service';
 
 @Component({
   selector: 'app-basil-list',
@@ -10,11 +11,23 @@ import { BasilService } from '../../services/basil.service';
   standalone: true,
   imports: [CommonModule, FormsModule]
 })
-export class BasilListComponent {
+export class BasilListComponent implements OnDestroy {
+  private static readonly HISTORY_PAGE_SIZE = 20;
+  // Everything the detail view shows except the transport history, which is paged separately
+  private static readonly HEADER_FIELDS = ['creationTimestamp', 'origin', 'currentStatus', 'currentGps', 'currentOwner'];
+
   selectedBasil: any = null;
   error: string = '';
   success: string = '';
 
+  // Transport history is fetched page by page, newest leg first, instead of with the basil record
+  historyLegs: any[] = [];
+  historyBookmark: string = '';
+  loadingHistory = false;
+
+  // Pushed changes to the selected basil, so it stays current without refetching
+  private changes?: Subscription;
+
   // Form data
   newBasil = {
     id: '',
@@ -63,26 +76,76 @@ export class BasilListComponent {
       return;
     }
 
-    this.basilService.getBasil(this.searchBasil.id).subscribe({
+    this.basilService.getBasils([this.searchBasil.id], BasilListComponent.HEADER_FIELDS).subscribe({
       next: (response) => {
-        try {
-          this.selectedBasil = response;
-          // Sort transport history by timestamp in descending order (newest first)
-          if (this.selectedBasil.transportHistory) {
-            this.selectedBasil.transportHistory.sort((a: any, b: any) => b.timestamp - a.timestamp);
-          }
-          this.error = '';
-        } catch (e) {
-          this.error = 'Error parsing response';
-        }
-      },
-      error: (err) => {
-        if (err.status === 404) {
+        if (response.basils.length === 0) {
           this.error = `No basil found with ID: ${this.searchBasil.id}`;
           this.selectedBasil = null;
-        } else {
-          this.error = 'Error getting basil: ' + err.message;
+          this.changes?.unsubscribe();
+          return;
         }
+        this.selectedBasil = response.basils[0];
+        this.historyLegs = [];
+        this.historyBookmark = '';
+        this.loadHistory();
+        this.watchSelectedBasil();
+        this.error = '';
+      },
+      error: (err) => {
+        this.error = 'Error getting basil: ' + err.message;
+      }
+    });
+  }
+
+  private watchSelectedBasil(): void {
+    this.changes?.unsubscribe();
+    this.changes = this.basilService.watchBasils([this.selectedBasil.qrCode]).subscribe(change => this.onChange(change));
+  }
+
+  private onChange(change: BasilChange): void {
+    if (change.type === 'resync') {
+      this.searchBasil.id = this.selectedBasil.qrCode;
+      this.searchBasilById();
+      return;
+    }
+    if (change.deleted) {
+      this.selectedBasil = null;
+      this.changes?.unsubscribe();
+      return;
+    }
+    // Headers carry no transport history, so the first page of legs is fetched again
+    this.selectedBasil = { ...this.selectedBasil, ...change.basil };
+    this.historyLegs = [];
+    this.historyBookmark = '';
+    this.loadHistory();
+  }
+
+  ngOnDestroy(): void {
+    this.changes?.unsubscribe();
+  }
+
+  loadHistory(): void {
+    if (!this.selectedBasil || this.loadingHistory) {
+      return;
+    }
+
+    this.loadingHistory = true;
+    this.basilService.getBasilHistoryPage(
+      this.selectedBasil.qrCode,
+      BasilListComponent.HISTORY_PAGE_SIZE,
+      this.historyBookmark,
+      0,
+      0,
+      true
+    ).subscribe({
+      next: (page) => {
+        this.historyLegs = this.historyLegs.concat(page.legs || []);
+        this.historyBookmark = page.bookmark || '';
+        this.loadingHistory = false;
+      },
+      error: (err) => {
+        this.error = 'Error getting basil history: ' + err.message;
+        this.loadingHistory = false;
       }
     });
   }
@@ -94,6 +157,7 @@ export class BasilListComponent {
           this.success = 'Basil deleted successfully';
           this.error = '';
           this.selectedBasil = null;
+          this.changes?.unsubscribe();
         },
         error: (err) => {
           this.error = 'Error deleting basil: ' + err.message;
@@ -118,10 +182,10 @@ export class BasilListComponent {
       this.updateState.status
     ).subscribe({
       next: (response) => {
+        // The new state arrives as a pushed change
         this.success = 'Basil state updated successfully';
         this.error = '';
         this.updateState = { gps: '', temp: '', humidity: '', status: '' };
-        this.searchBasilById();
       },
       error: (err) => {
         this.error = 'Error updating basil state: ' + err.message;
@@ -140,7 +204,6 @@ export class BasilListComponent {
         this.success = 'Basil ownership transferred successfully';
         this.error = '';
         this.transfer = { newOrgId: '', newName: '' };
-        this.searchBasilById();
       },
       error: (err) => {
         this.error = 'Error transferring basil ownership: ' + err.message;
@@ -2,6 +2,17 @@ import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
 import { Observable } from 'rxjs';
 
+// A plant change pushed by the backend; basil is the new header, absent when the plant was deleted.
+// A 'resync' change means some changes were dropped and whatever is shown should be fetched again.
+export interface BasilChange {
+  type: 'basil' | 'resync';
+  qrCode?: string;
+  deleted?: boolean;
+  basil?: any;
+  blockNumber?: number;
+  transactionId?: string;
+}
+
 @Injectable({
   providedIn: 'root'
 })
@@ -18,6 +29,12 @@ export class BasilService {
     return this.http.get<string>(`${this.apiUrl}/${id}`);
   }
 
+  // Many plants in one request; unknown QR codes come back under missing. Leaving transportHistory out of
+  // fields returns the headers only, which is much cheaper for list screens.
+  getBasils(qrCodes: string[], fields?: string[]): Observable<{ basils: any[]; missing: string[] }> {
+    return this.http.post<{ basils: any[]; missing: string[] }>(`${this.apiUrl}/_batch`, { qrCodes, fields });
+  }
+
   deleteBasil(id: string): Observable<string> {
     return this.http.delete<string>(`${this.apiUrl}/${id}`);
   }
@@ -29,10 +46,35 @@ export class BasilService {
     );
   }
 
+  getBasilHistoryPage(id: string, pageSize: number, bookmark: string = '', from: number = 0, to: number = 0,
+                      newestFirst: boolean = false): Observable<any> {
+    return this.http.get<any>(
+      `${this.apiUrl}/${id}/history?pageSize=${pageSize}&bookmark=${bookmark}&from=${from}&to=${to}&newestFirst=${newestFirst}`
+    );
+  }
+
   transferBasilOwnership(id: string, newOrgId: string, newName: string): Observable<string> {
     return this.http.put<string>(
       `${this.apiUrl}/${id}/transfer?newOrgId=${newOrgId}&newName=${newName}`,
       {}
     );
   }
+
+  // Server-sent changes to the given plants and/or the plants of one owner, instead of polling.
+  // The browser reconnects on its own if the stream drops; unsubscribing closes it.
+  watchBasils(qrCodes: string[] = [], owner: string = ''): Observable<BasilChange> {
+    const params = new URLSearchParams();
+    qrCodes.forEach(qrCode => params.append('qrCode', qrCode));
+    if (owner) {
+      params.append('owner', owner);
+    }
+    return new Observable<BasilChange>(subscriber => {
+      const source = new EventSource(`${this.apiUrl}/_events?${params.toString()}`);
+      source.addEventListener('basil', (event: MessageEvent) => {
+        subscriber.next({ type: 'basil', ...JSON.parse(event.data) });
+      });
+      source.addEventListener('resync', () => subscriber.next({ type: 'resync' }));
+      return () => source.close();
+    });
+  }
 }